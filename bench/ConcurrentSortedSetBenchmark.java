@@ -0,0 +1,185 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import ru.mail.polis.AVLTree;
+import ru.mail.polis.BalancedSortedSet;
+import ru.mail.polis.ConcurrentAVLTree;
+import ru.mail.polis.ConcurrentBalancedSortedSet;
+import ru.mail.polis.NotBalancedTreeException;
+import ru.mail.polis.RedBlackTree;
+
+/**
+ * Замер пропускной способности потокобезопасных множеств на смешанной нагрузке
+ * add / remove / contains: ConcurrentAVLTree, AVLTree и RedBlackTree под
+ * ConcurrentBalancedSortedSet и java.util.concurrent.ConcurrentSkipListSet как эталон.
+ * <p>
+ * Для каждой комбинации (реализация, доля записей, число потоков, диапазон ключей) множество
+ * заполняется половиной диапазона, потоки в течение заданного времени выполняют случайные
+ * операции, после чего печатаются суммарные ops/s. Деревья после остановки проверяются
+ * на сбалансированность.
+ * <p>
+ * Запуск: java ConcurrentSortedSetBenchmark [threads=1,2,4,...] [writes=0,10,50] [ranges=1000,...]
+ * [millis=N] [warmup=N] [measure=N] [impl=CONCURRENT_AVL,STAMPED_AVL,STAMPED_RB,SKIP_LIST]
+ */
+public class ConcurrentSortedSetBenchmark {
+
+    private static final int[] DEFAULT_THREADS = {1, 2, 4, 8};
+
+    /**
+     * Доля записей в процентах, поровну add и remove, остальное — contains
+     */
+    private static final int[] DEFAULT_WRITES = {0, 10, 50};
+
+    private static final int[] DEFAULT_RANGES = {1_000, 100_000, 1_000_000};
+
+    enum Impl {
+        CONCURRENT_AVL(ConcurrentAVLTree::new),
+        STAMPED_AVL(() -> new ConcurrentBalancedSortedSet<>(new AVLTree<Integer>())),
+        STAMPED_RB(() -> new ConcurrentBalancedSortedSet<>(new RedBlackTree<Integer>())),
+        SKIP_LIST(ConcurrentSkipListSet::new);
+
+        final Supplier<Set<Integer>> factory;
+
+        Impl(Supplier<Set<Integer>> factory) {
+            this.factory = factory;
+        }
+    }
+
+    private static Set<Integer> fill(Impl impl, int range) {
+        Set<Integer> set = impl.factory.get();
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < range / 2; i++) {
+            set.add(random.nextInt(range));
+        }
+        return set;
+    }
+
+    /**
+     * Один раунд: потоки стартуют одновременно и работают millis миллисекунд
+     *
+     * @return суммарное количество операций в секунду
+     */
+    private static double round(ExecutorService executor, Set<Integer> set, int threads, int writes,
+                                int range, long millis) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers.add(executor.submit(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                long ops = 0;
+                start.await();
+                while (running.get()) {
+                    int value = random.nextInt(range);
+                    int op = random.nextInt(200);
+                    if (op < writes) {
+                        set.add(value);
+                    } else if (op < 2 * writes) {
+                        set.remove(value);
+                    } else {
+                        set.contains(value);
+                    }
+                    ops++;
+                }
+                return ops;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(millis);
+        running.set(false);
+        long ops = 0;
+        for (Future<Long> worker : workers) {
+            ops += worker.get(1, TimeUnit.MINUTES);
+        }
+        long nanos = System.nanoTime() - begin;
+        return ops * 1e9 / nanos;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] threadCounts = DEFAULT_THREADS;
+        int[] writeShares = DEFAULT_WRITES;
+        int[] ranges = DEFAULT_RANGES;
+        long millis = 1000;
+        int warmup = 1;
+        int iterations = 3;
+        Impl[] impls = Impl.values();
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            switch (kv[0]) {
+                case "threads":
+                    threadCounts = Arrays.stream(kv[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "writes":
+                    writeShares = Arrays.stream(kv[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "ranges":
+                    ranges = Arrays.stream(kv[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "millis":
+                    millis = Long.parseLong(kv[1]);
+                    break;
+                case "warmup":
+                    warmup = Integer.parseInt(kv[1]);
+                    break;
+                case "measure":
+                    iterations = Integer.parseInt(kv[1]);
+                    break;
+                case "impl":
+                    impls = Arrays.stream(kv[1].split(",")).map(Impl::valueOf).toArray(Impl[]::new);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        int maxThreads = Arrays.stream(threadCounts).max().orElse(1);
+        ExecutorService executor = Executors.newFixedThreadPool(maxThreads);
+        try {
+            System.out.printf(Locale.ROOT, "%-15s %7s %8s %10s %14s%n", "impl", "writes%", "threads", "range", "ops/s");
+            for (int range : ranges) {
+                for (int writes : writeShares) {
+                    for (int threads : threadCounts) {
+                        for (Impl impl : impls) {
+                            for (int i = 0; i < warmup; i++) {
+                                round(executor, fill(impl, range), threads, writes, range, millis);
+                            }
+                            for (int i = 0; i < iterations; i++) {
+                                Set<Integer> set = fill(impl, range);
+                                double opsPerSecond = round(executor, set, threads, writes, range, millis);
+                                System.out.printf(Locale.ROOT, "%-15s %7d %8d %10d %14.0f%n",
+                                        impl, writes, threads, range, opsPerSecond);
+                                checkBalanced(impl, set);
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void checkBalanced(Impl impl, Set<Integer> set) {
+        if (set instanceof BalancedSortedSet) {
+            try {
+                ((BalancedSortedSet<Integer>) set).checkBalanced();
+            } catch (NotBalancedTreeException e) {
+                throw new IllegalStateException(impl + " is not balanced after the run", e);
+            }
+        }
+    }
+}
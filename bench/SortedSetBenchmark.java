@@ -0,0 +1,350 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import ru.mail.polis.AVLTree;
+import ru.mail.polis.ArrayRedBlackTree;
+import ru.mail.polis.BinarySearchTree;
+import ru.mail.polis.RedBlackTree;
+
+/**
+ * Замер производительности add / contains / remove / first / last
+ * для BinarySearchTree, AVLTree, RedBlackTree, ArrayRedBlackTree и java.util.TreeSet.
+ * <p>
+ * Для каждой комбинации (реализация, компаратор, поток ключей, размер) печатает
+ * ops/s, перцентили задержки одной операции и количество выделенных байт на операцию.
+ * <p>
+ * Запуск: java SortedSetBenchmark [sizes=1000,10000,...] [warmup=N] [measure=N] [impl=BST,AVL,RB,ARRAY_RB,TREE_SET]
+ */
+public class SortedSetBenchmark {
+
+    private static final int[] DEFAULT_SIZES = {1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+
+    /**
+     * Обычное BST на упорядоченных потоках вырождается в список и работает за O(n^2),
+     * поэтому выше этого размера такие замеры пропускаются
+     */
+    private static final int UNBALANCED_SORTED_LIMIT = 10_000;
+
+    /**
+     * Ограничение на количество сэмплов задержки, чтобы сами замеры не съедали память на 10M
+     */
+    private static final int MAX_LATENCY_SAMPLES = 1 << 20;
+
+    private static final double ZIPF_SKEW = 0.99;
+
+    enum Impl {
+        BST(BinarySearchTree::new, false),
+        AVL(AVLTree::new, true),
+        RB(RedBlackTree::new, true),
+        ARRAY_RB(ArrayRedBlackTree::new, true),
+        TREE_SET(TreeSet::new, true);
+
+        final Function<Comparator<Integer>, SortedSet<Integer>> factory;
+        final boolean balanced;
+
+        Impl(Function<Comparator<Integer>, SortedSet<Integer>> factory, boolean balanced) {
+            this.factory = factory;
+            this.balanced = balanced;
+        }
+    }
+
+    enum NamedComparator {
+        NULL(null),
+        REVERSE_ORDER(Comparator.reverseOrder()),
+        EVEN_FIRST(Comparator.comparingInt((Integer v) -> v % 2).thenComparingInt(v -> v));
+
+        final Comparator<Integer> comparator;
+
+        NamedComparator(Comparator<Integer> comparator) {
+            this.comparator = comparator;
+        }
+    }
+
+    enum KeyStream {
+        /**
+         * 0, 1, 2, ... — ключи в порядке возрастания
+         */
+        SEQUENTIAL(true) {
+            @Override
+            Integer[] keys(int n, Random random) {
+                Integer[] keys = new Integer[n];
+                for (int i = 0; i < n; i++) {
+                    keys[i] = i;
+                }
+                return keys;
+            }
+        },
+        /**
+         * Равномерно случайная перестановка 0..n-1
+         */
+        RANDOM(false) {
+            @Override
+            Integer[] keys(int n, Random random) {
+                Integer[] keys = SEQUENTIAL.keys(n, random);
+                for (int i = n - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    Integer tmp = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = tmp;
+                }
+                return keys;
+            }
+        },
+        /**
+         * Ключи с распределением Ципфа: небольшая доля ключей встречается очень часто
+         */
+        ZIPF(false) {
+            @Override
+            Integer[] keys(int n, Random random) {
+                Integer[] keys = new Integer[n];
+                ZipfGenerator zipf = new ZipfGenerator(n, ZIPF_SKEW, random);
+                for (int i = 0; i < n; i++) {
+                    keys[i] = zipf.next();
+                }
+                return keys;
+            }
+        },
+        /**
+         * 0, n-1, 1, n-2, ... — отсортированная вставка попеременно с двух концов,
+         * худший случай для несбалансированного дерева и максимум поворотов для сбалансированных
+         */
+        ZIGZAG(true) {
+            @Override
+            Integer[] keys(int n, Random random) {
+                Integer[] keys = new Integer[n];
+                int lo = 0;
+                int hi = n - 1;
+                for (int i = 0; i < n; i++) {
+                    keys[i] = (i & 1) == 0 ? lo++ : hi--;
+                }
+                return keys;
+            }
+        };
+
+        final boolean sorted;
+
+        KeyStream(boolean sorted) {
+            this.sorted = sorted;
+        }
+
+        abstract Integer[] keys(int n, Random random);
+    }
+
+    /**
+     * Генератор Ципфа по методу Грея (Gray et al., "Quickly generating billion-record synthetic databases")
+     */
+    static final class ZipfGenerator {
+        private final int n;
+        private final double theta;
+        private final double alpha;
+        private final double zetaN;
+        private final double eta;
+        private final Random random;
+
+        ZipfGenerator(int n, double theta, Random random) {
+            this.n = n;
+            this.theta = theta;
+            this.random = random;
+            this.zetaN = zeta(n, theta);
+            this.alpha = 1.0 / (1.0 - theta);
+            this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+        }
+
+        int next() {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1.0) {
+                return 0;
+            }
+            if (uz < 1.0 + Math.pow(0.5, theta)) {
+                return 1;
+            }
+            return (int) (n * Math.pow(eta * u - eta + 1, alpha)) % n;
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+
+    interface Operation {
+        void apply(SortedSet<Integer> set, Integer key);
+    }
+
+    enum Op {
+        ADD((set, key) -> set.add(key)),
+        CONTAINS((set, key) -> set.contains(key)),
+        FIRST((set, key) -> set.first()),
+        LAST((set, key) -> set.last()),
+        REMOVE((set, key) -> set.remove(key));
+
+        final Operation operation;
+
+        Op(Operation operation) {
+            this.operation = operation;
+        }
+    }
+
+    static final class Result {
+        final long ops;
+        final long nanos;
+        final long allocatedBytes;
+        final long[] latencies;
+
+        Result(long ops, long nanos, long allocatedBytes, long[] latencies) {
+            this.ops = ops;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.latencies = latencies;
+        }
+
+        double opsPerSecond() {
+            return ops * 1e9 / nanos;
+        }
+
+        double bytesPerOp() {
+            return (double) allocatedBytes / ops;
+        }
+
+        long percentile(double p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int idx = (int) Math.ceil(p / 100.0 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, idx))];
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long allocatedBytes() {
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Прогоняет операцию по всем ключам. Время всей серии меряется отдельно от поштучных
+     * замеров, чтобы накладные расходы System.nanoTime() не искажали ops/s
+     */
+    private static Result measure(SortedSet<Integer> set, Integer[] keys, Op op) {
+        Operation operation = op.operation;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (Integer key : keys) {
+            operation.apply(set, key);
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        return new Result(keys.length, nanos, allocated, new long[0]);
+    }
+
+    private static long[] measureLatencies(SortedSet<Integer> set, Integer[] keys, Op op) {
+        Operation operation = op.operation;
+        int step = Math.max(1, keys.length / MAX_LATENCY_SAMPLES);
+        long[] latencies = new long[(keys.length + step - 1) / step];
+        int sample = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (i % step == 0) {
+                long start = System.nanoTime();
+                operation.apply(set, keys[i]);
+                latencies[sample++] = System.nanoTime() - start;
+            } else {
+                operation.apply(set, keys[i]);
+            }
+        }
+        Arrays.sort(latencies, 0, sample);
+        return Arrays.copyOf(latencies, sample);
+    }
+
+    /**
+     * Один раунд: наполнение, поиск, first/last, удаление. Каждая фаза меряется
+     * дважды — сплошным проходом (ops/s, аллокации) и с поштучным замером (перцентили)
+     */
+    private static Result[] round(Impl impl, NamedComparator comparator, Integer[] keys) {
+        Result[] results = new Result[Op.values().length];
+        for (Op op : Op.values()) {
+            SortedSet<Integer> set = impl.factory.apply(comparator.comparator);
+            if (op != Op.ADD) {
+                for (Integer key : keys) {
+                    set.add(key);
+                }
+            }
+            Result bulk = measure(set, keys, op);
+            if (op == Op.ADD) {
+                set = impl.factory.apply(comparator.comparator);
+            } else if (op == Op.REMOVE) {
+                for (Integer key : keys) {
+                    set.add(key);
+                }
+            }
+            long[] latencies = measureLatencies(set, keys, op);
+            results[op.ordinal()] = new Result(bulk.ops, bulk.nanos, bulk.allocatedBytes, latencies);
+        }
+        return results;
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        int warmup = 2;
+        int iterations = 3;
+        Impl[] impls = Impl.values();
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            switch (kv[0]) {
+                case "sizes":
+                    sizes = Arrays.stream(kv[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "warmup":
+                    warmup = Integer.parseInt(kv[1]);
+                    break;
+                case "measure":
+                    iterations = Integer.parseInt(kv[1]);
+                    break;
+                case "impl":
+                    impls = Arrays.stream(kv[1].split(",")).map(Impl::valueOf).toArray(Impl[]::new);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "%-9s %-13s %-10s %9s %-8s %14s %9s %9s %9s %9s %10s%n",
+                "impl", "comparator", "keys", "size", "op", "ops/s", "p50,ns", "p90,ns", "p99,ns", "p99.9,ns", "B/op");
+        Random random = new Random(42);
+        for (int size : sizes) {
+            for (KeyStream stream : KeyStream.values()) {
+                Integer[] keys = stream.keys(size, random);
+                for (Impl impl : impls) {
+                    if (!impl.balanced && stream.sorted && size > UNBALANCED_SORTED_LIMIT) {
+                        continue;
+                    }
+                    for (NamedComparator comparator : NamedComparator.values()) {
+                        for (int i = 0; i < warmup; i++) {
+                            round(impl, comparator, keys);
+                        }
+                        for (int i = 0; i < iterations; i++) {
+                            Result[] results = round(impl, comparator, keys);
+                            for (Op op : Op.values()) {
+                                Result r = results[op.ordinal()];
+                                System.out.printf(Locale.ROOT, "%-9s %-13s %-10s %9d %-8s %14.0f %9d %9d %9d %9d %10.1f%n",
+                                        impl, comparator, stream, size, op, r.opsPerSecond(),
+                                        r.percentile(50), r.percentile(90), r.percentile(99), r.percentile(99.9),
+                                        r.bytesPerOp());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,27 +1,329 @@
 package ru.mail.polis;
 
 import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-public class AVLTree<E extends Comparable<E>> extends AbstractSet<E> implements BalancedSortedSet<E> {
+public class AVLTree<E extends Comparable<E>> extends AbstractSet<E>
+        implements BalancedSortedSet<E>, NavigableTree<E>, OrderStatisticSet<E>, BoundedSearch<E> {
+
+    /**
+     * Поддеревья меньшего суммарного размера операции над множествами обрабатывают в одном потоке
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
 
     private final Comparator<E> comparator;
 
-    private BinarySearchTree.Node root; //todo: Создайте новый класс если нужно. Добавьте новые поля, если нужно.
+    private Node<E> root;
     private int size;
-    //todo: добавьте дополнительные переменные и/или методы если нужно
+    private int modCount;
 
     public AVLTree() {
-        this(null);
+        this((Comparator<E>) null);
     }
 
     public AVLTree(Comparator<E> comparator) {
         this.comparator = comparator;
     }
 
+    /**
+     * Строит дерево из элементов отсортированного множества за O(n), без сравнений и поворотов.
+     * Компаратор берётся из исходного множества.
+     *
+     * @param sortedSet исходное множество
+     */
+    @SuppressWarnings("unchecked")
+    public AVLTree(SortedSet<E> sortedSet) {
+        this((Comparator<E>) sortedSet.comparator());
+        buildFromSorted(sortedSet.iterator(), sortedSet.size());
+    }
+
+    /**
+     * Строит дерево из отсортированного по возрастанию массива без повторов за O(n).
+     *
+     * @param comparator компаратор, в порядке которого отсортирован массив
+     * @param sorted отсортированные элементы
+     * @throws IllegalArgumentException если массив не упорядочен строго по возрастанию
+     */
+    public AVLTree(Comparator<E> comparator, E[] sorted) {
+        this(comparator);
+        for (int i = 1; i < sorted.length; i++) {
+            if (compare(sorted[i - 1], sorted[i]) >= 0) {
+                throw new IllegalArgumentException("Elements must be strictly increasing, index = " + i);
+            }
+        }
+        buildFromSorted(Arrays.asList(sorted).iterator(), sorted.length);
+    }
+
+    /**
+     * Если дерево пустое, а на вход пришло множество с тем же порядком,
+     * строит дерево за O(n) вместо n вставок
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (size == 0 && !c.isEmpty() && c instanceof SortedSet
+                && Objects.equals(comparator, ((SortedSet<?>) c).comparator())) {
+            buildFromSorted(c.iterator(), c.size());
+            return true;
+        }
+        if (isSameTree(c)) {
+            return apply(SetOperation.UNION, (AVLTree<?>) c);
+        }
+        return super.addAll(c);
+    }
+
+    /**
+     * Если на вход пришло AVLTree с тем же порядком — пересечение через split / join
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        if (isSameTree(c)) {
+            return apply(SetOperation.INTERSECTION, (AVLTree<?>) c);
+        }
+        return super.retainAll(c);
+    }
+
+    /**
+     * Если на вход пришло AVLTree с тем же порядком — разность через split / join
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        if (isSameTree(c)) {
+            return apply(SetOperation.DIFFERENCE, (AVLTree<?>) c);
+        }
+        return super.removeAll(c);
+    }
+
+    private boolean isSameTree(Collection<?> c) {
+        return c instanceof AVLTree && Objects.equals(comparator, ((AVLTree<?>) c).comparator);
+    }
+
+    /**
+     * Операции над множествами на split / join: корень второго дерева делит первое на две части,
+     * половины обрабатываются рекурсивно и параллельно в {@link ForkJoinPool}, а результаты
+     * склеиваются через join вокруг узла с ключом корня. Для деревьев из n и m элементов (m <= n)
+     * это O(m log(n / m + 1)) работы и O(log^2 n) глубины. Второе дерево только читается:
+     * в результат попадают узлы этого дерева, а объединение создаёт новые узлы лишь для
+     * добавляемых ключей.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean apply(SetOperation operation, AVLTree<?> other) {
+        if (other == this) {
+            if (operation != SetOperation.DIFFERENCE || size == 0) {
+                return false;
+            }
+            root = null;
+            size = 0;
+            modCount++;
+            return true;
+        }
+        int oldSize = size;
+        root = ForkJoinPool.commonPool().invoke(new SetOperationTask(operation, root, (Node<E>) other.root));
+        size = size(root);
+        modCount++;
+        return size != oldSize;
+    }
+
+    private enum SetOperation {
+        UNION, INTERSECTION, DIFFERENCE
+    }
+
+    @SuppressWarnings("serial")
+    private final class SetOperationTask extends RecursiveTask<Node<E>> {
+        private final SetOperation operation;
+        private final Node<E> t1;
+        private final Node<E> t2;
+
+        SetOperationTask(SetOperation operation, Node<E> t1, Node<E> t2) {
+            this.operation = operation;
+            this.t1 = t1;
+            this.t2 = t2;
+        }
+
+        @Override
+        protected Node<E> compute() {
+            if (t1 == null || t2 == null) {
+                switch (operation) {
+                    case UNION:
+                        //все ключи t2 добавляются: только здесь узлы второго дерева копируются
+                        return t1 == null ? new CopyTask<>(t2).compute() : t1;
+                    case INTERSECTION:
+                        return null;
+                    default:
+                        return t1;
+                }
+            }
+            Split<E> split = split(t1, t2.value);
+            SetOperationTask leftTask = new SetOperationTask(operation, split.left, t2.left);
+            SetOperationTask rightTask = new SetOperationTask(operation, split.right, t2.right);
+            Node<E> left;
+            Node<E> right;
+            if (size(t1) + size(t2) > PARALLEL_THRESHOLD) {
+                leftTask.fork();
+                right = rightTask.compute();
+                left = leftTask.join();
+            } else {
+                left = leftTask.compute();
+                right = rightTask.compute();
+            }
+            switch (operation) {
+                case UNION:
+                    Node<E> middle = split.node != null ? split.node : new Node<>(t2.value);
+                    return AVLTree.this.join(left, middle, right);
+                case INTERSECTION:
+                    return split.node != null
+                            ? AVLTree.this.join(left, split.node, right) : AVLTree.this.join(left, right);
+                default:
+                    return AVLTree.this.join(left, right);
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class CopyTask<E> extends RecursiveTask<Node<E>> {
+        private final Node<E> node;
+
+        CopyTask(Node<E> node) {
+            this.node = node;
+        }
+
+        @Override
+        protected Node<E> compute() {
+            if (node == null) {
+                return null;
+            }
+            Node<E> copy = new Node<>(node.value);
+            copy.height = node.height;
+            copy.size = node.size;
+            CopyTask<E> leftTask = new CopyTask<>(node.left);
+            CopyTask<E> rightTask = new CopyTask<>(node.right);
+            if (node.size > PARALLEL_THRESHOLD) {
+                leftTask.fork();
+                copy.right = rightTask.compute();
+                copy.left = leftTask.join();
+            } else {
+                copy.left = leftTask.compute();
+                copy.right = rightTask.compute();
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Результат split: элементы меньше ключа, узел с ключом (или null) и элементы больше ключа
+     */
+    private static final class Split<E> {
+        final Node<E> left;
+        final Node<E> node;
+        final Node<E> right;
+
+        Split(Node<E> left, Node<E> node, Node<E> right) {
+            this.left = left;
+            this.node = node;
+            this.right = right;
+        }
+    }
+
+    /**
+     * Делит дерево по ключу за O(log n): спускается к ключу и склеивает через join
+     * оставшиеся по сторонам от пути поддеревья. Узел с ключом отсоединяется от дерева
+     */
+    private Split<E> split(Node<E> node, E key) {
+        if (node == null) {
+            return new Split<>(null, null, null);
+        }
+        Node<E> left = node.left;
+        Node<E> right = node.right;
+        int cmp = compare(node.value, key);
+        if (cmp == 0) {
+            return new Split<>(left, node, right);
+        }
+        if (cmp > 0) {
+            Split<E> split = split(left, key);
+            return new Split<>(split.left, split.node, join(split.right, node, right));
+        }
+        Split<E> split = split(right, key);
+        return new Split<>(join(left, node, split.left), split.node, split.right);
+    }
+
+    /**
+     * Склеивает два дерева и узел между ними (все элементы left меньше middle, а right — больше).
+     * Спускается по краю более высокого дерева до поддерева, высота которого отличается
+     * от другого не больше чем на один, вставляет туда middle и балансирует путь обратно
+     * теми же поворотами, что и вставка: O(|height(left) - height(right)| + 1)
+     */
+    private Node<E> join(Node<E> left, Node<E> middle, Node<E> right) {
+        if (height(left) > height(right) + 1) {
+            left.right = join(left.right, middle, right);
+            return balance(left);
+        }
+        if (height(right) > height(left) + 1) {
+            right.left = join(left, middle, right.left);
+            return balance(right);
+        }
+        middle.left = left;
+        middle.right = right;
+        update(middle);
+        return middle;
+    }
+
+    /**
+     * Склеивает два дерева без среднего узла: им становится наибольший узел left
+     */
+    private Node<E> join(Node<E> left, Node<E> right) {
+        if (left == null) {
+            return right;
+        }
+        @SuppressWarnings("unchecked")
+        Node<E>[] last = (Node<E>[]) new Node<?>[1];
+        Node<E> rest = removeMax(left, last);
+        return join(rest, last[0], right);
+    }
+
+    private Node<E> removeMax(Node<E> curr, Node<E>[] max) {
+        if (curr.right == null) {
+            max[0] = curr;
+            return curr.left;
+        }
+        curr.right = removeMax(curr.right, max);
+        return balance(curr);
+    }
+
+    private void buildFromSorted(Iterator<? extends E> it, int count) {
+        root = build(it, count);
+        size = count;
+        modCount++;
+    }
+
+    /**
+     * Средний элемент становится корнем, левая и правая половины — поддеревьями.
+     * Размеры половин отличаются не более чем на один, поэтому дерево идеально сбалансировано.
+     * Элементы читаются из итератора в порядке in-order обхода.
+     */
+    private Node<E> build(Iterator<? extends E> it, int count) {
+        if (count == 0) {
+            return null;
+        }
+        int leftCount = (count - 1) / 2;
+        Node<E> left = build(it, leftCount);
+        Node<E> node = new Node<>(it.next());
+        node.left = left;
+        node.right = build(it, count - 1 - leftCount);
+        update(node);
+        return node;
+    }
+
     /**
      * Вставляет элемент в дерево.
      * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
@@ -31,8 +333,26 @@ public class AVLTree<E extends Comparable<E>> extends AbstractSet<E> implements
      */
     @Override
     public boolean add(E value) {
-        //todo: следует реализовать
-        return false;
+        int oldSize = size;
+        root = add(root, value);
+        return size != oldSize;
+    }
+
+    private Node<E> add(Node<E> curr, E value) {
+        if (curr == null) {
+            size++;
+            modCount++;
+            return new Node<>(value);
+        }
+        int cmp = compare(curr.value, value);
+        if (cmp == 0) {
+            return curr;
+        } else if (cmp < 0) {
+            curr.right = add(curr.right, value);
+        } else {
+            curr.left = add(curr.left, value);
+        }
+        return balance(curr);
     }
 
     /**
@@ -46,8 +366,103 @@ public class AVLTree<E extends Comparable<E>> extends AbstractSet<E> implements
     public boolean remove(Object object) {
         @SuppressWarnings("unchecked")
         E value = (E) object;
-        //todo: следует реализовать
-        return false;
+        int oldSize = size;
+        root = remove(root, value);
+        return size != oldSize;
+    }
+
+    private Node<E> remove(Node<E> curr, E value) {
+        if (curr == null) {
+            return null;
+        }
+        int cmp = compare(curr.value, value);
+        if (cmp < 0) {
+            curr.right = remove(curr.right, value);
+        } else if (cmp > 0) {
+            curr.left = remove(curr.left, value);
+        } else {
+            size--;
+            modCount++;
+            if (curr.left == null) {
+                return curr.right;
+            }
+            if (curr.right == null) {
+                return curr.left;
+            }
+            Node<E> next = curr.right;
+            while (next.left != null) {
+                next = next.left;
+            } //next = наименьший из больших
+            curr.value = next.value;
+            curr.right = removeMin(curr.right);
+        }
+        return balance(curr);
+    }
+
+    private Node<E> removeMin(Node<E> curr) {
+        if (curr.left == null) {
+            return curr.right;
+        }
+        curr.left = removeMin(curr.left);
+        return balance(curr);
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Восстанавливает высоту и размер поддерева по детям
+     */
+    private static void update(Node<?> node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private Node<E> rotateRight(Node<E> node) {
+        Node<E> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private Node<E> rotateLeft(Node<E> node) {
+        Node<E> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    /**
+     * Восстанавливает высоту и размер узла и, если разница высот поддеревьев стала равна двум,
+     * выполняет малый или большой поворот
+     *
+     * @return новый корень поддерева
+     */
+    private Node<E> balance(Node<E> node) {
+        update(node);
+        int diff = height(node.left) - height(node.right);
+        if (diff > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (diff < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
     }
 
     /**
@@ -59,9 +474,24 @@ public class AVLTree<E extends Comparable<E>> extends AbstractSet<E> implements
      */
     @Override
     public boolean contains(Object object) {
+        return contains(object, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean contains(Object object, int maxHops) {
         @SuppressWarnings("unchecked")
         E value = (E) object;
-        //todo: следует реализовать
+        Node<E> curr = root;
+        while (curr != null) {
+            if (--maxHops < 0) {
+                throw HopLimitExceededException.INSTANCE;
+            }
+            int cmp = compare(curr.value, value);
+            if (cmp == 0) {
+                return true;
+            }
+            curr = cmp < 0 ? curr.right : curr.left;
+        }
         return false;
     }
 
@@ -72,8 +502,22 @@ public class AVLTree<E extends Comparable<E>> extends AbstractSet<E> implements
      */
     @Override
     public E first() {
-        //todo: следует реализовать
-        throw new NoSuchElementException("first");
+        return first(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public E first(int maxHops) {
+        if (root == null) {
+            throw new NoSuchElementException("first");
+        }
+        Node<E> curr = root;
+        while (curr.left != null) {
+            if (--maxHops < 0) {
+                throw HopLimitExceededException.INSTANCE;
+            }
+            curr = curr.left;
+        }
+        return curr.value;
     }
 
     /**
@@ -83,8 +527,64 @@ public class AVLTree<E extends Comparable<E>> extends AbstractSet<E> implements
      */
     @Override
     public E last() {
-        //todo: следует реализовать
-        throw new NoSuchElementException("last");
+        return last(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public E last(int maxHops) {
+        if (root == null) {
+            throw new NoSuchElementException("last");
+        }
+        Node<E> curr = root;
+        while (curr.right != null) {
+            if (--maxHops < 0) {
+                throw HopLimitExceededException.INSTANCE;
+            }
+            curr = curr.right;
+        }
+        return curr.value;
+    }
+
+    @Override
+    public int rank(E element) {
+        int rank = 0;
+        Node<E> curr = root;
+        while (curr != null) {
+            if (compare(curr.value, element) < 0) {
+                rank += size(curr.left) + 1;
+                curr = curr.right;
+            } else {
+                curr = curr.left;
+            }
+        }
+        return rank;
+    }
+
+    @Override
+    public E select(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index = " + index + ", size = " + size);
+        }
+        Node<E> curr = root;
+        while (true) {
+            int leftSize = size(curr.left);
+            if (index < leftSize) {
+                curr = curr.left;
+            } else if (index == leftSize) {
+                return curr.value;
+            } else {
+                index -= leftSize + 1;
+                curr = curr.right;
+            }
+        }
+    }
+
+    @Override
+    public int countInRange(E fromElement, E toElement) {
+        if (compare(fromElement, toElement) > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return rank(toElement) - rank(fromElement);
     }
 
     private int compare(E v1, E v2) {
@@ -98,7 +598,7 @@ public class AVLTree<E extends Comparable<E>> extends AbstractSet<E> implements
 
     @Override
     public int size() {
-        return 0;
+        return size;
     }
 
     @Override
@@ -111,27 +611,154 @@ public class AVLTree<E extends Comparable<E>> extends AbstractSet<E> implements
 
     @Override
     public SortedSet<E> subSet(E fromElement, E toElement) {
-        throw new UnsupportedOperationException("subSet");
+        return new TreeSubSet<>(this, fromElement, toElement);
     }
 
     @Override
     public SortedSet<E> headSet(E toElement) {
-        throw new UnsupportedOperationException("headSet");
+        return new TreeSubSet<>(this, null, toElement);
     }
 
     @Override
     public SortedSet<E> tailSet(E fromElement) {
-        throw new UnsupportedOperationException("tailSet");
+        return new TreeSubSet<>(this, fromElement, null);
     }
 
     @Override
     public Iterator<E> iterator() {
-        throw new UnsupportedOperationException("iterator");
+        return new TreeIterator(null, null);
+    }
+
+    @Override
+    public Iterator<E> iterator(E fromElement, E toElement) {
+        return new TreeIterator(fromElement, toElement);
+    }
+
+    @Override
+    public E lower(E toElement) {
+        return lower(toElement, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public E lower(E toElement, int maxHops) {
+        Node<E> result = null;
+        Node<E> curr = root;
+        while (curr != null) {
+            if (--maxHops < 0) {
+                throw HopLimitExceededException.INSTANCE;
+            }
+            if (toElement == null || compare(curr.value, toElement) < 0) {
+                result = curr;
+                curr = curr.right;
+            } else {
+                curr = curr.left;
+            }
+        }
+        return result == null ? null : result.value;
+    }
+
+    /**
+     * In-order обход со стеком пройденных, но ещё не выданных узлов.
+     * Родительских ссылок у узлов нет, поэтому после удаления через итератор
+     * (повороты могли перестроить путь) стек заново строится спуском к следующему элементу.
+     */
+    private final class TreeIterator implements Iterator<E> {
+        private final Deque<Node<E>> stack = new ArrayDeque<>();
+        private final E toElement;
+        private E lastReturned;
+        private int expectedModCount = modCount;
+
+        TreeIterator(E fromElement, E toElement) {
+            this.toElement = toElement;
+            seek(fromElement);
+        }
+
+        private void seek(E fromElement) {
+            stack.clear();
+            Node<E> curr = root;
+            while (curr != null) {
+                if (fromElement == null || compare(curr.value, fromElement) >= 0) {
+                    stack.push(curr);
+                    curr = curr.left;
+                } else {
+                    curr = curr.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty() && (toElement == null || compare(stack.peek().value, toElement) < 0);
+        }
+
+        @Override
+        public E next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node<E> node = stack.pop();
+            for (Node<E> curr = node.right; curr != null; curr = curr.left) {
+                stack.push(curr);
+            }
+            lastReturned = node.value;
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            E next = stack.isEmpty() ? null : stack.peek().value;
+            AVLTree.this.remove(lastReturned);
+            expectedModCount = modCount;
+            lastReturned = null;
+            if (next == null) {
+                stack.clear();
+            } else {
+                seek(next);
+            }
+        }
+    }
+
+    /**
+     * Делится по границам поддеревьев без обхода элементов,
+     * поэтому parallelStream() распределяет работу между потоками
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        return new TreeSpliterator<>(new TreeSpliterator.Nodes<E, Node<E>>() {
+            @Override
+            public Node<E> left(Node<E> node) {
+                return node.left;
+            }
+
+            @Override
+            public Node<E> right(Node<E> node) {
+                return node.right;
+            }
+
+            @Override
+            public E value(Node<E> node) {
+                return node.value;
+            }
+
+            @Override
+            public int modCount() {
+                return modCount;
+            }
+        }, root, size, comparator);
     }
 
     /**
      * Обходит дерево и проверяет что высоты двух поддеревьев
-     * различны по высоте не более чем на 1
+     * различны по высоте не более чем на 1, а размеры поддеревьев актуальны
      *
      * @throws NotBalancedTreeException если высоты отличаются более чем на один
      */
@@ -140,12 +767,15 @@ public class AVLTree<E extends Comparable<E>> extends AbstractSet<E> implements
         traverseTreeAndCheckBalanced(root);
     }
 
-    private int traverseTreeAndCheckBalanced(BinarySearchTree.Node curr) throws NotBalancedTreeException {
+    private int traverseTreeAndCheckBalanced(Node<E> curr) throws NotBalancedTreeException {
         if (curr == null) {
             return 1;
         }
         int leftHeight = traverseTreeAndCheckBalanced(curr.left);
         int rightHeight = traverseTreeAndCheckBalanced(curr.right);
+        if (curr.size != size(curr.left) + size(curr.right) + 1) {
+            throw new NotBalancedTreeException("Subtree size is out of date\n" + curr.toString());
+        }
         if (Math.abs(leftHeight - rightHeight) > 1) {
             throw NotBalancedTreeException.create("The heights of the two child subtrees of any node must be differ by at most one",
                     leftHeight, rightHeight, curr.toString());
@@ -153,4 +783,26 @@ public class AVLTree<E extends Comparable<E>> extends AbstractSet<E> implements
         return Math.max(leftHeight, rightHeight) + 1;
     }
 
+    static final class Node<E> {
+        E value;
+        Node<E> left;
+        Node<E> right;
+        int height = 1;
+        int size = 1; //количество узлов в поддереве
+
+        Node(E value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" +
+                    "value=" + value +
+                    ", left=" + left +
+                    ", right=" + right +
+                    ", height=" + height +
+                    ", size=" + size +
+                    '}';
+        }
+    }
 }
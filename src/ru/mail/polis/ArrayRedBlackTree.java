@@ -0,0 +1,599 @@
+package ru.mail.polis;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * Красно-чёрное дерево, узлы которого хранятся в параллельных массивах (struct-of-arrays).
+ * <p>
+ * Узел — это индекс слота: значение лежит в values[i], потомки и родитель — в int-массивах,
+ * цвет — один бит в битовой маске. Удалённые слоты связываются в список свободных через left[]
+ * и переиспользуются при следующих вставках. По сравнению с {@link RedBlackTree} на каждый элемент
+ * не создаётся отдельный объект-узел: нет заголовка объекта, ссылки на enum и четырёх ссылок.
+ */
+public class ArrayRedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implements BalancedSortedSet<E>, NavigableTree<E> {
+
+    private static final int NIL = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * Некоторые JVM не выделяют массивы длиной вплоть до Integer.MAX_VALUE
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private final Comparator<E> comparator;
+
+    private Object[] values;
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private long[] red; //бит i выставлен, если узел i красный
+
+    private int root = NIL;
+    private int size;
+    private int modCount;
+    private int used; //количество когда-либо занятых слотов, слоты [used, capacity) ещё не выдавались
+    private int free = NIL; //голова списка освобождённых слотов (следующий в left[])
+
+    public ArrayRedBlackTree() {
+        this(null);
+    }
+
+    public ArrayRedBlackTree(Comparator<E> comparator) {
+        this(comparator, INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param capacity количество слотов, которое нужно выделить сразу, чтобы избежать копирований при росте
+     */
+    public ArrayRedBlackTree(Comparator<E> comparator, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity = " + capacity);
+        }
+        this.comparator = comparator;
+        this.values = new Object[capacity];
+        this.left = new int[capacity];
+        this.right = new int[capacity];
+        this.parent = new int[capacity];
+        this.red = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Вставляет элемент в дерево.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param value элемент который необходимо вставить
+     * @return true, если элемент в дереве отсутствовал
+     */
+    @Override
+    public boolean add(E value) {
+        int p = NIL;
+        int curr = root;
+        int cmp = 0;
+        while (curr != NIL) {
+            p = curr;
+            cmp = compare(value(curr), value);
+            if (cmp == 0) {
+                return false;
+            }
+            curr = cmp < 0 ? right[curr] : left[curr];
+        }
+        int node = allocate(value, p);
+        if (p == NIL) {
+            root = node;
+        } else if (cmp < 0) {
+            right[p] = node;
+        } else {
+            left[p] = node;
+        }
+        fixAfterInsertion(node);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    private int allocate(E value, int p) {
+        int node;
+        if (free != NIL) {
+            node = free;
+            free = left[node];
+        } else {
+            if (used == values.length) {
+                grow();
+            }
+            node = used++;
+        }
+        values[node] = value;
+        left[node] = NIL;
+        right[node] = NIL;
+        parent[node] = p;
+        setRed(node, false);
+        return node;
+    }
+
+    private void release(int node) {
+        values[node] = null;
+        right[node] = NIL;
+        parent[node] = NIL;
+        left[node] = free;
+        free = node;
+    }
+
+    private void grow() {
+        if (values.length == MAX_CAPACITY) {
+            throw new IllegalStateException("Tree is too large, size = " + size);
+        }
+        int capacity = (int) Math.min((long) values.length << 1, MAX_CAPACITY);
+        values = Arrays.copyOf(values, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        red = Arrays.copyOf(red, (capacity + 63) >>> 6);
+    }
+
+    private void fixAfterInsertion(int x) {
+        setRed(x, true);
+        while (x != root && isRed(parent[x])) {
+            int p = parent[x];
+            int grand = parent[p];
+            if (p == left[grand]) {
+                int uncle = right[grand];
+                if (isRed(uncle)) {
+                    setRed(p, false);
+                    setRed(uncle, false);
+                    setRed(grand, true);
+                    x = grand;
+                } else {
+                    if (x == right[p]) {
+                        x = p;
+                        rotateLeft(x);
+                        p = parent[x];
+                    }
+                    setRed(p, false);
+                    setRed(grand, true);
+                    rotateRight(grand);
+                }
+            } else {
+                int uncle = left[grand];
+                if (isRed(uncle)) {
+                    setRed(p, false);
+                    setRed(uncle, false);
+                    setRed(grand, true);
+                    x = grand;
+                } else {
+                    if (x == left[p]) {
+                        x = p;
+                        rotateRight(x);
+                        p = parent[x];
+                    }
+                    setRed(p, false);
+                    setRed(grand, true);
+                    rotateLeft(grand);
+                }
+            }
+        }
+        setRed(root, false);
+    }
+
+    /**
+     * Удаляет элемент с таким же значением из дерева.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо вставить
+     * @return true, если элемент содержался в дереве
+     */
+    @Override
+    public boolean remove(Object object) {
+        @SuppressWarnings("unchecked")
+        E value = (E) object;
+        int node = getNode(value);
+        if (node == NIL) {
+            return false;
+        }
+        deleteNode(node);
+        size--;
+        modCount++;
+        return true;
+    }
+
+    private void deleteNode(int p) {
+        if (left[p] != NIL && right[p] != NIL) {
+            int next = right[p];
+            while (left[next] != NIL) {
+                next = left[next];
+            } //next = наименьший из больших
+            values[p] = values[next];
+            p = next;
+        }
+        int replacement = left[p] != NIL ? left[p] : right[p];
+        if (replacement != NIL) {
+            parent[replacement] = parent[p];
+            replaceChild(p, replacement);
+            if (!isRed(p)) {
+                fixAfterDeletion(replacement);
+            }
+        } else if (parent[p] == NIL) {
+            root = NIL;
+        } else {
+            //удаляемый узел сам играет роль фиктивного листа, пока идёт балансировка
+            if (!isRed(p)) {
+                fixAfterDeletion(p);
+            }
+            replaceChild(p, NIL);
+        }
+        release(p);
+    }
+
+    private void fixAfterDeletion(int x) {
+        while (x != root && !isRed(x)) {
+            int p = parent[x];
+            if (x == left[p]) {
+                int sibling = right[p];
+                if (isRed(sibling)) {
+                    setRed(sibling, false);
+                    setRed(p, true);
+                    rotateLeft(p);
+                    sibling = right[p];
+                }
+                if (!isRed(left[sibling]) && !isRed(right[sibling])) {
+                    setRed(sibling, true);
+                    x = p;
+                } else {
+                    if (!isRed(right[sibling])) {
+                        setRed(left[sibling], false);
+                        setRed(sibling, true);
+                        rotateRight(sibling);
+                        sibling = right[p];
+                    }
+                    setRed(sibling, isRed(p));
+                    setRed(p, false);
+                    setRed(right[sibling], false);
+                    rotateLeft(p);
+                    x = root;
+                }
+            } else {
+                int sibling = left[p];
+                if (isRed(sibling)) {
+                    setRed(sibling, false);
+                    setRed(p, true);
+                    rotateRight(p);
+                    sibling = left[p];
+                }
+                if (!isRed(right[sibling]) && !isRed(left[sibling])) {
+                    setRed(sibling, true);
+                    x = p;
+                } else {
+                    if (!isRed(left[sibling])) {
+                        setRed(right[sibling], false);
+                        setRed(sibling, true);
+                        rotateLeft(sibling);
+                        sibling = left[p];
+                    }
+                    setRed(sibling, isRed(p));
+                    setRed(p, false);
+                    setRed(left[sibling], false);
+                    rotateRight(p);
+                    x = root;
+                }
+            }
+        }
+        setRed(x, false);
+    }
+
+    private boolean isRed(int node) {
+        return node != NIL && (red[node >>> 6] & (1L << node)) != 0;
+    }
+
+    private void setRed(int node, boolean isRed) {
+        if (isRed) {
+            red[node >>> 6] |= 1L << node;
+        } else {
+            red[node >>> 6] &= ~(1L << node);
+        }
+    }
+
+    private void replaceChild(int node, int child) {
+        int p = parent[node];
+        if (p == NIL) {
+            root = child;
+        } else if (node == left[p]) {
+            left[p] = child;
+        } else {
+            right[p] = child;
+        }
+    }
+
+    private void rotateLeft(int node) {
+        int r = right[node];
+        right[node] = left[r];
+        if (left[r] != NIL) {
+            parent[left[r]] = node;
+        }
+        parent[r] = parent[node];
+        replaceChild(node, r);
+        left[r] = node;
+        parent[node] = r;
+    }
+
+    private void rotateRight(int node) {
+        int l = left[node];
+        left[node] = right[l];
+        if (right[l] != NIL) {
+            parent[right[l]] = node;
+        }
+        parent[l] = parent[node];
+        replaceChild(node, l);
+        right[l] = node;
+        parent[node] = l;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E value(int node) {
+        return (E) values[node];
+    }
+
+    private int getNode(E value) {
+        int curr = root;
+        while (curr != NIL) {
+            int cmp = compare(value(curr), value);
+            if (cmp == 0) {
+                return curr;
+            }
+            curr = cmp < 0 ? right[curr] : left[curr];
+        }
+        return NIL;
+    }
+
+    /**
+     * Ищет элемент с таким же значением в дереве.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо поискать
+     * @return true, если такой элемент содержится в дереве
+     */
+    @Override
+    public boolean contains(Object object) {
+        @SuppressWarnings("unchecked")
+        E value = (E) object;
+        return getNode(value) != NIL;
+    }
+
+    /**
+     * Ищет наименьший элемент в дереве
+     * @return Возвращает наименьший элемент в дереве
+     * @throws NoSuchElementException если дерево пустое
+     */
+    @Override
+    public E first() {
+        if (root == NIL) {
+            throw new NoSuchElementException("first");
+        }
+        int curr = root;
+        while (left[curr] != NIL) {
+            curr = left[curr];
+        }
+        return value(curr);
+    }
+
+    /**
+     * Ищет наибольший элемент в дереве
+     * @return Возвращает наибольший элемент в дереве
+     * @throws NoSuchElementException если дерево пустое
+     */
+    @Override
+    public E last() {
+        if (root == NIL) {
+            throw new NoSuchElementException("last");
+        }
+        int curr = root;
+        while (right[curr] != NIL) {
+            curr = right[curr];
+        }
+        return value(curr);
+    }
+
+    private int compare(E v1, E v2) {
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return количество выделенных слотов (занятых и свободных)
+     */
+    public int capacity() {
+        return values.length;
+    }
+
+    @Override
+    public String toString() {
+        return "ArrayRBTree{" +
+                "size=" + size + ", " +
+                "tree=" + nodeToString(root) +
+                '}';
+    }
+
+    private String nodeToString(int node) {
+        if (node == NIL) {
+            return "null";
+        }
+        return "Node{" +
+                "value=" + values[node] +
+                ", left=" + nodeToString(left[node]) +
+                ", right=" + nodeToString(right[node]) +
+                ", color=" + (isRed(node) ? "RED" : "BLACK") +
+                '}';
+    }
+
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        return new TreeSubSet<>(this, fromElement, toElement);
+    }
+
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        return new TreeSubSet<>(this, null, toElement);
+    }
+
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        return new TreeSubSet<>(this, fromElement, null);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new TreeIterator(ceilingNode(null), null);
+    }
+
+    @Override
+    public Iterator<E> iterator(E fromElement, E toElement) {
+        return new TreeIterator(ceilingNode(fromElement), toElement);
+    }
+
+    @Override
+    public E lower(E toElement) {
+        int result = NIL;
+        int curr = root;
+        while (curr != NIL) {
+            if (toElement == null || compare(value(curr), toElement) < 0) {
+                result = curr;
+                curr = right[curr];
+            } else {
+                curr = left[curr];
+            }
+        }
+        return result == NIL ? null : value(result);
+    }
+
+    private int ceilingNode(E fromElement) {
+        int result = NIL;
+        int curr = root;
+        while (curr != NIL) {
+            if (fromElement == null || compare(value(curr), fromElement) >= 0) {
+                result = curr;
+                curr = left[curr];
+            } else {
+                curr = right[curr];
+            }
+        }
+        return result;
+    }
+
+    private int successor(int node) {
+        if (right[node] != NIL) {
+            int curr = right[node];
+            while (left[curr] != NIL) {
+                curr = left[curr];
+            }
+            return curr;
+        }
+        int curr = node;
+        int p = parent[node];
+        while (p != NIL && curr == right[p]) {
+            curr = p;
+            p = parent[p];
+        }
+        return p;
+    }
+
+    private final class TreeIterator implements Iterator<E> {
+        private final E toElement;
+        private int next;
+        private int lastReturned = NIL;
+        private int expectedModCount = modCount;
+
+        TreeIterator(int first, E toElement) {
+            this.next = first;
+            this.toElement = toElement;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != NIL && (toElement == null || compare(value(next), toElement) < 0);
+        }
+
+        @Override
+        public E next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = successor(next);
+            return value(lastReturned);
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == NIL) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            //у узла с двумя потомками deleteNode перенесёт в него значение следующего узла
+            if (left[lastReturned] != NIL && right[lastReturned] != NIL) {
+                next = lastReturned;
+            }
+            deleteNode(lastReturned);
+            size--;
+            modCount++;
+            expectedModCount = modCount;
+            lastReturned = NIL;
+        }
+    }
+
+    /**
+     * Обходит дерево и проверяет выполнение свойств сбалансированного красно-чёрного дерева
+     * <p>
+     * 1) Корень всегда чёрный.
+     * 2) Если узел красный, то его потомки должны быть чёрными (обратное не всегда верно)
+     * 3) Все пути от узла до листьев содержат одинаковое количество чёрных узлов (чёрная высота)
+     *
+     * @throws NotBalancedTreeException если какое-либо свойство невыполнено
+     */
+    @Override
+    public void checkBalanced() throws NotBalancedTreeException {
+        if (root != NIL) {
+            if (isRed(root)) {
+                throw new NotBalancedTreeException("Root must be black");
+            }
+            traverseTreeAndCheckBalanced(root);
+        }
+    }
+
+    private int traverseTreeAndCheckBalanced(int node) throws NotBalancedTreeException {
+        if (node == NIL) {
+            return 1;
+        }
+        int leftBlackHeight = traverseTreeAndCheckBalanced(left[node]);
+        int rightBlackHeight = traverseTreeAndCheckBalanced(right[node]);
+        if (leftBlackHeight != rightBlackHeight) {
+            throw NotBalancedTreeException.create("Black height must be equal.", leftBlackHeight, rightBlackHeight, nodeToString(node));
+        }
+        if (isRed(node)) {
+            if (isRed(left[node])) {
+                throw new NotBalancedTreeException("If a node is red, then left child must be black.\n" + nodeToString(node));
+            }
+            if (isRed(right[node])) {
+                throw new NotBalancedTreeException("If a node is red, then right child must be black.\n" + nodeToString(node));
+            }
+            return leftBlackHeight;
+        }
+        return leftBlackHeight + 1;
+    }
+}
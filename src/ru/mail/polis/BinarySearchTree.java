@@ -1,17 +1,21 @@
 package ru.mail.polis;
 
 import java.util.AbstractSet;
+import java.util.ArrayDeque;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.SortedSet;
 
-public class BinarySearchTree<E extends Comparable<E>> extends AbstractSet<E> implements SortedSet<E> {
+public class BinarySearchTree<E extends Comparable<E>> extends AbstractSet<E> implements NavigableTree<E> {
 
     private final Comparator<E> comparator;
     private Node root;
     private int size;
+    private int modCount;
     public BinarySearchTree() {
         this(null);
     }
@@ -79,6 +83,7 @@ public class BinarySearchTree<E extends Comparable<E>> extends AbstractSet<E> im
             }
         }
         size++;
+        modCount++;
         return true;
     }
 
@@ -132,6 +137,7 @@ public class BinarySearchTree<E extends Comparable<E>> extends AbstractSet<E> im
             }
         }
         size--;
+        modCount++;
         return true;
     }
 
@@ -182,22 +188,113 @@ public class BinarySearchTree<E extends Comparable<E>> extends AbstractSet<E> im
 
     @Override
     public SortedSet<E> subSet(E fromElement, E toElement) {
-        throw new UnsupportedOperationException();
+        return new TreeSubSet<>(this, fromElement, toElement);
     }
 
     @Override
     public SortedSet<E> headSet(E toElement) {
-        throw new UnsupportedOperationException();
+        return new TreeSubSet<>(this, null, toElement);
     }
 
     @Override
     public SortedSet<E> tailSet(E fromElement) {
-        throw new UnsupportedOperationException();
+        return new TreeSubSet<>(this, fromElement, null);
     }
 
     @Override
     public Iterator<E> iterator() {
-        throw new UnsupportedOperationException();
+        return new TreeIterator(null, null);
+    }
+
+    @Override
+    public Iterator<E> iterator(E fromElement, E toElement) {
+        return new TreeIterator(fromElement, toElement);
+    }
+
+    @Override
+    public E lower(E toElement) {
+        Node result = null;
+        Node curr = root;
+        while (curr != null) {
+            if (toElement == null || compare(curr.value, toElement) < 0) {
+                result = curr;
+                curr = curr.right;
+            } else {
+                curr = curr.left;
+            }
+        }
+        return result == null ? null : result.value;
+    }
+
+    /**
+     * In-order обход со стеком пройденных, но ещё не выданных узлов.
+     * Родительских ссылок у узлов нет, поэтому после удаления через итератор стек заново строится
+     * спуском к следующему элементу: удаление узла с двумя детьми переносит в него значение
+     * преемника и отцепляет узел преемника, а он как раз лежит на вершине стека.
+     */
+    private final class TreeIterator implements Iterator<E> {
+        private final Deque<Node> stack = new ArrayDeque<>();
+        private final E toElement;
+        private E lastReturned;
+        private int expectedModCount = modCount;
+
+        TreeIterator(E fromElement, E toElement) {
+            this.toElement = toElement;
+            seek(fromElement);
+        }
+
+        private void seek(E fromElement) {
+            stack.clear();
+            Node curr = root;
+            while (curr != null) {
+                if (fromElement == null || compare(curr.value, fromElement) >= 0) {
+                    stack.push(curr);
+                    curr = curr.left;
+                } else {
+                    curr = curr.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty() && (toElement == null || compare(stack.peek().value, toElement) < 0);
+        }
+
+        @Override
+        public E next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node node = stack.pop();
+            for (Node curr = node.right; curr != null; curr = curr.left) {
+                stack.push(curr);
+            }
+            lastReturned = node.value;
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            E next = stack.isEmpty() ? null : stack.peek().value;
+            BinarySearchTree.this.remove(lastReturned);
+            expectedModCount = modCount;
+            lastReturned = null;
+            if (next == null) {
+                stack.clear();
+            } else {
+                seek(next);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,28 @@
+package ru.mail.polis;
+
+/**
+ * Поиск по дереву с ограничением числа переходов по ссылкам, на котором
+ * {@link ConcurrentBalancedSortedSet} строит оптимистичное чтение. Посреди поворота
+ * читатель без синхронизации может увидеть цикл из ссылок left / right, и спуск
+ * без ограничения не обязан закончиться.
+ * Каждая операция, не уложившись в maxHops переходов, бросает {@link HopLimitExceededException}.
+ */
+interface BoundedSearch<E> {
+
+    boolean contains(Object object, int maxHops);
+
+    /**
+     * @throws java.util.NoSuchElementException если дерево пустое
+     */
+    E first(int maxHops);
+
+    /**
+     * @throws java.util.NoSuchElementException если дерево пустое
+     */
+    E last(int maxHops);
+
+    /**
+     * @see NavigableTree#lower(Object)
+     */
+    E lower(E toElement, int maxHops);
+}
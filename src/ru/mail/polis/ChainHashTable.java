@@ -2,19 +2,51 @@ package ru.mail.polis;
 
 import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 public class ChainHashTable<E> extends AbstractSet<E> implements Set<E> {
 
     private final int INITIAL_CAPACITY = 8;
 //    private final float LOAD_FACTOR = 0.5f;
+    /**
+     * Сколько корзин старой таблицы переносится за одну операцию в инкрементальном режиме.
+     * После расширения до следующего нужно не меньше table.length / 4 вставок,
+     * а корзин в старой таблице table.length / 2, так что перенос успевает закончиться
+     */
+    private final int MIGRATION_STEP = 4;
     private Object[] table;
     private int size;
+    /**
+     * Растёт при каждом изменении цепочек, включая перенос корзин; по нему итераторы замечают изменения
+     */
+    private int modCount;
+
+    private final boolean incrementalResize;
+    /**
+     * Таблица, из которой идёт перенос, или null
+     */
+    private Object[] oldTable;
+    /**
+     * Корзины oldTable с меньшими индексами уже перенесены
+     */
+    private int migrated;
 
     public ChainHashTable() {
+        this(false);
+    }
+
+    /**
+     * @param incrementalResize если true, при расширении старая таблица остаётся рядом с новой
+     *                          и переносится по {@link #MIGRATION_STEP} корзины за add / remove,
+     *                          поэтому время одной операции не зависит от размера таблицы
+     */
+    public ChainHashTable(boolean incrementalResize) {
         this.table = new Object[INITIAL_CAPACITY];
+        this.incrementalResize = incrementalResize;
     }
 
     /**
@@ -26,11 +58,15 @@ public class ChainHashTable<E> extends AbstractSet<E> implements Set<E> {
      */
     @Override
     public boolean add(E value) {
-        int idx = hash(value);
+        migrate();
+        if (find(oldBucket(value), value) != null) {
+            return false;
+        }
+        int idx = hash(value, table);
         if (table[idx] == null) {
             table[idx] = new Node<>(value);
         } else {
-            Node curr = getNode(idx);
+            Node curr = getNode(table, idx);
             while (curr.next != null && !value.equals(curr.value)) {
                 curr = curr.next;
             }
@@ -40,6 +76,7 @@ public class ChainHashTable<E> extends AbstractSet<E> implements Set<E> {
             curr.next = new Node<>(value);
         }
         size++;
+        modCount++;
         resize();
         return true;
     }
@@ -56,22 +93,38 @@ public class ChainHashTable<E> extends AbstractSet<E> implements Set<E> {
         @SuppressWarnings("unchecked")
         E value = (E) object;
 
+        migrate();
+        return delete(value);
+    }
+
+    /**
+     * Удаление без шага переноса: корзины не переезжают, поэтому итератор может продолжить обход
+     */
+    private boolean delete(E value) {
+        int oldIdx = oldBucket(value);
+        if (oldIdx >= 0 && remove(oldTable, oldIdx, value)) {
+            return true;
+        }
+        return remove(table, hash(value, table), value);
+    }
+
+    private boolean remove(Object[] tab, int idx, E value) {
         Node prev = null;
-        int idx = hash(value);
-        Node curr = getNode(idx);
+        Node curr = getNode(tab, idx);
         while (curr != null && !value.equals(curr.value)) {
             prev = curr;
             curr = curr.next;
         }
         if (curr != null) {
             if (prev == null) { //head
-                table[idx] = getNode(idx).next;
+                tab[idx] = getNode(tab, idx).next;
             } else {
                 prev.next = curr.next;
             }
             curr.value = null;
             curr.next = null;
             size--;
+            modCount++;
             return true;
         }
         return false;
@@ -79,6 +132,7 @@ public class ChainHashTable<E> extends AbstractSet<E> implements Set<E> {
 
     /**
      * Ищет элемент с таким же значением в хеш-таблице.
+     * Во время переноса смотрит и в старую таблицу, если корзина элемента в ней ещё не перенесена.
      * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
      *
      * @param object элемент который необходимо поискать
@@ -89,45 +143,94 @@ public class ChainHashTable<E> extends AbstractSet<E> implements Set<E> {
         @SuppressWarnings("unchecked")
         E value = (E) object;
 
-        Node curr = getNode(hash(value));
-        while (curr != null && !value.equals(curr.value)) {
-            curr = curr.next;
+        Node<E> curr = find(oldBucket(value), value);
+        if (curr == null) {
+            curr = getNode(table, hash(value, table));
+            while (curr != null && !value.equals(curr.value)) {
+                curr = curr.next;
+            }
         }
         //Вышли по второму условию
         return curr != null;
     }
 
-    private int hash(E value) {
-        return Math.abs(value.hashCode()) % table.length;
+    /**
+     * @param oldIdx корзина старой таблицы или -1
+     */
+    private Node<E> find(int oldIdx, E value) {
+        if (oldIdx < 0) {
+            return null;
+        }
+        Node<E> curr = getNode(oldTable, oldIdx);
+        while (curr != null && !value.equals(curr.value)) {
+            curr = curr.next;
+        }
+        return curr;
     }
 
-    @SuppressWarnings("unchecked")
-    private Node<E> getNode(int idx) {
-        return (Node<E>) table[idx];
+    /**
+     * @return корзина элемента в старой таблице, если она ещё не перенесена, иначе -1
+     */
+    private int oldBucket(E value) {
+        if (oldTable == null) {
+            return -1;
+        }
+        int idx = hash(value, oldTable);
+        return idx >= migrated ? idx : -1;
+    }
+
+    private int hash(E value, Object[] tab) {
+        return (value.hashCode() & Integer.MAX_VALUE) % tab.length;
     }
 
     @SuppressWarnings("unchecked")
+    private Node<E> getNode(Object[] tab, int idx) {
+        return (Node<E>) tab[idx];
+    }
+
     private void resize() {
         if (size * 2 < table.length) {
             return;
         }
-        Object[] old = this.table;
-        size = 0;
+        if (oldTable != null) {
+            //перенос не успел закончиться (например, после серии remove), доделываем его целиком
+            migrate(oldTable.length);
+        }
+        oldTable = table;
+        migrated = 0;
         table = new Object[table.length << 1];
-        for (int i = 0; i < old.length; i++) {
-            Node<E> node = (Node<E>) old[i];
-            if (node != null) {
-                Node<E> curr = node;
-                while (curr != null) {
-                    Node next = curr.next;
-                    //FIXME: insert value in head (all unique)
-                    add(curr.value);
-                    curr.next = null;
-                    curr.value = null;
-                    curr = next;
-                }
-                old[i] = null;
+        if (!incrementalResize) {
+            migrate(oldTable.length);
+        }
+    }
+
+    private void migrate() {
+        if (oldTable != null) {
+            migrate(MIGRATION_STEP);
+        }
+    }
+
+    /**
+     * Переносит следующие buckets корзин старой таблицы в новую, перевешивая узлы без копирования.
+     * Элементы уникальны, поэтому узел вставляется в голову цепочки без проверки
+     */
+    private void migrate(int buckets) {
+        int end = Math.min(oldTable.length, migrated + buckets);
+        for (int i = migrated; i < end; i++) {
+            Node<E> curr = getNode(oldTable, i);
+            while (curr != null) {
+                Node<E> next = curr.next;
+                int idx = hash(curr.value, table);
+                curr.next = getNode(table, idx);
+                table[idx] = curr;
+                curr = next;
             }
+            oldTable[i] = null;
+        }
+        migrated = end;
+        modCount++;
+        if (migrated == oldTable.length) {
+            oldTable = null;
         }
     }
 
@@ -136,9 +239,82 @@ public class ChainHashTable<E> extends AbstractSet<E> implements Set<E> {
         return size;
     }
 
+    public int getTableSize() {
+        return table.length;
+    }
+
+    /**
+     * @return сколько корзин старой таблицы ещё не перенесено, 0 — переноса нет
+     */
+    public int getPendingBuckets() {
+        return oldTable == null ? 0 : oldTable.length - migrated;
+    }
+
+    /**
+     * Итератор по корзинам: во время переноса сначала по ещё не перенесённым корзинам старой таблицы.
+     * Удаляет через {@link Iterator#remove()} без шага переноса; любое другое изменение таблицы,
+     * в том числе перенос корзин, после создания итератора приводит к ConcurrentModificationException
+     */
     @Override
     public Iterator<E> iterator() {
-        throw new UnsupportedOperationException();
+        return new Iterator<E>() {
+            private Object[] tab = oldTable != null ? oldTable : table;
+            private int idx = oldTable != null ? migrated : 0;
+            private Node<E> next = advance(null);
+            private E lastReturned;
+            private int expectedModCount = modCount;
+
+            private Node<E> advance(Node<E> curr) {
+                if (curr != null && curr.next != null) {
+                    return curr.next;
+                }
+                while (true) {
+                    while (idx < tab.length) {
+                        Node<E> head = getNode(tab, idx++);
+                        if (head != null) {
+                            return head;
+                        }
+                    }
+                    if (tab == table) {
+                        return null;
+                    }
+                    tab = table;
+                    idx = 0;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = next.value;
+                next = advance(next);
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                //следующий узел уже найден, а вырезание предыдущего его не трогает
+                delete(lastReturned);
+                expectedModCount = modCount;
+                lastReturned = null;
+            }
+        };
     }
 
     private static class Node<E> {
@@ -161,4 +337,4 @@ public class ChainHashTable<E> extends AbstractSet<E> implements Set<E> {
         }
     }
 
-}
\ No newline at end of file
+}
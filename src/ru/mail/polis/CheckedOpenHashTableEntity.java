@@ -1,9 +1,5 @@
 package ru.mail.polis;
 
-import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.stream.IntStream;
-
 /**
  * Created by Nechaev Mikhail
  * Since 13/12/2017.
@@ -11,13 +7,27 @@ import java.util.stream.IntStream;
 public abstract class CheckedOpenHashTableEntity implements OpenHashTableEntity {
 
     /**
-     * Проверяет корректность хеш-функции
+     * Проверяет корректность хеш-функции.
+     * Посещённые ячейки отмечаются в битовом множестве: tableSize / 8 байт и никаких объектов на пробу,
+     * так что проверка годится и для таблиц в миллионы ячеек. Останавливается на первом
+     * повторе или выходе за таблицу
      * @param tableSize размер таблицы
      * @return true, если с помощью хеш-функции можно обойти все ячейки хеш-таблицы за tableSize раз
      */
     public boolean isHashFunctionValid(int tableSize) {
-        SortedSet<Integer> idx = new TreeSet<>();
-        IntStream.range(0, tableSize).forEach((probId) -> idx.add(hashCode(tableSize, probId)));
-        return idx.first() == 0 && idx.last() == tableSize - 1 && idx.size() == tableSize;
+        long[] visited = new long[(tableSize + Long.SIZE - 1) / Long.SIZE];
+        for (int probId = 0; probId < tableSize; probId++) {
+            int idx = hashCode(tableSize, probId);
+            if (idx < 0 || idx >= tableSize) {
+                return false;
+            }
+            long bit = 1L << idx;
+            if ((visited[idx >>> 6] & bit) != 0) {
+                return false;
+            }
+            visited[idx >>> 6] |= bit;
+        }
+        //tableSize различных индексов из [0, tableSize) — это все ячейки
+        return true;
     }
 }
@@ -0,0 +1,937 @@
+package ru.mail.polis;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Конкурентное АВЛ-дерево без глобальной блокировки (Bronson, Casper, Chafi, Olukotun,
+ * "A Practical Concurrent Binary Search Tree", PPoPP 2010).
+ * <p>
+ * Поиск не берёт блокировок: он спускается «рука об руку», запоминая версию каждого узла,
+ * и после перехода к потомку проверяет, что версия родителя не изменилась. Повороты помечают
+ * опускающийся узел как «сжимающийся» и по окончании увеличивают его версию, поэтому поиск,
+ * который мог промахнуться мимо переехавшего ключа, откатывается на уровень выше и повторяется.
+ * <p>
+ * Вставка и удаление блокируют только затронутые узлы. Узел с двумя потомками при удалении
+ * не вырезается, а становится маршрутным (present = false) — это не требует блокировать
+ * поддерево. Балансировка ослабленная: высоты и повороты исправляются после изменения
+ * снизу вверх, и в момент покоя дерево снова строго сбалансировано, что и проверяет
+ * {@link #checkBalanced()}.
+ * <p>
+ * Итераторы, first / last и представления диапазонов слабо согласованы: при конкурентных
+ * изменениях они могут не увидеть часть изменений, но выдают элементы строго по возрастанию.
+ */
+public class ConcurrentAVLTree<E extends Comparable<E>> extends AbstractSet<E> implements BalancedSortedSet<E>, NavigableTree<E> {
+
+    private static final Object RETRY = new Object();
+    private static final Object FOUND = new Object();
+
+    private static final long UNLINKED = 1L;
+    private static final long SHRINKING = 2L;
+    private static final long SHRINK_COUNT_INCREMENT = 4L;
+
+    private static final int SPIN_COUNT = 100;
+
+    private static final int UNLINK_REQUIRED = -1;
+    private static final int REBALANCE_REQUIRED = -2;
+    private static final int NOTHING_REQUIRED = -3;
+
+    private static final int RIGHT = 1;
+
+    private final Comparator<E> comparator;
+
+    /**
+     * Фиктивный узел, правый потомок которого — настоящий корень. Никогда не поворачивается
+     * и не удаляется, поэтому у корня всегда есть родитель, которого можно заблокировать.
+     */
+    private final Node<E> rootHolder = new Node<>(null, false, null);
+    private final LongAdder size = new LongAdder();
+
+    public ConcurrentAVLTree() {
+        this(null);
+    }
+
+    public ConcurrentAVLTree(Comparator<E> comparator) {
+        this.comparator = comparator;
+    }
+
+    private int compare(E v1, E v2) {
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    private static boolean isShrinking(long version) {
+        return (version & SHRINKING) != 0;
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Ждёт окончания поворота, в котором участвует узел: сначала крутится,
+     * затем заходит в монитор узла, который держит поворачивающий поток
+     */
+    private static void waitUntilNotChanging(Node<?> node) {
+        long version = node.version;
+        if (isShrinking(version)) {
+            for (int i = 0; i < SPIN_COUNT; i++) {
+                if (node.version != version) {
+                    return;
+                }
+            }
+            synchronized (node) {
+                /* empty */
+            }
+        }
+    }
+
+    /**
+     * Ищет элемент с таким же значением в дереве.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо поискать
+     * @return true, если такой элемент содержится в дереве
+     */
+    @Override
+    public boolean contains(Object object) {
+        @SuppressWarnings("unchecked")
+        E value = (E) object;
+        return attemptGet(value, rootHolder, RIGHT, 0) == FOUND;
+    }
+
+    /**
+     * @return FOUND, null если элемента нет, или RETRY если версия узла node изменилась
+     * с момента, когда он был прочитан как nodeVersion
+     */
+    private Object attemptGet(E value, Node<E> node, int dir, long nodeVersion) {
+        while (true) {
+            Node<E> child = node.child(dir);
+            if (node.version != nodeVersion) {
+                return RETRY;
+            }
+            if (child == null) {
+                return null;
+            }
+            int nextDir = compare(value, child.value);
+            if (nextDir == 0) {
+                return child.present ? FOUND : null;
+            }
+            long childVersion = child.version;
+            if (isShrinking(childVersion)) {
+                waitUntilNotChanging(child);
+            } else if (childVersion != UNLINKED && child == node.child(dir)) {
+                if (node.version != nodeVersion) {
+                    return RETRY;
+                }
+                Object result = attemptGet(value, child, nextDir, childVersion);
+                if (result != RETRY) {
+                    return result;
+                }
+            }
+        }
+    }
+
+    /**
+     * Вставляет элемент в дерево.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param value элемент который необходимо вставить
+     * @return true, если элемент в дереве отсутствовал
+     */
+    @Override
+    public boolean add(E value) {
+        Object result = attemptAdd(value, rootHolder, RIGHT, 0);
+        if (result == FOUND) {
+            return false;
+        }
+        size.increment();
+        return true;
+    }
+
+    /**
+     * @return FOUND если элемент уже был, null если вставлен, RETRY — повторить с уровня выше
+     */
+    private Object attemptAdd(E value, Node<E> node, int dir, long nodeVersion) {
+        Object result = RETRY;
+        do {
+            Node<E> child = node.child(dir);
+            if (node.version != nodeVersion) {
+                return RETRY;
+            }
+            if (child == null) {
+                result = attemptInsert(value, node, dir, nodeVersion);
+            } else {
+                int nextDir = compare(value, child.value);
+                if (nextDir == 0) {
+                    result = attemptMarkPresent(child, value);
+                } else {
+                    long childVersion = child.version;
+                    if (isShrinking(childVersion)) {
+                        waitUntilNotChanging(child);
+                    } else if (childVersion != UNLINKED && child == node.child(dir)) {
+                        if (node.version != nodeVersion) {
+                            return RETRY;
+                        }
+                        result = attemptAdd(value, child, nextDir, childVersion);
+                    }
+                }
+            }
+        } while (result == RETRY);
+        return result;
+    }
+
+    private Object attemptInsert(E value, Node<E> node, int dir, long nodeVersion) {
+        synchronized (node) {
+            if (node.version != nodeVersion || node.child(dir) != null) {
+                return RETRY;
+            }
+            node.setChild(dir, new Node<>(value, true, node));
+        }
+        fixHeightAndRebalance(node);
+        return null;
+    }
+
+    /**
+     * Совпавший узел может быть маршрутным — тогда элемент «вставляется» сменой флага,
+     * а узел получает новое значение: равное по сравнению, но не обязательно тот же объект
+     */
+    private Object attemptMarkPresent(Node<E> node, E value) {
+        synchronized (node) {
+            if (node.version == UNLINKED) {
+                return RETRY;
+            }
+            if (node.present) {
+                return FOUND;
+            }
+            //значение пишется до флага: увидевший present увидит и его
+            node.value = value;
+            node.present = true;
+            return null;
+        }
+    }
+
+    /**
+     * Удаляет элемент с таким же значением из дерева.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо вставить
+     * @return true, если элемент содержался в дереве
+     */
+    @Override
+    public boolean remove(Object object) {
+        @SuppressWarnings("unchecked")
+        E value = (E) object;
+        if (attemptRemove(value, rootHolder, RIGHT, 0) == FOUND) {
+            size.decrement();
+            return true;
+        }
+        return false;
+    }
+
+    private Object attemptRemove(E value, Node<E> node, int dir, long nodeVersion) {
+        Object result = RETRY;
+        do {
+            Node<E> child = node.child(dir);
+            if (node.version != nodeVersion) {
+                return RETRY;
+            }
+            if (child == null) {
+                return null;
+            }
+            int nextDir = compare(value, child.value);
+            if (nextDir == 0) {
+                result = attemptRemoveNode(node, child);
+            } else {
+                long childVersion = child.version;
+                if (isShrinking(childVersion)) {
+                    waitUntilNotChanging(child);
+                } else if (childVersion != UNLINKED && child == node.child(dir)) {
+                    if (node.version != nodeVersion) {
+                        return RETRY;
+                    }
+                    result = attemptRemove(value, child, nextDir, childVersion);
+                }
+            }
+        } while (result == RETRY);
+        return result;
+    }
+
+    private static boolean canUnlink(Node<?> node) {
+        return node.left == null || node.right == null;
+    }
+
+    private Object attemptRemoveNode(Node<E> parent, Node<E> node) {
+        if (!node.present) {
+            return null;
+        }
+        if (!canUnlink(node)) {
+            //два потомка: узел остаётся маршрутным
+            synchronized (node) {
+                if (node.version == UNLINKED || canUnlink(node)) {
+                    return RETRY;
+                }
+                if (!node.present) {
+                    return null;
+                }
+                node.present = false;
+            }
+            return FOUND;
+        }
+        synchronized (parent) {
+            if (parent.version == UNLINKED || node.parent != parent) {
+                return RETRY;
+            }
+            synchronized (node) {
+                if (!node.present) {
+                    return null;
+                }
+                if (!canUnlink(node)) {
+                    return RETRY;
+                }
+                Node<E> splice = node.left == null ? node.right : node.left;
+                if (parent.left == node) {
+                    parent.left = splice;
+                } else {
+                    parent.right = splice;
+                }
+                if (splice != null) {
+                    splice.parent = parent;
+                }
+                node.version = UNLINKED;
+                node.present = false;
+            }
+        }
+        fixHeightAndRebalance(parent);
+        return FOUND;
+    }
+
+    /**
+     * @return новая высота узла, если её нужно исправить, либо один из кодов
+     * UNLINK_REQUIRED / REBALANCE_REQUIRED / NOTHING_REQUIRED
+     */
+    private int nodeCondition(Node<E> node) {
+        Node<E> left = node.left;
+        Node<E> right = node.right;
+        if ((left == null || right == null) && !node.present) {
+            return UNLINK_REQUIRED;
+        }
+        int height = node.height;
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        int newHeight = 1 + Math.max(leftHeight, rightHeight);
+        int diff = leftHeight - rightHeight;
+        if (diff < -1 || diff > 1) {
+            return REBALANCE_REQUIRED;
+        }
+        return height != newHeight ? newHeight : NOTHING_REQUIRED;
+    }
+
+    /**
+     * Поднимается от узла к корню, исправляя высоты, выполняя повороты
+     * и вырезая маршрутные узлы, у которых не больше одного потомка.
+     * <p>
+     * Поворот может вернуть для дальнейшей работы узел ниже себя (маршрутный узел, потерявший
+     * потомка, или всё ещё несбалансированный). Тогда высота вершины поворота, которую видит
+     * его родитель, могла измениться, поэтому родитель откладывается и проверяется после.
+     */
+    private void fixHeightAndRebalance(Node<E> node) {
+        Deque<Node<E>> pending = null;
+        while (true) {
+            if (node == null || node.parent == null) {
+                if (pending == null || pending.isEmpty()) {
+                    return;
+                }
+                node = pending.pop();
+                continue;
+            }
+            int condition = nodeCondition(node);
+            if (condition == NOTHING_REQUIRED || node.version == UNLINKED) {
+                node = null;
+            } else if (condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED) {
+                synchronized (node) {
+                    node = fixHeight(node);
+                }
+            } else {
+                Node<E> parent = node.parent;
+                Node<E> next = node;
+                synchronized (parent) {
+                    if (parent.version != UNLINKED && node.parent == parent) {
+                        synchronized (node) {
+                            next = rebalance(parent, node);
+                        }
+                    }
+                }
+                if (next != null && next != parent) {
+                    if (pending == null) {
+                        pending = new ArrayDeque<>();
+                    }
+                    if (pending.peek() != parent) {
+                        pending.push(parent);
+                    }
+                }
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * Вызывается под блокировкой узла
+     *
+     * @return следующий узел, который нужно исправить, или null
+     */
+    private Node<E> fixHeight(Node<E> node) {
+        int condition = nodeCondition(node);
+        switch (condition) {
+            case REBALANCE_REQUIRED:
+            case UNLINK_REQUIRED:
+                return node;
+            case NOTHING_REQUIRED:
+                return null;
+            default:
+                node.height = condition;
+                //высота потомка могла измениться после чтения — тогда пересчитать ещё раз
+                return nodeCondition(node) == NOTHING_REQUIRED ? node.parent : node;
+        }
+    }
+
+    /**
+     * Вызывается под блокировками parent и node
+     */
+    private Node<E> rebalance(Node<E> parent, Node<E> node) {
+        Node<E> left = node.left;
+        Node<E> right = node.right;
+        if ((left == null || right == null) && !node.present) {
+            return attemptUnlink(parent, node) ? fixHeight(parent) : node;
+        }
+        int height = node.height;
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        int newHeight = 1 + Math.max(leftHeight, rightHeight);
+        int diff = leftHeight - rightHeight;
+        if (diff > 1) {
+            return rebalanceToRight(parent, node, left, rightHeight);
+        } else if (diff < -1) {
+            return rebalanceToLeft(parent, node, right, leftHeight);
+        } else if (newHeight != height) {
+            node.height = newHeight;
+            if (nodeCondition(node) != NOTHING_REQUIRED) {
+                return node;
+            }
+            return fixHeight(parent);
+        }
+        return null;
+    }
+
+    private boolean attemptUnlink(Node<E> parent, Node<E> node) {
+        Node<E> parentLeft = parent.left;
+        Node<E> parentRight = parent.right;
+        if (parentLeft != node && parentRight != node) {
+            return false;
+        }
+        Node<E> left = node.left;
+        Node<E> right = node.right;
+        if (left != null && right != null) {
+            return false;
+        }
+        Node<E> splice = left != null ? left : right;
+        if (parentLeft == node) {
+            parent.left = splice;
+        } else {
+            parent.right = splice;
+        }
+        if (splice != null) {
+            splice.parent = parent;
+        }
+        node.version = UNLINKED;
+        return true;
+    }
+
+    /**
+     * Определяет, что ещё требует исправления после поворота: опустившийся узел,
+     * поднявшийся или, если оба в порядке, высота родителя.
+     * Условия считаются заново, а не по снимку высот, сделанному до поворота: высоты
+     * не заблокированных потомков могли измениться, и поток, который их менял,
+     * мог уже пройти мимо наших узлов
+     */
+    private Node<E> afterRotation(Node<E> parent, Node<E> down, Node<E> up) {
+        if (nodeCondition(down) != NOTHING_REQUIRED) {
+            return down;
+        }
+        if (nodeCondition(up) != NOTHING_REQUIRED) {
+            return up;
+        }
+        return fixHeight(parent);
+    }
+
+    private Node<E> afterDoubleRotation(Node<E> parent, Node<E> down, Node<E> side, Node<E> up) {
+        if (nodeCondition(side) != NOTHING_REQUIRED) {
+            return side;
+        }
+        return afterRotation(parent, down, up);
+    }
+
+    private Node<E> rebalanceToRight(Node<E> parent, Node<E> node, Node<E> left, int rightHeight) {
+        synchronized (left) {
+            int leftHeight = left.height;
+            if (leftHeight - rightHeight <= 1) {
+                return node; //пока ждали блокировку, высоты изменились — повторить
+            }
+            Node<E> leftRight = left.right;
+            int leftLeftHeight = height(left.left);
+            int leftRightHeight = height(leftRight);
+            if (leftLeftHeight >= leftRightHeight) {
+                return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+            }
+            synchronized (leftRight) {
+                leftRightHeight = leftRight.height;
+                if (leftLeftHeight >= leftRightHeight) {
+                    return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+                }
+                Node<E> leftRightLeft = leftRight.left;
+                int leftRightLeftHeight = height(leftRightLeft);
+                int diff = leftLeftHeight - leftRightLeftHeight;
+                if (diff >= -1 && diff <= 1 && !((leftLeftHeight == 0 || leftRightLeftHeight == 0) && !left.present)) {
+                    return rotateRightOverLeft(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightLeftHeight);
+                }
+                if (leftRightHeight - leftLeftHeight <= 1) {
+                    //левый потомок сам сбалансирован, и выравнивать его поворотом не за чем
+                    if (diff < -1 || diff > 1) {
+                        return leftRight; //сначала должен быть сбалансирован leftRight
+                    }
+                    if (leftLeftHeight == 0) {
+                        return left; //маршрутный узел с одним потомком, будет вырезан
+                    }
+                    //поворот оставит маршрутный left без правого потомка, и он будет вырезан
+                    return rotateLeft(node, left, leftLeftHeight, leftRight, leftRightLeft, leftRightLeftHeight, height(leftRight.right));
+                }
+            }
+            //двойной поворот сразу невозможен: сначала выравниваем левого потомка
+            return rebalanceToLeft(node, left, leftRight, leftLeftHeight);
+        }
+    }
+
+    private Node<E> rebalanceToLeft(Node<E> parent, Node<E> node, Node<E> right, int leftHeight) {
+        synchronized (right) {
+            int rightHeight = right.height;
+            if (leftHeight - rightHeight >= -1) {
+                return node;
+            }
+            Node<E> rightLeft = right.left;
+            int rightLeftHeight = height(rightLeft);
+            int rightRightHeight = height(right.right);
+            if (rightRightHeight >= rightLeftHeight) {
+                return rotateLeft(parent, node, leftHeight, right, rightLeft, rightLeftHeight, rightRightHeight);
+            }
+            synchronized (rightLeft) {
+                rightLeftHeight = rightLeft.height;
+                if (rightRightHeight >= rightLeftHeight) {
+                    return rotateLeft(parent, node, leftHeight, right, rightLeft, rightLeftHeight, rightRightHeight);
+                }
+                Node<E> rightLeftRight = rightLeft.right;
+                int rightLeftRightHeight = height(rightLeftRight);
+                int diff = rightRightHeight - rightLeftRightHeight;
+                if (diff >= -1 && diff <= 1 && !((rightRightHeight == 0 || rightLeftRightHeight == 0) && !right.present)) {
+                    return rotateLeftOverRight(parent, node, leftHeight, right, rightLeft, rightRightHeight, rightLeftRightHeight);
+                }
+                if (rightLeftHeight - rightRightHeight <= 1) {
+                    if (diff < -1 || diff > 1) {
+                        return rightLeft;
+                    }
+                    if (rightRightHeight == 0) {
+                        return right;
+                    }
+                    return rotateRight(node, right, rightLeft, rightRightHeight, height(rightLeft.left), rightLeftRight, rightLeftRightHeight);
+                }
+            }
+            return rebalanceToRight(node, right, rightLeft, rightRightHeight);
+        }
+    }
+
+    private Node<E> rotateRight(Node<E> parent, Node<E> node, Node<E> left, int rightHeight,
+                                int leftLeftHeight, Node<E> leftRight, int leftRightHeight) {
+        long nodeVersion = node.version;
+        Node<E> parentLeft = parent.left;
+
+        node.version = nodeVersion | SHRINKING;
+
+        node.left = leftRight;
+        if (leftRight != null) {
+            leftRight.parent = node;
+        }
+        left.right = node;
+        node.parent = left;
+        if (parentLeft == node) {
+            parent.left = left;
+        } else {
+            parent.right = left;
+        }
+        left.parent = parent;
+
+        int newNodeHeight = 1 + Math.max(leftRightHeight, rightHeight);
+        node.height = newNodeHeight;
+        left.height = 1 + Math.max(leftLeftHeight, newNodeHeight);
+
+        node.version = nodeVersion + SHRINK_COUNT_INCREMENT;
+
+        return afterRotation(parent, node, left);
+    }
+
+    private Node<E> rotateLeft(Node<E> parent, Node<E> node, int leftHeight, Node<E> right,
+                               Node<E> rightLeft, int rightLeftHeight, int rightRightHeight) {
+        long nodeVersion = node.version;
+        Node<E> parentLeft = parent.left;
+
+        node.version = nodeVersion | SHRINKING;
+
+        node.right = rightLeft;
+        if (rightLeft != null) {
+            rightLeft.parent = node;
+        }
+        right.left = node;
+        node.parent = right;
+        if (parentLeft == node) {
+            parent.left = right;
+        } else {
+            parent.right = right;
+        }
+        right.parent = parent;
+
+        int newNodeHeight = 1 + Math.max(leftHeight, rightLeftHeight);
+        node.height = newNodeHeight;
+        right.height = 1 + Math.max(newNodeHeight, rightRightHeight);
+
+        node.version = nodeVersion + SHRINK_COUNT_INCREMENT;
+
+        return afterRotation(parent, node, right);
+    }
+
+    private Node<E> rotateRightOverLeft(Node<E> parent, Node<E> node, Node<E> left, int rightHeight,
+                                        int leftLeftHeight, Node<E> leftRight, int leftRightLeftHeight) {
+        long nodeVersion = node.version;
+        long leftVersion = left.version;
+        Node<E> parentLeft = parent.left;
+        Node<E> leftRightLeft = leftRight.left;
+        Node<E> leftRightRight = leftRight.right;
+        int leftRightRightHeight = height(leftRightRight);
+
+        node.version = nodeVersion | SHRINKING;
+        left.version = leftVersion | SHRINKING;
+
+        node.left = leftRightRight;
+        if (leftRightRight != null) {
+            leftRightRight.parent = node;
+        }
+        left.right = leftRightLeft;
+        if (leftRightLeft != null) {
+            leftRightLeft.parent = left;
+        }
+        leftRight.left = left;
+        left.parent = leftRight;
+        leftRight.right = node;
+        node.parent = leftRight;
+        if (parentLeft == node) {
+            parent.left = leftRight;
+        } else {
+            parent.right = leftRight;
+        }
+        leftRight.parent = parent;
+
+        int newNodeHeight = 1 + Math.max(leftRightRightHeight, rightHeight);
+        node.height = newNodeHeight;
+        int newLeftHeight = 1 + Math.max(leftLeftHeight, leftRightLeftHeight);
+        left.height = newLeftHeight;
+        leftRight.height = 1 + Math.max(newLeftHeight, newNodeHeight);
+
+        node.version = nodeVersion + SHRINK_COUNT_INCREMENT;
+        left.version = leftVersion + SHRINK_COUNT_INCREMENT;
+
+        return afterDoubleRotation(parent, node, left, leftRight);
+    }
+
+    private Node<E> rotateLeftOverRight(Node<E> parent, Node<E> node, int leftHeight, Node<E> right,
+                                        Node<E> rightLeft, int rightRightHeight, int rightLeftRightHeight) {
+        long nodeVersion = node.version;
+        long rightVersion = right.version;
+        Node<E> parentLeft = parent.left;
+        Node<E> rightLeftLeft = rightLeft.left;
+        Node<E> rightLeftRight = rightLeft.right;
+        int rightLeftLeftHeight = height(rightLeftLeft);
+
+        node.version = nodeVersion | SHRINKING;
+        right.version = rightVersion | SHRINKING;
+
+        node.right = rightLeftLeft;
+        if (rightLeftLeft != null) {
+            rightLeftLeft.parent = node;
+        }
+        right.left = rightLeftRight;
+        if (rightLeftRight != null) {
+            rightLeftRight.parent = right;
+        }
+        rightLeft.right = right;
+        right.parent = rightLeft;
+        rightLeft.left = node;
+        node.parent = rightLeft;
+        if (parentLeft == node) {
+            parent.left = rightLeft;
+        } else {
+            parent.right = rightLeft;
+        }
+        rightLeft.parent = parent;
+
+        int newNodeHeight = 1 + Math.max(leftHeight, rightLeftLeftHeight);
+        node.height = newNodeHeight;
+        int newRightHeight = 1 + Math.max(rightLeftRightHeight, rightRightHeight);
+        right.height = newRightHeight;
+        rightLeft.height = 1 + Math.max(newNodeHeight, newRightHeight);
+
+        node.version = nodeVersion + SHRINK_COUNT_INCREMENT;
+        right.version = rightVersion + SHRINK_COUNT_INCREMENT;
+
+        return afterDoubleRotation(parent, node, right, rightLeft);
+    }
+
+    /**
+     * Ищет наименьший элемент в дереве
+     * @return Возвращает наименьший элемент в дереве
+     * @throws NoSuchElementException если дерево пустое
+     */
+    @Override
+    public E first() {
+        E value = first(rootHolder.right);
+        if (value == null) {
+            throw new NoSuchElementException("first");
+        }
+        return value;
+    }
+
+    /**
+     * Спуск влево до первого присутствующего узла; маршрутные узлы пропускаются in-order
+     */
+    private E first(Node<E> node) {
+        if (node == null) {
+            return null;
+        }
+        E result = first(node.left);
+        if (result != null) {
+            return result;
+        }
+        if (node.present) {
+            return node.value;
+        }
+        return first(node.right);
+    }
+
+    /**
+     * Ищет наибольший элемент в дереве
+     * @return Возвращает наибольший элемент в дереве
+     * @throws NoSuchElementException если дерево пустое
+     */
+    @Override
+    public E last() {
+        E value = lower(null);
+        if (value == null) {
+            throw new NoSuchElementException("last");
+        }
+        return value;
+    }
+
+    @Override
+    public E lower(E toElement) {
+        return lower(rootHolder.right, toElement);
+    }
+
+    /**
+     * Обратный in-order обход, отсекающий поддеревья не меньше toElement
+     */
+    private E lower(Node<E> node, E toElement) {
+        if (node == null) {
+            return null;
+        }
+        boolean below = toElement == null || compare(node.value, toElement) < 0;
+        if (below) {
+            E result = lower(node.right, toElement);
+            if (result != null) {
+                return result;
+            }
+            if (node.present) {
+                return node.value;
+            }
+        }
+        return lower(node.left, toElement);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return iterator(null, null);
+    }
+
+    /**
+     * Собирает элементы диапазона in-order обходом с отсечением поддеревьев вне границ.
+     * Значения, не большие уже выданного, пропускаются: если поворот перенёс узел в ещё
+     * не пройденную часть дерева, он не будет выдан повторно
+     */
+    @Override
+    public Iterator<E> iterator(E fromElement, E toElement) {
+        List<E> values = new ArrayList<>();
+        collect(rootHolder.right, fromElement, toElement, values);
+        Iterator<E> it = values.iterator();
+        return new Iterator<E>() {
+            private E lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                lastReturned = it.next();
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                ConcurrentAVLTree.this.remove(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+
+    private void collect(Node<E> node, E fromElement, E toElement, List<E> values) {
+        if (node == null) {
+            return;
+        }
+        E value = node.value;
+        boolean aboveFrom = fromElement == null || compare(value, fromElement) >= 0;
+        boolean belowTo = toElement == null || compare(value, toElement) < 0;
+        if (aboveFrom) {
+            collect(node.left, fromElement, toElement, values);
+        }
+        if (aboveFrom && belowTo && node.present
+                && (values.isEmpty() || compare(values.get(values.size() - 1), value) < 0)) {
+            values.add(value);
+        }
+        if (belowTo) {
+            collect(node.right, fromElement, toElement, values);
+        }
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public int size() {
+        return (int) size.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentAVLTree{" +
+                "tree=" + rootHolder.right +
+                "size=" + size + ", " +
+                '}';
+    }
+
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        return new TreeSubSet<>(this, fromElement, toElement);
+    }
+
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        return new TreeSubSet<>(this, null, toElement);
+    }
+
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        return new TreeSubSet<>(this, fromElement, null);
+    }
+
+    /**
+     * Обходит дерево и проверяет что высоты двух поддеревьев
+     * различны по высоте не более чем на 1.
+     * Маршрутные узлы участвуют в проверке наравне с остальными.
+     * Гарантированный результат — только в момент покоя, когда нет конкурентных изменений.
+     *
+     * @throws NotBalancedTreeException если высоты отличаются более чем на один
+     */
+    @Override
+    public void checkBalanced() throws NotBalancedTreeException {
+        traverseTreeAndCheckBalanced(rootHolder.right);
+    }
+
+    private int traverseTreeAndCheckBalanced(Node<E> curr) throws NotBalancedTreeException {
+        if (curr == null) {
+            return 1;
+        }
+        int leftHeight = traverseTreeAndCheckBalanced(curr.left);
+        int rightHeight = traverseTreeAndCheckBalanced(curr.right);
+        if (Math.abs(leftHeight - rightHeight) > 1) {
+            throw NotBalancedTreeException.create("The heights of the two child subtrees of any node must be differ by at most one",
+                    leftHeight, rightHeight, curr.toString());
+        }
+        return Math.max(leftHeight, rightHeight) + 1;
+    }
+
+    static final class Node<E> {
+        /**
+         * Меняется только под блокировкой узла при возвращении маршрутного узла в множество,
+         * и только на равное по сравнению значение, поэтому спуску по дереву это не мешает
+         */
+        volatile E value;
+        volatile boolean present; //false — маршрутный узел, элемент удалён
+        volatile int height;
+        /**
+         * Версия узла: UNLINKED — узел вырезан из дерева, бит SHRINKING — идёт поворот,
+         * при котором поддерево узла уменьшается. Каждый такой поворот увеличивает версию.
+         */
+        volatile long version;
+        volatile Node<E> parent;
+        volatile Node<E> left;
+        volatile Node<E> right;
+
+        Node(E value, boolean present, Node<E> parent) {
+            this.value = value;
+            this.present = present;
+            this.parent = parent;
+            this.height = 1;
+        }
+
+        Node<E> child(int dir) {
+            return dir < 0 ? left : right;
+        }
+
+        void setChild(int dir, Node<E> node) {
+            if (dir < 0) {
+                left = node;
+            } else {
+                right = node;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" +
+                    "value=" + value +
+                    (present ? "" : ", routing") +
+                    ", left=" + left +
+                    ", right=" + right +
+                    ", height=" + height +
+                    '}';
+        }
+    }
+}
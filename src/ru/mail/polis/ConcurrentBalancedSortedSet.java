@@ -0,0 +1,276 @@
+package ru.mail.polis;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Потокобезопасная обёртка над {@link BalancedSortedSet} на {@link StampedLock}.
+ * <p>
+ * Запись (add / remove и массовые операции) берёт исключительную блокировку.
+ * Чтение (contains / first / last / size) сначала выполняется оптимистично, без блокировки,
+ * и результат принимается, только если за это время не было записи; иначе чтение
+ * повторяется под блокировкой на чтение. Поэтому при редких записях читатели не мешают друг другу.
+ * <p>
+ * Оптимистичное чтение возможно, только если делегат реализует {@link BoundedSearch}, как
+ * {@link AVLTree} и {@link RedBlackTree}. Поля left / right в них обычные, и посреди поворота
+ * читатель может увидеть новую ссылку вместе со старой и пойти по циклу; модель памяти не
+ * ограничивает, как долго он будет видеть устаревшее значение. Поэтому спуск ограничен
+ * удвоенной верхней оценкой высоты по размеру дерева: исчерпав её, чтение повторяется под
+ * блокировкой на чтение. Неверный результат или исключение из-за гонки отбрасываются
+ * при проверке штампа. Остальные делегаты читаются только под блокировкой.
+ * <p>
+ * Итераторы и представления диапазонов работают по снимку, сделанному под блокировкой на чтение.
+ */
+public class ConcurrentBalancedSortedSet<E> extends AbstractSet<E> implements BalancedSortedSet<E>, NavigableTree<E> {
+
+    private final BalancedSortedSet<E> delegate;
+    private final StampedLock lock = new StampedLock();
+
+    public ConcurrentBalancedSortedSet(BalancedSortedSet<E> delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Выполняет чтение сначала оптимистично, а при конкурентной записи или исчерпании
+     * числа переходов — под блокировкой на чтение
+     *
+     * @param bounded чтение с ограничением числа переходов
+     * @param reader то же чтение без ограничения
+     */
+    private <R> R read(IntFunction<R> bounded, Supplier<R> reader) {
+        long stamp = delegate instanceof BoundedSearch ? lock.tryOptimisticRead() : 0;
+        if (stamp != 0) {
+            try {
+                R result = bounded.apply(maxHops());
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (HopLimitExceededException e) {
+                /* цикл посреди поворота или устаревший размер: читаем под блокировкой */
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e; //исключение не связано с гонкой
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Высота красно-чёрного дерева не больше 2·log2(n + 1), АВЛ-дерева — меньше;
+     * допускается вдвое больше. Размер читается без блокировки и может быть устаревшим,
+     * тогда чтение просто уйдёт под блокировку
+     */
+    private int maxHops() {
+        int size = Math.max(delegate.size(), 0);
+        return 4 * (Integer.SIZE - Integer.numberOfLeadingZeros(size + 1)) + 4;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BoundedSearch<E> bounded() {
+        return (BoundedSearch<E>) delegate;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return read(maxHops -> bounded().contains(object, maxHops), () -> delegate.contains(object));
+    }
+
+    @Override
+    public boolean add(E value) {
+        long stamp = lock.writeLock();
+        try {
+            return delegate.add(value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        long stamp = lock.writeLock();
+        try {
+            return delegate.remove(object);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        long stamp = lock.writeLock();
+        try {
+            return delegate.addAll(c);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        long stamp = lock.writeLock();
+        try {
+            return delegate.removeAll(c);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        long stamp = lock.writeLock();
+        try {
+            return delegate.retainAll(c);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            delegate.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public E first() {
+        return read(maxHops -> bounded().first(maxHops), delegate::first);
+    }
+
+    @Override
+    public E last() {
+        return read(maxHops -> bounded().last(maxHops), delegate::last);
+    }
+
+    @Override
+    public int size() {
+        return read(maxHops -> delegate.size(), delegate::size);
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+        return delegate.comparator();
+    }
+
+    /**
+     * Проверяет сбалансированность под блокировкой на чтение, поэтому писатели
+     * на время проверки приостанавливаются и дерево не меняется посреди обхода
+     */
+    @Override
+    public void checkBalanced() throws NotBalancedTreeException {
+        long stamp = lock.readLock();
+        try {
+            delegate.checkBalanced();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return iterator(null, null);
+    }
+
+    /**
+     * Итератор по снимку диапазона. Изменения после создания итератора в нём не видны,
+     * remove() удаляет элемент из множества
+     */
+    @Override
+    public Iterator<E> iterator(E fromElement, E toElement) {
+        List<E> snapshot = new ArrayList<>();
+        long stamp = lock.readLock();
+        try {
+            Iterator<E> it;
+            if (fromElement == null && toElement == null) {
+                it = delegate.iterator();
+            } else {
+                it = navigable().iterator(fromElement, toElement);
+            }
+            while (it.hasNext()) {
+                snapshot.add(it.next());
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        Iterator<E> it = snapshot.iterator();
+        return new Iterator<E>() {
+            private E lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                lastReturned = it.next();
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                ConcurrentBalancedSortedSet.this.remove(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+
+    @Override
+    public E lower(E toElement) {
+        NavigableTree<E> tree = navigable();
+        return read(maxHops -> bounded().lower(toElement, maxHops), () -> tree.lower(toElement));
+    }
+
+    private NavigableTree<E> navigable() {
+        if (!(delegate instanceof NavigableTree)) {
+            throw new UnsupportedOperationException("ranges are not supported by " + delegate.getClass().getSimpleName());
+        }
+        return (NavigableTree<E>) delegate;
+    }
+
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        return new TreeSubSet<>(this, fromElement, toElement);
+    }
+
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        return new TreeSubSet<>(this, null, toElement);
+    }
+
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        return new TreeSubSet<>(this, fromElement, null);
+    }
+
+    @Override
+    public String toString() {
+        long stamp = lock.readLock();
+        try {
+            return "Concurrent{" + delegate + '}';
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+}
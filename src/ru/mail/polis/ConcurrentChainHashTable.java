@@ -0,0 +1,368 @@
+package ru.mail.polis;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Потокобезопасная хеш-таблица с цепочками, которую можно разделять между потоками
+ * без внешней синхронизации.
+ * <p>
+ * Пустая корзина заполняется CAS-ом, в непустой запись идёт под монитором головного узла,
+ * так что писатели в разные корзины не мешают друг другу. contains не берёт блокировок:
+ * ссылка next удалённого узла не меняется, поэтому читатель, стоящий на нём, дойдёт до конца цепочки.
+ * <p>
+ * Расширение кооперативное: таблица вдвое больше создаётся один раз, а корзины переносятся
+ * порциями по {@link #TRANSFER_STRIDE}, которые разбирают все потоки, наткнувшиеся на перенос.
+ * Перенесённая корзина заменяется перенаправляющим узлом, по которому читатели
+ * и писатели переходят в новую таблицу. Узлы при переносе копируются, поэтому
+ * читатель старой цепочки видит её целиком.
+ */
+public class ConcurrentChainHashTable<E> extends AbstractSet<E> implements Set<E> {
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final int TRANSFER_STRIDE = 16;
+    /**
+     * Хеш перенаправляющего узла. Хеши элементов всегда неотрицательны
+     */
+    private static final int MOVED = -1;
+
+    private volatile AtomicReferenceArray<Node<E>> table;
+    /**
+     * Текущий перенос или null. Меняется вместе с table под resizeLock
+     */
+    private volatile Transfer<E> transfer;
+    private final Object resizeLock = new Object();
+    private final LongAdder size = new LongAdder();
+
+    public ConcurrentChainHashTable() {
+        this.table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Перемешивает старшие биты с младшими, так как индекс берётся маской
+     */
+    private static int spread(int hashCode) {
+        return (hashCode ^ (hashCode >>> 16)) & Integer.MAX_VALUE;
+    }
+
+    private static int index(int hash, AtomicReferenceArray<?> tab) {
+        return hash & (tab.length() - 1);
+    }
+
+    /**
+     * Вставляет элемент в хеш-таблицу.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param value элемент который необходимо вставить
+     * @return true, если элемент в хеш-таблице отсутствовал
+     */
+    @Override
+    public boolean add(E value) {
+        int hash = spread(value.hashCode());
+        AtomicReferenceArray<Node<E>> tab = table;
+        while (true) {
+            int idx = index(hash, tab);
+            Node<E> head = tab.get(idx);
+            if (head == null) {
+                if (tab.compareAndSet(idx, null, new Node<>(hash, value, null))) {
+                    break;
+                }
+            } else if (head.hash == MOVED) {
+                tab = helpTransfer(((ForwardingNode<E>) head).transfer);
+            } else {
+                synchronized (head) {
+                    if (tab.get(idx) != head) {
+                        continue; //голову удалили или корзину перенесли
+                    }
+                    Node<E> curr = head;
+                    while (true) {
+                        if (curr.hash == hash && value.equals(curr.value)) {
+                            return false;
+                        }
+                        if (curr.next == null) {
+                            curr.next = new Node<>(hash, value, null);
+                            break;
+                        }
+                        curr = curr.next;
+                    }
+                }
+                break;
+            }
+        }
+        size.increment();
+        resize(tab);
+        return true;
+    }
+
+    /**
+     * Удаляет элемент с таким же значением из хеш-таблицы.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо вставить
+     * @return true, если элемент содержался в хеш-таблице
+     */
+    @Override
+    public boolean remove(Object object) {
+        int hash = spread(object.hashCode());
+        AtomicReferenceArray<Node<E>> tab = table;
+        while (true) {
+            int idx = index(hash, tab);
+            Node<E> head = tab.get(idx);
+            if (head == null) {
+                return false;
+            }
+            if (head.hash == MOVED) {
+                tab = helpTransfer(((ForwardingNode<E>) head).transfer);
+                continue;
+            }
+            synchronized (head) {
+                if (tab.get(idx) != head) {
+                    continue;
+                }
+                Node<E> prev = null;
+                Node<E> curr = head;
+                while (curr != null && (curr.hash != hash || !object.equals(curr.value))) {
+                    prev = curr;
+                    curr = curr.next;
+                }
+                if (curr == null) {
+                    return false;
+                }
+                //next удаляемого узла не трогаем: по нему могут идти читатели
+                if (prev == null) { //head
+                    tab.set(idx, curr.next);
+                } else {
+                    prev.next = curr.next;
+                }
+            }
+            size.decrement();
+            return true;
+        }
+    }
+
+    /**
+     * Ищет элемент с таким же значением в хеш-таблице. Не блокирует.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо поискать
+     * @return true, если такой элемент содержится в хеш-таблице
+     */
+    @Override
+    public boolean contains(Object object) {
+        int hash = spread(object.hashCode());
+        AtomicReferenceArray<Node<E>> tab = table;
+        while (true) {
+            Node<E> curr = tab.get(index(hash, tab));
+            if (curr != null && curr.hash == MOVED) {
+                tab = ((ForwardingNode<E>) curr).transfer.to;
+                continue;
+            }
+            while (curr != null && (curr.hash != hash || !object.equals(curr.value))) {
+                curr = curr.next;
+            }
+            //Вышли по второму условию
+            return curr != null;
+        }
+    }
+
+    /**
+     * Начинает перенос, если заполнено не меньше половины таблицы (как в {@link ChainHashTable}),
+     * или присоединяется к уже идущему
+     */
+    private void resize(AtomicReferenceArray<Node<E>> tab) {
+        while (size.sum() * 2 >= tab.length() && tab.length() < MAXIMUM_CAPACITY) {
+            Transfer<E> curr;
+            synchronized (resizeLock) {
+                curr = transfer;
+                if (curr == null) {
+                    if (table != tab) {
+                        tab = table; //кто-то уже расширил, проверим новую таблицу
+                        continue;
+                    }
+                    curr = new Transfer<>(tab);
+                    transfer = curr;
+                }
+            }
+            helpTransfer(curr);
+            if (transfer == curr) {
+                Thread.yield(); //свободных порций нет, последние дописывают другие потоки
+            }
+            tab = table;
+        }
+    }
+
+    /**
+     * Переносит свободные порции корзин, пока они есть
+     *
+     * @return таблица, в которую идёт перенос
+     */
+    private AtomicReferenceArray<Node<E>> helpTransfer(Transfer<E> curr) {
+        int length = curr.from.length();
+        int end;
+        while ((end = curr.nextBucket.getAndAdd(-TRANSFER_STRIDE)) > 0) {
+            int start = Math.max(0, end - TRANSFER_STRIDE);
+            for (int idx = start; idx < end; idx++) {
+                transferBucket(curr, idx);
+            }
+            if (curr.transferred.addAndGet(end - start) == length) {
+                synchronized (resizeLock) {
+                    table = curr.to;
+                    transfer = null;
+                }
+            }
+        }
+        return curr.to;
+    }
+
+    /**
+     * Делит цепочку корзины idx на две по следующему биту хеша: idx и idx + length в новой таблице.
+     * Корзину переносит ровно один поток — тот, что забрал её порцию
+     */
+    private void transferBucket(Transfer<E> curr, int idx) {
+        int length = curr.from.length();
+        while (true) {
+            Node<E> head = curr.from.get(idx);
+            if (head == null) {
+                if (curr.from.compareAndSet(idx, null, curr.forwarding)) {
+                    return;
+                }
+                continue;
+            }
+            synchronized (head) {
+                if (curr.from.get(idx) != head) {
+                    continue;
+                }
+                Node<E> low = null;
+                Node<E> high = null;
+                for (Node<E> node = head; node != null; node = node.next) {
+                    if ((node.hash & length) == 0) {
+                        low = new Node<>(node.hash, node.value, low);
+                    } else {
+                        high = new Node<>(node.hash, node.value, high);
+                    }
+                }
+                curr.to.set(idx, low);
+                curr.to.set(idx + length, high);
+                curr.from.set(idx, curr.forwarding);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) size.sum();
+    }
+
+    /**
+     * Итератор по снимку, который собирается обходом корзин с переходом по перенаправляющим узлам.
+     * Слабо согласован: изменения во время обхода могут быть видны частично. remove() удаляет элемент из таблицы
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> values = new ArrayList<>();
+        AtomicReferenceArray<Node<E>> tab = table;
+        for (int idx = 0; idx < tab.length(); idx++) {
+            collect(tab, idx, values);
+        }
+        Iterator<E> it = values.iterator();
+        return new Iterator<E>() {
+            private E lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                lastReturned = it.next();
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                ConcurrentChainHashTable.this.remove(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+
+    private void collect(AtomicReferenceArray<Node<E>> tab, int idx, List<E> values) {
+        Node<E> head = tab.get(idx);
+        if (head != null && head.hash == MOVED) {
+            AtomicReferenceArray<Node<E>> to = ((ForwardingNode<E>) head).transfer.to;
+            collect(to, idx, values);
+            collect(to, idx + tab.length(), values);
+            return;
+        }
+        for (Node<E> curr = head; curr != null; curr = curr.next) {
+            values.add(curr.value);
+        }
+    }
+
+    /**
+     * Состояние одного расширения: откуда и куда, следующая свободная порция
+     * (корзины разбираются с конца) и число перенесённых корзин
+     */
+    private static final class Transfer<E> {
+        final AtomicReferenceArray<Node<E>> from;
+        final AtomicReferenceArray<Node<E>> to;
+        final ForwardingNode<E> forwarding;
+        final AtomicInteger nextBucket;
+        final AtomicInteger transferred = new AtomicInteger();
+
+        Transfer(AtomicReferenceArray<Node<E>> from) {
+            this.from = from;
+            this.to = new AtomicReferenceArray<>(from.length() << 1);
+            this.forwarding = new ForwardingNode<>(this);
+            this.nextBucket = new AtomicInteger(from.length());
+        }
+    }
+
+    private static class Node<E> {
+        final int hash;
+        final E value;
+        volatile Node<E> next;
+
+        Node(int hash, E value, Node<E> next) {
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+
+        @Override
+        public String toString() {
+            List<E> values = new ArrayList<>();
+            Node<E> curr = this;
+            while (curr != null) {
+                values.add(curr.value);
+                curr = curr.next;
+            }
+            return values.toString();
+        }
+    }
+
+    /**
+     * Ставится на место перенесённой корзины
+     */
+    private static final class ForwardingNode<E> extends Node<E> {
+        final Transfer<E> transfer;
+
+        ForwardingNode(Transfer<E> transfer) {
+            super(MOVED, null, null);
+            this.transfer = transfer;
+        }
+    }
+
+}
@@ -0,0 +1,369 @@
+package ru.mail.polis;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Неблокирующая хеш-таблица с открытой адресацией и двойным хешированием
+ * через {@link OpenHashTableEntity#hashCode(int, int)}. Размер таблицы — степень двойки
+ * (изначально 8), расширение при заполнении половины ячеек.
+ * <p>
+ * Все изменения ячеек — CAS в {@link AtomicReferenceArray}. Ячейка, однажды занятая элементом,
+ * закрепляется за ним до перехеширования: удаление заменяет элемент надгробием с тем же элементом,
+ * а повторная вставка возвращает его на место. Поэтому два потока, вставляющие равные элементы,
+ * всегда сходятся в одной ячейке и дубликатов не бывает.
+ * <p>
+ * Перехеширование кооперативное: новая таблица публикуется в поле next старой, после чего
+ * потоки разбирают старую таблицу порциями по {@link #TRANSFER_CHUNK} ячеек, замораживают
+ * каждую ячейку CAS-ом и копируют живые элементы. Писатели, встретившие перенос, помогают
+ * его закончить; если все порции разобраны, но перенос ещё не опубликован, писатель сам
+ * проходит всю таблицу — копирование идемпотентно, так что ни один поток не ждёт другого.
+ * Читатели не помогают: замороженная ячейка хранит своё последнее состояние.
+ */
+public class ConcurrentOpenHashTable<E extends OpenHashTableEntity> extends AbstractSet<E> implements Set<E> {
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int TRANSFER_CHUNK = 64;
+    private static final int SPINS_BEFORE_SWEEP = 64;
+
+    private final AtomicReference<Table> root = new AtomicReference<>(new Table(INITIAL_CAPACITY));
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Вставляет элемент в хеш-таблицу.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param value элемент который необходимо вставить
+     * @return true, если элемент в хеш-таблице отсутствовал
+     */
+    @Override
+    public boolean add(E value) {
+        Table table = root.get();
+        restart:
+        while (true) {
+            if (table.next.get() != null) {
+                table = help(table);
+                continue;
+            }
+            int length = table.slots.length();
+            for (int probId = 0; probId < length; probId++) {
+                int idx = value.hashCode(length, probId);
+                while (true) {
+                    Object slot = table.slots.get(idx);
+                    if (slot == null) {
+                        if (table.slots.compareAndSet(idx, null, value)) {
+                            size.increment();
+                            if (table.used.incrementAndGet() * 2 >= length) {
+                                resize(table);
+                            }
+                            return true;
+                        }
+                    } else if (slot instanceof Frozen) {
+                        table = help(table);
+                        continue restart;
+                    } else if (slot instanceof Tombstone) {
+                        if (!value.equals(((Tombstone) slot).value)) {
+                            break;
+                        }
+                        if (table.slots.compareAndSet(idx, slot, value)) {
+                            size.increment();
+                            return true;
+                        }
+                    } else {
+                        if (value.equals(slot)) {
+                            return false;
+                        }
+                        break;
+                    }
+                }
+            }
+            //все ячейки закреплены за другими элементами
+            resize(table);
+        }
+    }
+
+    /**
+     * Удаляет элемент с таким же значением из хеш-таблицы.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо вставить
+     * @return true, если элемент содержался в хеш-таблице
+     */
+    @Override
+    public boolean remove(Object object) {
+        @SuppressWarnings("unchecked")
+        E value = (E) object;
+        Table table = root.get();
+        restart:
+        while (true) {
+            if (table.next.get() != null) {
+                table = help(table);
+                continue;
+            }
+            int length = table.slots.length();
+            for (int probId = 0; probId < length; probId++) {
+                int idx = value.hashCode(length, probId);
+                while (true) {
+                    Object slot = table.slots.get(idx);
+                    if (slot == null) {
+                        return false;
+                    } else if (slot instanceof Frozen) {
+                        table = help(table);
+                        continue restart;
+                    } else if (slot instanceof Tombstone) {
+                        if (value.equals(((Tombstone) slot).value)) {
+                            return false;
+                        }
+                        break;
+                    } else {
+                        if (!value.equals(slot)) {
+                            break;
+                        }
+                        if (table.slots.compareAndSet(idx, slot, new Tombstone(slot))) {
+                            size.decrement();
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Ищет элемент с таким же значением в хеш-таблице. Не блокирует и не помогает перехешированию.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо поискать
+     * @return true, если такой элемент содержится в хеш-таблице
+     */
+    @Override
+    public boolean contains(Object object) {
+        @SuppressWarnings("unchecked")
+        E value = (E) object;
+        Table table = root.get();
+        int length = table.slots.length();
+        for (int probId = 0; probId < length; probId++) {
+            Object slot = table.slots.get(value.hashCode(length, probId));
+            if (slot instanceof Frozen) {
+                slot = ((Frozen) slot).state;
+            }
+            if (slot == null) {
+                return false;
+            }
+            if (slot instanceof Tombstone) {
+                if (value.equals(((Tombstone) slot).value)) {
+                    return false;
+                }
+            } else if (value.equals(slot)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Начинает перехеширование таблицы, если его ещё никто не начал, и помогает его закончить.
+     * Если больше половины закреплённых ячеек — надгробия, размер не меняется
+     */
+    private void resize(Table table) {
+        if (table.next.get() == null) {
+            int length = table.slots.length();
+            int newLength = size.sum() * 4 >= length ? length << 1 : length;
+            table.next.compareAndSet(null, new Table(newLength));
+        }
+        help(table);
+    }
+
+    /**
+     * @return таблица, в которую переносится table (уже опубликованная или ещё нет)
+     */
+    private Table help(Table table) {
+        Table next = table.next.get();
+        int length = table.slots.length();
+        int chunks = (length + TRANSFER_CHUNK - 1) / TRANSFER_CHUNK;
+        int chunk;
+        while ((chunk = table.nextChunk.getAndIncrement()) < chunks) {
+            int from = chunk * TRANSFER_CHUNK;
+            transfer(table, next, from, Math.min(length, from + TRANSFER_CHUNK));
+            if (table.transferredChunks.incrementAndGet() == chunks) {
+                root.compareAndSet(table, next);
+            }
+        }
+        for (int spin = 0; spin < SPINS_BEFORE_SWEEP && root.get() == table; spin++) {
+            Thread.yield();
+        }
+        if (root.get() == table) {
+            //кто-то долго переносит свою порцию: доделываем всё сами
+            transfer(table, next, 0, length);
+            root.compareAndSet(table, next);
+        }
+        return next;
+    }
+
+    /**
+     * Замораживает ячейки [from, to) старой таблицы и копирует живые элементы в новую.
+     * Можно вызывать повторно для уже перенесённых ячеек
+     */
+    private void transfer(Table table, Table next, int from, int to) {
+        for (int idx = from; idx < to; idx++) {
+            Object slot = table.slots.get(idx);
+            while (!(slot instanceof Frozen)) {
+                Frozen frozen = new Frozen(slot);
+                if (table.slots.compareAndSet(idx, slot, frozen)) {
+                    slot = frozen;
+                } else {
+                    slot = table.slots.get(idx);
+                }
+            }
+            Object state = ((Frozen) slot).state;
+            if (state != null && !(state instanceof Tombstone)) {
+                copy(next, state);
+            }
+        }
+    }
+
+    /**
+     * Вставляет элемент в новую таблицу, если его там ещё нет.
+     * Опоздавший поток может копировать уже после публикации новой таблицы, когда элемент в ней
+     * успели удалить или начать переносить дальше. Тогда его ячейка (надгробие или замороженная)
+     * встретится на пути раньше любой пустой: ячейки не освобождаются, а элемент был скопирован
+     * до публикации. Поэтому сравниваем и с содержимым таких ячеек, иначе удалённый элемент воскреснет
+     */
+    private void copy(Table next, Object value) {
+        OpenHashTableEntity entity = (OpenHashTableEntity) value;
+        int length = next.slots.length();
+        for (int probId = 0; probId < length; probId++) {
+            int idx = entity.hashCode(length, probId);
+            while (true) {
+                Object slot = next.slots.get(idx);
+                if (slot == null) {
+                    if (next.slots.compareAndSet(idx, null, value)) {
+                        next.used.incrementAndGet();
+                        return;
+                    }
+                } else if (value.equals(unwrap(slot))) {
+                    return;
+                } else {
+                    break;
+                }
+            }
+        }
+        throw new IllegalStateException("No free cells, tableSize = " + length);
+    }
+
+    /**
+     * @return элемент, за которым закреплена ячейка, или null для пустой
+     */
+    private static Object unwrap(Object slot) {
+        if (slot instanceof Frozen) {
+            slot = ((Frozen) slot).state;
+        }
+        if (slot instanceof Tombstone) {
+            slot = ((Tombstone) slot).value;
+        }
+        return slot;
+    }
+
+    @Override
+    public int size() {
+        return (int) size.sum();
+    }
+
+    /**
+     * @return размер текущей таблицы, всегда степень двойки
+     */
+    public int getTableSize() {
+        return root.get().slots.length();
+    }
+
+    /**
+     * Итератор по снимку текущей таблицы. Слабо согласован: изменения во время обхода
+     * могут быть видны частично. remove() удаляет элемент из таблицы
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> values = new ArrayList<>();
+        Table table = root.get();
+        for (int idx = 0; idx < table.slots.length(); idx++) {
+            Object slot = table.slots.get(idx);
+            if (slot instanceof Frozen) {
+                slot = ((Frozen) slot).state;
+            }
+            if (slot != null && !(slot instanceof Tombstone)) {
+                @SuppressWarnings("unchecked")
+                E value = (E) slot;
+                values.add(value);
+            }
+        }
+        Iterator<E> it = values.iterator();
+        return new Iterator<E>() {
+            private E lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                lastReturned = it.next();
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                ConcurrentOpenHashTable.this.remove(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+
+    private static final class Table {
+        final AtomicReferenceArray<Object> slots;
+        /**
+         * Количество ячеек, закреплённых за элементами, вместе с надгробиями
+         */
+        final AtomicInteger used = new AtomicInteger();
+        final AtomicReference<Table> next = new AtomicReference<>();
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final AtomicInteger transferredChunks = new AtomicInteger();
+
+        Table(int length) {
+            this.slots = new AtomicReferenceArray<>(length);
+        }
+    }
+
+    /**
+     * Удалённый элемент. Ячейка остаётся закреплённой за ним
+     */
+    private static final class Tombstone {
+        final Object value;
+
+        Tombstone(Object value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Ячейка старой таблицы, которую уже переносят. Хранит последнее состояние: null, элемент или надгробие
+     */
+    private static final class Frozen {
+        final Object state;
+
+        Frozen(Object state) {
+            this.state = state;
+        }
+    }
+
+}
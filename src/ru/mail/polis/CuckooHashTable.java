@@ -0,0 +1,301 @@
+package ru.mail.polis;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Хеш-таблица с кукушкиным хешированием: у каждого элемента ровно две корзины по {@link #BUCKET_SIZE}
+ * ячеек — {@link OpenHashTableEntity#hashCode(int, int)} с пробами 0 и 1 от числа корзин, —
+ * и небольшой общий тайник на случай, когда элемент не удалось разместить.
+ * Поэтому contains проверяет не больше 2 * BUCKET_SIZE + STASH_SIZE ячеек при любом заполнении.
+ * <p>
+ * Вставка кладёт элемент в свободную ячейку одной из двух корзин, а если обе заняты —
+ * вытесняет случайного соседа в его другую корзину, и так не более {@link #MAX_KICKS} раз.
+ * Если цепочка не закончилась, элемент уходит в тайник, а когда заполнен и он, таблица удваивается.
+ * Таблица растёт только при такой неудаче, поэтому достижимый load factor виден через
+ * {@link #getAchievableLoadFactor()}: с двумя функциями и корзинами по 4 он обычно больше 0.9.
+ */
+public class CuckooHashTable<E extends OpenHashTableEntity> extends AbstractSet<E> implements Set<E> {
+
+    private static final int BUCKET_SIZE = 4;
+    private static final int STASH_SIZE = 4;
+    private static final int INITIAL_BUCKETS = 2;
+    private static final int MAX_KICKS = 256;
+
+    private int size;
+    private int modCount;
+    private Object[] slots;
+    private final Object[] stash = new Object[STASH_SIZE];
+    private int stashSize;
+    private double achievableLoadFactor;
+    private int random = 0x2545F491; //состояние xorshift для выбора вытесняемого
+
+    public CuckooHashTable() {
+        this.slots = new Object[INITIAL_BUCKETS * BUCKET_SIZE];
+    }
+
+    private int buckets() {
+        return slots.length / BUCKET_SIZE;
+    }
+
+    private static int bucket(Object value, int buckets, int function) {
+        return ((OpenHashTableEntity) value).hashCode(buckets, function);
+    }
+
+    /**
+     * Вставляет элемент в хеш-таблицу.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param value элемент который необходимо вставить
+     * @return true, если элемент в хеш-таблице отсутствовал
+     */
+    @Override
+    public boolean add(E value) {
+        if (contains(value)) {
+            return false;
+        }
+        Object homeless = insert(value);
+        if (homeless != null) {
+            achievableLoadFactor = getLoadFactor();
+            grow(homeless);
+        }
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * @return элемент, оставшийся без места, если заполнен и тайник, иначе null
+     */
+    private Object insert(Object value) {
+        int buckets = buckets();
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            int first = bucket(value, buckets, 0);
+            int second = bucket(value, buckets, 1);
+            if (place(first, value) || place(second, value)) {
+                return null;
+            }
+            //обе корзины заняты: вытесняем случайного соседа из одной из них
+            random ^= random << 13;
+            random ^= random >>> 17;
+            random ^= random << 5;
+            int bucket = (random & 1) == 0 ? first : second;
+            int idx = bucket * BUCKET_SIZE + ((random >>> 1) & (BUCKET_SIZE - 1));
+            Object evicted = slots[idx];
+            slots[idx] = value;
+            value = evicted;
+        }
+        if (stashSize < STASH_SIZE) {
+            for (int i = 0; i < STASH_SIZE; i++) {
+                if (stash[i] == null) {
+                    stash[i] = value;
+                    stashSize++;
+                    return null;
+                }
+            }
+        }
+        return value;
+    }
+
+    private boolean place(int bucket, Object value) {
+        int from = bucket * BUCKET_SIZE;
+        for (int idx = from; idx < from + BUCKET_SIZE; idx++) {
+            if (slots[idx] == null) {
+                slots[idx] = value;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Удваивает таблицу и переносит в неё все элементы, включая тайник и оставшийся без места.
+     * Если и в новой таблице кто-то не поместился, удваивает ещё раз
+     */
+    private void grow(Object homeless) {
+        Object[] values = new Object[size + 1];
+        int count = 0;
+        for (Object value : slots) {
+            if (value != null) {
+                values[count++] = value;
+            }
+        }
+        for (Object value : stash) {
+            if (value != null) {
+                values[count++] = value;
+            }
+        }
+        values[count++] = homeless;
+        int length = slots.length;
+        boolean placed = false;
+        while (!placed) {
+            length <<= 1;
+            slots = new Object[length];
+            Arrays.fill(stash, null);
+            stashSize = 0;
+            placed = true;
+            for (int i = 0; i < count && placed; i++) {
+                placed = insert(values[i]) == null;
+            }
+        }
+    }
+
+    /**
+     * Удаляет элемент с таким же значением из хеш-таблицы.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо вставить
+     * @return true, если элемент содержался в хеш-таблице
+     */
+    @Override
+    public boolean remove(Object object) {
+        int buckets = buckets();
+        for (int function = 0; function < 2; function++) {
+            int from = bucket(object, buckets, function) * BUCKET_SIZE;
+            for (int idx = from; idx < from + BUCKET_SIZE; idx++) {
+                if (object.equals(slots[idx])) {
+                    removeAt(idx);
+                    return true;
+                }
+            }
+        }
+        for (int i = 0; i < STASH_SIZE; i++) {
+            if (object.equals(stash[i])) {
+                removeAt(slots.length + i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param idx ячейка таблицы или slots.length + номер ячейки тайника
+     */
+    private void removeAt(int idx) {
+        if (idx < slots.length) {
+            slots[idx] = null;
+        } else {
+            stash[idx - slots.length] = null;
+            stashSize--;
+        }
+        size--;
+        modCount++;
+    }
+
+    /**
+     * Ищет элемент с таким же значением в хеш-таблице.
+     * Проверяет не больше 2 * BUCKET_SIZE + STASH_SIZE ячеек.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо поискать
+     * @return true, если такой элемент содержится в хеш-таблице
+     */
+    @Override
+    public boolean contains(Object object) {
+        int buckets = buckets();
+        for (int function = 0; function < 2; function++) {
+            int from = bucket(object, buckets, function) * BUCKET_SIZE;
+            for (int idx = from; idx < from + BUCKET_SIZE; idx++) {
+                if (object.equals(slots[idx])) {
+                    return true;
+                }
+            }
+        }
+        if (stashSize > 0) {
+            for (Object value : stash) {
+                if (object.equals(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getTableSize() {
+        return slots.length;
+    }
+
+    /**
+     * @return текущая доля занятых ячеек (без тайника)
+     */
+    public double getLoadFactor() {
+        return (double) (size - stashSize) / slots.length;
+    }
+
+    /**
+     * @return load factor, при котором таблице в последний раз пришлось расти, — достижимое заполнение.
+     * На маленьких таблицах оно случайно и может доходить до 1, на больших устойчиво.
+     * 0, пока таблица ни разу не росла
+     */
+    public double getAchievableLoadFactor() {
+        return achievableLoadFactor;
+    }
+
+    /**
+     * Итератор по ячейкам и тайнику. Удаление через итератор освобождает ячейку, остальные
+     * элементы не двигаются. Любое другое изменение таблицы после создания итератора
+     * приводит к ConcurrentModificationException
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int idx = advance(0);
+            private int lastReturned = -1;
+            private int expectedModCount = modCount;
+
+            private Object at(int i) {
+                return i < slots.length ? slots[i] : stash[i - slots.length];
+            }
+
+            private int advance(int from) {
+                while (from < slots.length + STASH_SIZE && at(from) == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return idx < slots.length + STASH_SIZE;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = idx;
+                E value = (E) at(idx);
+                idx = advance(idx + 1);
+                return value;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned < 0) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                removeAt(lastReturned);
+                expectedModCount = modCount;
+                lastReturned = -1;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,606 @@
+package ru.mail.polis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Обёртка, делающая любое множество ({@link AVLTree}, {@link RedBlackTree}, {@link ChainHashTable},
+ * {@link OpenHashTable}, ...) устойчивым к сбоям: каждое изменение пишется в журнал,
+ * а время от времени всё содержимое сохраняется снимком.
+ * <p>
+ * В каталоге лежат снимок snapshot-N и журнал wal-N поколения N. Запись журнала — операция,
+ * длина, элемент в {@link ElementCodec} и CRC32C, так что оборванный при сбое хвост
+ * распознаётся и отбрасывается. Снимок — количество элементов, элементы и CRC32C; он пишется
+ * во временный файл, сбрасывается на диск и переименовывается в snapshot-N+1, после чего
+ * начинается пустой журнал wal-N+1, а файлы поколения N удаляются. Снимок делается, когда
+ * журнал вырастает больше порога, или явно через {@link #snapshot()}.
+ * При открытии читается последний снимок и поверх него проигрывается журнал.
+ * <p>
+ * Когда изменение становится надёжным, задаёт {@link SyncPolicy}: сразу (add/remove
+ * возвращаются после fsync), раз в несколько записей или раз в интервал времени.
+ * fsync групповой: записи копятся в буфере, и один поток-лидер пишет и сбрасывает
+ * весь буфер сразу, пока остальные ждут, так что одновременные add из многих потоков
+ * делят один fsync. Сами операции над множеством идут под общим монитором,
+ * поэтому обёрнутое множество не обязано быть потокобезопасным.
+ */
+public class DurableSet<E> extends AbstractSet<E> implements Set<E>, Closeable {
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final int RECORD_OVERHEAD = 1 + Integer.BYTES + Integer.BYTES;
+    private static final int SNAPSHOT_MAGIC = 0x534E4150;
+    private static final long DEFAULT_SNAPSHOT_THRESHOLD = 64L << 20;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String LOG_PREFIX = "wal-";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Когда записи журнала сбрасываются на диск
+     */
+    public static final class SyncPolicy {
+
+        private enum Kind {
+            PER_OPERATION, PER_BATCH, INTERVAL
+        }
+
+        private final Kind kind;
+        private final long value;
+
+        private SyncPolicy(Kind kind, long value) {
+            this.kind = kind;
+            this.value = value;
+        }
+
+        /**
+         * add/remove возвращаются, только когда их запись на диске
+         */
+        public static SyncPolicy perOperation() {
+            return new SyncPolicy(Kind.PER_OPERATION, 0);
+        }
+
+        /**
+         * Сброс после каждых records записей, при {@link DurableSet#sync()} и при закрытии
+         */
+        public static SyncPolicy perBatch(int records) {
+            if (records <= 0) {
+                throw new IllegalArgumentException("records = " + records);
+            }
+            return new SyncPolicy(Kind.PER_BATCH, records);
+        }
+
+        /**
+         * Сброс фоновым потоком раз в millis миллисекунд, при {@link DurableSet#sync()} и при закрытии
+         */
+        public static SyncPolicy interval(long millis) {
+            if (millis <= 0) {
+                throw new IllegalArgumentException("millis = " + millis);
+            }
+            return new SyncPolicy(Kind.INTERVAL, millis);
+        }
+    }
+
+    private final Path directory;
+    private final Set<E> set;
+    private final ElementCodec<E> codec;
+    private final SyncPolicy policy;
+    private final long snapshotThreshold;
+
+    /**
+     * Защищает set, буфер журнала, счётчик записей и текущий журнал
+     */
+    private final Object lock = new Object();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    private final DataOutputStream payloadOut = new DataOutputStream(payload);
+    private long appended; //номер последней записи в буфере
+    private long logSize; //байты журнала вместе с буфером
+    private long generation;
+    private FileChannel log;
+
+    /**
+     * Защищает флаг лидера; durable — номер последней записи, которая уже на диске
+     */
+    private final Object syncLock = new Object();
+    private boolean syncing;
+    private volatile long durable;
+
+    private final Thread syncer;
+    private volatile IOException syncFailure;
+    private volatile boolean closed;
+
+    public DurableSet(Path directory, Set<E> set, ElementCodec<E> codec, SyncPolicy policy) throws IOException {
+        this(directory, set, codec, policy, DEFAULT_SNAPSHOT_THRESHOLD);
+    }
+
+    /**
+     * Открывает каталог и восстанавливает в set его содержимое
+     *
+     * @param directory         каталог со снимками и журналом, создаётся при необходимости
+     * @param set               пустое множество, которое будет хранить элементы
+     * @param codec             двоичное представление элементов
+     * @param policy            когда сбрасывать журнал на диск
+     * @param snapshotThreshold размер журнала в байтах, после которого делается снимок
+     * @throws IOException если каталог не удалось прочитать или снимок повреждён
+     */
+    public DurableSet(Path directory, Set<E> set, ElementCodec<E> codec, SyncPolicy policy,
+                      long snapshotThreshold) throws IOException {
+        if (!set.isEmpty()) {
+            throw new IllegalArgumentException("Set must be empty");
+        }
+        this.directory = directory;
+        this.set = set;
+        this.codec = codec;
+        this.policy = policy;
+        this.snapshotThreshold = snapshotThreshold;
+        Files.createDirectories(directory);
+        recover();
+        if (policy.kind == SyncPolicy.Kind.INTERVAL) {
+            syncer = new Thread(this::syncPeriodically, "DurableSet-sync");
+            syncer.setDaemon(true);
+            syncer.start();
+        } else {
+            syncer = null;
+        }
+    }
+
+    private Path snapshotFile(long generation) {
+        return directory.resolve(SNAPSHOT_PREFIX + generation);
+    }
+
+    private Path logFile(long generation) {
+        return directory.resolve(LOG_PREFIX + generation);
+    }
+
+    /**
+     * Берёт последний целый снимок, проигрывает журнал его поколения до первой
+     * повреждённой записи, обрезает журнал по ней и удаляет файлы других поколений
+     */
+    private void recover() throws IOException {
+        long last = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(TMP_SUFFIX)) {
+                    last = Math.max(last, Long.parseLong(name.substring(SNAPSHOT_PREFIX.length())));
+                }
+            }
+        }
+        generation = Math.max(last, 0);
+        if (last >= 0) {
+            readSnapshot(snapshotFile(last));
+        }
+        log = FileChannel.open(logFile(generation), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        logSize = replay(log);
+        log.truncate(logSize);
+        log.position(logSize);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                boolean current = file.equals(snapshotFile(generation)) || file.equals(logFile(generation));
+                if (!current && (name.startsWith(SNAPSHOT_PREFIX) || name.startsWith(LOG_PREFIX))) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private void readSnapshot(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (InputStream in = Files.newInputStream(file)) {
+            DataInputStream data = new DataInputStream(new CheckedInputStream(new BufferedInputStream(in), crc));
+            if (data.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot: " + file);
+            }
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                set.add(codec.read(data));
+            }
+            int expected = (int) crc.getValue();
+            if (data.readInt() != expected) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+        }
+    }
+
+    /**
+     * @return длина целой части журнала
+     */
+    private long replay(FileChannel channel) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        long valid = 0;
+        CRC32C crc = new CRC32C();
+        while (true) {
+            byte[] data;
+            byte op;
+            try {
+                op = in.readByte();
+                int length = in.readInt();
+                if ((op != ADD && op != REMOVE) || length < 0 || valid + RECORD_OVERHEAD + length > channel.size()) {
+                    break;
+                }
+                data = new byte[length];
+                in.readFully(data);
+                crc.reset();
+                crc.update(op);
+                crc.update(length >>> 24);
+                crc.update(length >>> 16);
+                crc.update(length >>> 8);
+                crc.update(length);
+                crc.update(data);
+                if (in.readInt() != (int) crc.getValue()) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            E value = codec.read(new DataInputStream(new ByteArrayInputStream(data)));
+            if (op == ADD) {
+                set.add(value);
+            } else {
+                set.remove(value);
+            }
+            valid += RECORD_OVERHEAD + data.length;
+        }
+        return valid;
+    }
+
+    /**
+     * Вставляет элемент и пишет операцию в журнал.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param value элемент который необходимо вставить
+     * @return true, если элемент отсутствовал
+     */
+    @Override
+    public boolean add(E value) {
+        long seq;
+        synchronized (lock) {
+            ensureOpen();
+            if (!set.add(value)) {
+                return false;
+            }
+            seq = append(ADD, value);
+        }
+        afterWrite(seq);
+        return true;
+    }
+
+    /**
+     * Удаляет элемент и пишет операцию в журнал.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо удалить
+     * @return true, если элемент содержался в множестве
+     */
+    @Override
+    public boolean remove(Object object) {
+        @SuppressWarnings("unchecked")
+        E value = (E) object;
+        long seq;
+        synchronized (lock) {
+            ensureOpen();
+            if (!set.remove(value)) {
+                return false;
+            }
+            seq = append(REMOVE, value);
+        }
+        afterWrite(seq);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        synchronized (lock) {
+            return set.contains(object);
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (lock) {
+            return set.size();
+        }
+    }
+
+    /**
+     * Итератор по копии содержимого. remove() удаляет элемент с записью в журнал
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> values;
+        synchronized (lock) {
+            values = new ArrayList<>(set);
+        }
+        Iterator<E> it = values.iterator();
+        return new Iterator<E>() {
+            private E lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                lastReturned = it.next();
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                DurableSet.this.remove(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Closed");
+        }
+        IOException failure = syncFailure;
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    /**
+     * Кладёт запись в буфер журнала. Вызывается под lock
+     *
+     * @return номер записи
+     */
+    private long append(byte op, E value) {
+        payload.reset();
+        try {
+            codec.write(value, payloadOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int length = payload.size();
+        byte[] frame = new byte[RECORD_OVERHEAD + length];
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        buffer.put(op).putInt(length).put(payload.toByteArray());
+        CRC32C crc = new CRC32C();
+        crc.update(frame, 0, 1 + Integer.BYTES + length);
+        buffer.putInt((int) crc.getValue());
+        pending.writeBytes(frame);
+        logSize += frame.length;
+        return ++appended;
+    }
+
+    private void afterWrite(long seq) {
+        try {
+            if (policy.kind == SyncPolicy.Kind.PER_OPERATION
+                    || policy.kind == SyncPolicy.Kind.PER_BATCH && seq - durable >= policy.value) {
+                awaitDurable(seq);
+            }
+            boolean large;
+            synchronized (lock) {
+                large = logSize >= snapshotThreshold;
+            }
+            if (large) {
+                snapshot(snapshotThreshold);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Сбрасывает на диск все записи, сделанные до вызова
+     */
+    public void sync() throws IOException {
+        long seq;
+        synchronized (lock) {
+            seq = appended;
+        }
+        awaitDurable(seq);
+    }
+
+    /**
+     * Групповой сброс: если запись seq ещё не на диске и никто не пишет, поток становится лидером
+     * и пишет весь накопленный буфер, иначе ждёт текущего лидера
+     */
+    private void awaitDurable(long seq) throws IOException {
+        if (!becomeLeader(seq)) {
+            return;
+        }
+        long covered = durable;
+        try {
+            byte[] bytes;
+            FileChannel channel;
+            long upTo;
+            synchronized (lock) {
+                bytes = pending.toByteArray();
+                pending.reset();
+                upTo = appended;
+                channel = log;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            covered = upTo;
+        } catch (IOException e) {
+            //записи из буфера потеряны, дальше множество не принимает изменений
+            syncFailure = e;
+            throw e;
+        } finally {
+            resignLeader(covered);
+        }
+    }
+
+    /**
+     * @return true, если поток стал лидером; false, если запись seq уже на диске
+     */
+    private boolean becomeLeader(long seq) throws InterruptedIOException {
+        synchronized (syncLock) {
+            while (durable < seq && syncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (durable >= seq) {
+                return false;
+            }
+            syncing = true;
+            return true;
+        }
+    }
+
+    private void resignLeader(long covered) {
+        synchronized (syncLock) {
+            durable = Math.max(durable, covered);
+            syncing = false;
+            syncLock.notifyAll();
+        }
+    }
+
+    /**
+     * Сохраняет снимок содержимого и начинает новый пустой журнал.
+     * Все сделанные до вызова изменения после него надёжны
+     */
+    public void snapshot() throws IOException {
+        snapshot(0);
+    }
+
+    /**
+     * Снимок, если журнал всё ещё не меньше threshold: пока поток ждал, снимок мог сделать другой
+     */
+    private void snapshot(long threshold) throws IOException {
+        becomeLeader(Long.MAX_VALUE);
+        long covered = durable;
+        try {
+            synchronized (lock) {
+                if (logSize < threshold) {
+                    return;
+                }
+                long next = generation + 1;
+                Path tmp = directory.resolve(SNAPSHOT_PREFIX + next + TMP_SUFFIX);
+                try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    CRC32C crc = new CRC32C();
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                            new CheckedOutputStream(Channels.newOutputStream(channel), crc)));
+                    out.writeInt(SNAPSHOT_MAGIC);
+                    out.writeInt(set.size());
+                    for (E value : set) {
+                        codec.write(value, out);
+                    }
+                    out.flush();
+                    out.writeInt((int) crc.getValue());
+                    out.flush();
+                    channel.force(true);
+                }
+                Files.move(tmp, snapshotFile(next), StandardCopyOption.ATOMIC_MOVE);
+                FileChannel nextLog = FileChannel.open(logFile(next), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                syncDirectory(directory);
+                log.close();
+                log = nextLog;
+                Files.deleteIfExists(snapshotFile(generation));
+                Files.deleteIfExists(logFile(generation));
+                generation = next;
+                pending.reset();
+                logSize = 0;
+                covered = appended;
+            }
+        } finally {
+            resignLeader(covered);
+        }
+    }
+
+    /**
+     * Делает переименование файла в каталоге надёжным. Не на всех платформах каталог можно открыть,
+     * тогда пропускаем
+     */
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            /* empty */
+        }
+    }
+
+    /**
+     * Фоновый сброс. Поток будится через unpark, а не interrupt: прерывание посреди записи
+     * закрыло бы FileChannel
+     */
+    private void syncPeriodically() {
+        long period = TimeUnit.MILLISECONDS.toNanos(policy.value);
+        long deadline = System.nanoTime() + period;
+        while (!closed) {
+            long delay = deadline - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(this, delay);
+                continue;
+            }
+            try {
+                sync();
+            } catch (IOException e) {
+                return;
+            }
+            deadline = System.nanoTime() + period;
+        }
+    }
+
+    /**
+     * Сбрасывает журнал на диск и закрывает его. После этого изменять множество нельзя
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (syncer != null) {
+            LockSupport.unpark(syncer);
+            try {
+                syncer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sync();
+        synchronized (lock) {
+            log.close();
+        }
+    }
+
+}
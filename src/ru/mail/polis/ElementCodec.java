@@ -0,0 +1,59 @@
+package ru.mail.polis;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Двоичное представление элементов множества, например для журнала и снимков {@link DurableSet}.
+ * read должен прочитать ровно столько байт, сколько записал write
+ */
+public interface ElementCodec<E> {
+
+    void write(E value, DataOutput out) throws IOException;
+
+    E read(DataInput in) throws IOException;
+
+    static ElementCodec<Integer> integers() {
+        return new ElementCodec<Integer>() {
+            @Override
+            public void write(Integer value, DataOutput out) throws IOException {
+                out.writeInt(value);
+            }
+
+            @Override
+            public Integer read(DataInput in) throws IOException {
+                return in.readInt();
+            }
+        };
+    }
+
+    static ElementCodec<Long> longs() {
+        return new ElementCodec<Long>() {
+            @Override
+            public void write(Long value, DataOutput out) throws IOException {
+                out.writeLong(value);
+            }
+
+            @Override
+            public Long read(DataInput in) throws IOException {
+                return in.readLong();
+            }
+        };
+    }
+
+    static ElementCodec<String> strings() {
+        return new ElementCodec<String>() {
+            @Override
+            public void write(String value, DataOutput out) throws IOException {
+                out.writeUTF(value);
+            }
+
+            @Override
+            public String read(DataInput in) throws IOException {
+                return in.readUTF();
+            }
+        };
+    }
+
+}
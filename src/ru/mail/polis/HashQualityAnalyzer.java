@@ -0,0 +1,228 @@
+package ru.mail.polis;
+
+import java.util.List;
+
+/**
+ * Оценивает качество {@link OpenHashTableEntity#hashCode(int, int)} на выборке элементов:
+ * вставляет их в модель таблицы с открытой адресацией заданного размера до заданного
+ * load factor и собирает статистику, по которой видны плохие хеш-функции ещё до того,
+ * как они замедлят настоящую таблицу.
+ * <p>
+ * Модель хранит только занятость ячеек (битовое множество) и число элементов на каждую
+ * начальную ячейку, поэтому годится и для таблиц в миллионы ячеек.
+ */
+public final class HashQualityAnalyzer {
+
+    private HashQualityAnalyzer() {
+        /* empty */
+    }
+
+    /**
+     * @param sample     элементы; используются первые tableSize * loadFactor из них
+     * @param tableSize  размер таблицы
+     * @param loadFactor доля ячеек, которую нужно заполнить, от 0 до 1
+     * @return статистика проб и распределения по ячейкам
+     */
+    public static Report analyze(List<? extends OpenHashTableEntity> sample, int tableSize, double loadFactor) {
+        if (tableSize <= 0) {
+            throw new IllegalArgumentException("tableSize = " + tableSize);
+        }
+        if (loadFactor <= 0 || loadFactor > 1) {
+            throw new IllegalArgumentException("loadFactor = " + loadFactor);
+        }
+        int count = (int) Math.min(sample.size(), (long) (tableSize * loadFactor));
+        long[] occupied = new long[(tableSize + Long.SIZE - 1) / Long.SIZE];
+        int[] primary = new int[tableSize];
+        long totalProbes = 0;
+        int maxProbes = 0;
+        int inserted = 0;
+        int failed = 0;
+        for (int i = 0; i < count; i++) {
+            OpenHashTableEntity entity = sample.get(i);
+            int probes = 0;
+            int slot = -1;
+            for (int probId = 0; probId < tableSize; probId++) {
+                int idx = entity.hashCode(tableSize, probId);
+                if (idx < 0 || idx >= tableSize) {
+                    break;
+                }
+                if (probId == 0) {
+                    primary[idx]++;
+                }
+                probes++;
+                if ((occupied[idx >>> 6] & (1L << idx)) == 0) {
+                    slot = idx;
+                    break;
+                }
+            }
+            if (slot < 0) {
+                //индекс вне таблицы или пробы не нашли свободную ячейку при незаполненной таблице
+                failed++;
+                continue;
+            }
+            occupied[slot >>> 6] |= 1L << slot;
+            inserted++;
+            totalProbes += probes;
+            maxProbes = Math.max(maxProbes, probes);
+        }
+
+        int usedPrimarySlots = 0;
+        int maxPerPrimarySlot = 0;
+        double expected = (double) count / tableSize;
+        double chiSquare = 0;
+        for (int slots : primary) {
+            if (slots > 0) {
+                usedPrimarySlots++;
+            }
+            maxPerPrimarySlot = Math.max(maxPerPrimarySlot, slots);
+            chiSquare += (slots - expected) * (slots - expected);
+        }
+        chiSquare = count == 0 ? 0 : chiSquare / expected;
+
+        //кластеры — максимальные серии подряд занятых ячеек, с переходом через конец таблицы
+        int clusters = 0;
+        int maxCluster = 0;
+        int run = 0;
+        int firstRun = -1;
+        for (int idx = 0; idx < tableSize; idx++) {
+            if ((occupied[idx >>> 6] & (1L << idx)) != 0) {
+                run++;
+            } else {
+                if (run > 0) {
+                    clusters++;
+                    maxCluster = Math.max(maxCluster, run);
+                    if (firstRun < 0) {
+                        firstRun = run;
+                    }
+                }
+                if (firstRun < 0) {
+                    firstRun = 0;
+                }
+                run = 0;
+            }
+        }
+        if (run > 0) {
+            if (firstRun > 0 && run < tableSize) {
+                //последняя серия продолжается первой
+                maxCluster = Math.max(maxCluster, run + firstRun);
+            } else {
+                clusters++;
+                maxCluster = Math.max(maxCluster, run);
+            }
+        }
+
+        return new Report(tableSize, inserted, failed, inserted == 0 ? 0 : (double) totalProbes / inserted,
+                maxProbes, usedPrimarySlots, maxPerPrimarySlot, chiSquare, clusters,
+                clusters == 0 ? 0 : (double) inserted / clusters, maxCluster);
+    }
+
+    public static final class Report {
+        private final int tableSize;
+        private final int inserted;
+        private final int failed;
+        private final double averageProbes;
+        private final int maxProbes;
+        private final int usedPrimarySlots;
+        private final int maxPerPrimarySlot;
+        private final double chiSquare;
+        private final int clusters;
+        private final double averageCluster;
+        private final int maxCluster;
+
+        private Report(int tableSize, int inserted, int failed, double averageProbes, int maxProbes,
+                       int usedPrimarySlots, int maxPerPrimarySlot, double chiSquare,
+                       int clusters, double averageCluster, int maxCluster) {
+            this.tableSize = tableSize;
+            this.inserted = inserted;
+            this.failed = failed;
+            this.averageProbes = averageProbes;
+            this.maxProbes = maxProbes;
+            this.usedPrimarySlots = usedPrimarySlots;
+            this.maxPerPrimarySlot = maxPerPrimarySlot;
+            this.chiSquare = chiSquare;
+            this.clusters = clusters;
+            this.averageCluster = averageCluster;
+            this.maxCluster = maxCluster;
+        }
+
+        public int getInserted() {
+            return inserted;
+        }
+
+        /**
+         * @return сколько элементов не удалось вставить: индекс вне таблицы или пробы не нашли свободную ячейку
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return среднее число проб при вставке, оно же при успешном поиске
+         */
+        public double getAverageProbes() {
+            return averageProbes;
+        }
+
+        public int getMaxProbes() {
+            return maxProbes;
+        }
+
+        /**
+         * @return среднее число проб при равномерном хешировании для того же заполнения: (1 / a) ln(1 / (1 - a))
+         */
+        public double getExpectedAverageProbes() {
+            double alpha = (double) (inserted + failed) / tableSize;
+            return alpha >= 1 ? Double.POSITIVE_INFINITY : alpha == 0 ? 1 : Math.log(1 / (1 - alpha)) / alpha;
+        }
+
+        /**
+         * @return сколько разных ячеек оказались начальными (проба 0)
+         */
+        public int getUsedPrimarySlots() {
+            return usedPrimarySlots;
+        }
+
+        public int getMaxPerPrimarySlot() {
+            return maxPerPrimarySlot;
+        }
+
+        /**
+         * @return хи-квадрат числа элементов на начальную ячейку против равномерного распределения.
+         * Для хорошей хеш-функции близок к tableSize
+         */
+        public double getChiSquare() {
+            return chiSquare;
+        }
+
+        public int getClusters() {
+            return clusters;
+        }
+
+        public double getAverageCluster() {
+            return averageCluster;
+        }
+
+        public int getMaxCluster() {
+            return maxCluster;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{" +
+                    "tableSize=" + tableSize +
+                    ", inserted=" + inserted +
+                    ", failed=" + failed +
+                    ", averageProbes=" + averageProbes +
+                    ", expectedAverageProbes=" + getExpectedAverageProbes() +
+                    ", maxProbes=" + maxProbes +
+                    ", usedPrimarySlots=" + usedPrimarySlots +
+                    ", maxPerPrimarySlot=" + maxPerPrimarySlot +
+                    ", chiSquare=" + chiSquare +
+                    ", clusters=" + clusters +
+                    ", averageCluster=" + averageCluster +
+                    ", maxCluster=" + maxCluster +
+                    '}';
+        }
+    }
+
+}
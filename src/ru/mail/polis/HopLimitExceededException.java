@@ -0,0 +1,16 @@
+package ru.mail.polis;
+
+/**
+ * Поиск из {@link BoundedSearch} не уложился в отведённое число переходов.
+ * Бросается без стека, единственным экземпляром: это сигнал, а не ошибка
+ */
+final class HopLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    static final HopLimitExceededException INSTANCE = new HopLimitExceededException();
+
+    private HopLimitExceededException() {
+        super("hop limit exceeded", null, false, false);
+    }
+}
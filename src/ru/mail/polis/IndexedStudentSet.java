@@ -0,0 +1,486 @@
+package ru.mail.polis;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Множество студентов со вторичными индексами по ключам, которые вычисляются геттерами.
+ * <p>
+ * Сами студенты лежат в основном множестве, переданном в конструктор. Индекс по диапазону
+ * ({@link #addRangeIndex}) — сбалансированное дерево ({@link RedBlackTree}, {@link AVLTree})
+ * из пар (ключ, студент), упорядоченных по ключу, а при равных ключах — по всем полям студента,
+ * как их сравнивает {@link Student#equals}: разные записи с одним id — разные элементы. Диапазон ключей
+ * в нём — это поддерево-представление {@link SortedSet#subSet}, обход которого стоит O(log n + k).
+ * Индекс по равенству ({@link #addHashIndex}) — словарь из ключа в хеш-таблицу студентов с этим
+ * ключом, размер которой известен за O(1).
+ * <p>
+ * {@link Query} собирает условия по индексам. Для каждого условия оценивается число подходящих
+ * студентов: у хеш-индекса это размер списка, у дерева с порядковыми статистиками
+ * ({@link OrderStatisticSet}) — разность рангов границ за O(log n), у остальных деревьев —
+ * обход диапазона, но не дальше наименьшей уже найденной оценки. Обходится самый избирательный список, а остальные условия
+ * проверяются ключами кандидатов — пересечение с остальными списками без их обхода. Запрос
+ * стоит O(log n + k) для k — размера наименьшего из списков.
+ * <p>
+ * Ключи студента не должны меняться, пока он в множестве: индексы о таких изменениях не знают.
+ * Студенты с ключом null не попадают в индексы по диапазону.
+ */
+public class IndexedStudentSet extends AbstractSet<Student> implements Set<Student> {
+
+    private final Set<Student> students;
+    private final Map<String, Index<?>> indexes = new LinkedHashMap<>();
+
+    /**
+     * @param students пустое основное множество
+     */
+    public IndexedStudentSet(Set<Student> students) {
+        if (!students.isEmpty()) {
+            throw new IllegalArgumentException("Set is not empty");
+        }
+        this.students = students;
+    }
+
+    /**
+     * Индекс по диапазону на {@link RedBlackTree}
+     */
+    public <K extends Comparable<? super K>> void addRangeIndex(String name, Function<Student, K> key) {
+        addRangeIndex(name, key, RedBlackTree::new);
+    }
+
+    /**
+     * @param tree создаёт пустое дерево с заданным компаратором, например {@code AVLTree::new}
+     */
+    public <K extends Comparable<? super K>> void addRangeIndex(
+            String name, Function<Student, K> key,
+            Function<Comparator<IndexEntry<K>>, SortedSet<IndexEntry<K>>> tree) {
+        register(name, new RangeIndex<>(key, tree.apply(IndexEntry::compareTo)));
+    }
+
+    /**
+     * Индекс по равенству, списки студентов — {@link ChainHashTable}
+     */
+    public <K> void addHashIndex(String name, Function<Student, K> key) {
+        addHashIndex(name, key, ChainHashTable::new);
+    }
+
+    /**
+     * @param postings создаёт пустое множество для студентов с одним ключом
+     */
+    public <K> void addHashIndex(String name, Function<Student, K> key, Supplier<Set<Student>> postings) {
+        register(name, new HashIndex<>(key, postings));
+    }
+
+    private void register(String name, Index<?> index) {
+        if (indexes.containsKey(name)) {
+            throw new IllegalArgumentException("Index " + name + " already exists");
+        }
+        for (Student student : students) {
+            index.add(student);
+        }
+        indexes.put(name, index);
+    }
+
+    @Override
+    public boolean add(Student student) {
+        if (!students.add(student)) {
+            return false;
+        }
+        for (Index<?> index : indexes.values()) {
+            index.add(student);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        if (!students.remove(object)) {
+            return false;
+        }
+        for (Index<?> index : indexes.values()) {
+            index.remove((Student) object);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return students.contains(object);
+    }
+
+    @Override
+    public int size() {
+        return students.size();
+    }
+
+    @Override
+    public Iterator<Student> iterator() {
+        Iterator<Student> iterator = students.iterator();
+        return new Iterator<Student>() {
+            private Student last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Student next() {
+                return last = iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                for (Index<?> index : indexes.values()) {
+                    index.remove(last);
+                }
+            }
+        };
+    }
+
+    public Query query() {
+        return new Query();
+    }
+
+    private Index<?> index(String name) {
+        Index<?> index = indexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("No index " + name);
+        }
+        return index;
+    }
+
+    /**
+     * Конъюнкция условий по индексам
+     */
+    public class Query {
+
+        private final List<Condition> conditions = new ArrayList<>();
+
+        private Query() {
+            /* empty */
+        }
+
+        /**
+         * Ключ индекса name равен value
+         */
+        public Query where(String name, Object value) {
+            conditions.add(new EqualityCondition<>(index(name), value));
+            return this;
+        }
+
+        /**
+         * Ключ индекса по диапазону name лежит в [from, to)
+         */
+        public Query whereRange(String name, Comparable<?> from, Comparable<?> to) {
+            Index<?> index = index(name);
+            if (!(index instanceof RangeIndex)) {
+                throw new IllegalArgumentException("Index " + name + " does not support ranges");
+            }
+            conditions.add(new RangeCondition<>((RangeIndex<?>) index, from, to));
+            return this;
+        }
+
+        /**
+         * @return подходящие студенты, упорядоченные по ключу самого избирательного индекса
+         */
+        public Stream<Student> stream() {
+            if (conditions.isEmpty()) {
+                return students.stream();
+            }
+            Condition best = null;
+            long bestEstimate = Long.MAX_VALUE;
+            //сначала точные размеры за O(1), чтобы обход диапазонов сразу был ограничен ими
+            for (boolean exact : new boolean[]{true, false}) {
+                for (Condition condition : conditions) {
+                    if (condition.isExact() == exact) {
+                        long estimate = condition.count(bestEstimate);
+                        if (best == null || estimate < bestEstimate) {
+                            best = condition;
+                            bestEstimate = estimate;
+                        }
+                    }
+                }
+            }
+            Predicate<Student> rest = student -> true;
+            for (Condition condition : conditions) {
+                if (condition != best) {
+                    rest = rest.and(condition::test);
+                }
+            }
+            return StreamSupport.stream(best.candidates().spliterator(), false).filter(rest);
+        }
+
+        public List<Student> list() {
+            return stream().collect(Collectors.toList());
+        }
+
+        public long count() {
+            return stream().count();
+        }
+    }
+
+    private abstract static class Condition {
+
+        abstract Set<Student> candidates();
+
+        /**
+         * @return true, если размер candidates() известен без обхода
+         */
+        abstract boolean isExact();
+
+        abstract boolean test(Student student);
+
+        /**
+         * Считает кандидатов, но не больше limit
+         */
+        long count(long limit) {
+            if (isExact()) {
+                return candidates().size();
+            }
+            long count = 0;
+            Iterator<Student> iterator = candidates().iterator();
+            while (count < limit && iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private static final class EqualityCondition<K> extends Condition {
+        private final Index<K> index;
+        private final K value;
+
+        @SuppressWarnings("unchecked")
+        EqualityCondition(Index<K> index, Object value) {
+            this.index = index;
+            this.value = (K) value;
+        }
+
+        @Override
+        Set<Student> candidates() {
+            return index.get(value);
+        }
+
+        @Override
+        boolean isExact() {
+            return index instanceof HashIndex || index instanceof RangeIndex && ((RangeIndex<?>) index).isExact();
+        }
+
+        @Override
+        boolean test(Student student) {
+            return Objects.equals(index.key.apply(student), value);
+        }
+    }
+
+    private static final class RangeCondition<K extends Comparable<? super K>> extends Condition {
+        private final RangeIndex<K> index;
+        private final K from;
+        private final K to;
+
+        @SuppressWarnings("unchecked")
+        RangeCondition(RangeIndex<K> index, Object from, Object to) {
+            this.index = index;
+            this.from = (K) from;
+            this.to = (K) to;
+        }
+
+        @Override
+        Set<Student> candidates() {
+            return index.range(from, to);
+        }
+
+        @Override
+        boolean isExact() {
+            return index.isExact();
+        }
+
+        @Override
+        boolean test(Student student) {
+            K key = index.key.apply(student);
+            return key != null && key.compareTo(from) >= 0 && key.compareTo(to) < 0;
+        }
+    }
+
+    private abstract static class Index<K> {
+        final Function<Student, K> key;
+
+        Index(Function<Student, K> key) {
+            this.key = key;
+        }
+
+        abstract void add(Student student);
+
+        abstract void remove(Student student);
+
+        abstract Set<Student> get(K value);
+    }
+
+    private static final class HashIndex<K> extends Index<K> {
+        private final Map<K, Set<Student>> postings = new HashMap<>();
+        private final Supplier<Set<Student>> factory;
+
+        HashIndex(Function<Student, K> key, Supplier<Set<Student>> factory) {
+            super(key);
+            this.factory = factory;
+        }
+
+        @Override
+        void add(Student student) {
+            postings.computeIfAbsent(key.apply(student), k -> factory.get()).add(student);
+        }
+
+        @Override
+        void remove(Student student) {
+            K value = key.apply(student);
+            Set<Student> posting = postings.get(value);
+            if (posting != null && posting.remove(student) && posting.isEmpty()) {
+                postings.remove(value);
+            }
+        }
+
+        @Override
+        Set<Student> get(K value) {
+            Set<Student> posting = postings.get(value);
+            return posting == null ? Collections.emptySet() : posting;
+        }
+    }
+
+    private static final class RangeIndex<K extends Comparable<? super K>> extends Index<K> {
+        private final SortedSet<IndexEntry<K>> tree;
+
+        RangeIndex(Function<Student, K> key, SortedSet<IndexEntry<K>> tree) {
+            super(key);
+            this.tree = tree;
+        }
+
+        @Override
+        void add(Student student) {
+            K value = key.apply(student);
+            if (value != null) {
+                tree.add(new IndexEntry<>(value, student, 0));
+            }
+        }
+
+        @Override
+        void remove(Student student) {
+            K value = key.apply(student);
+            if (value != null) {
+                tree.remove(new IndexEntry<>(value, student, 0));
+            }
+        }
+
+        @Override
+        Set<Student> get(K value) {
+            if (value == null) {
+                return Collections.emptySet();
+            }
+            return entries(tree.subSet(new IndexEntry<>(value, null, -1), new IndexEntry<>(value, null, 1)));
+        }
+
+        Set<Student> range(K from, K to) {
+            if (from.compareTo(to) >= 0) {
+                return Collections.emptySet();
+            }
+            return entries(tree.subSet(new IndexEntry<>(from, null, -1), new IndexEntry<>(to, null, -1)));
+        }
+
+        /**
+         * @return true, если размер диапазона считается разностью рангов за O(log n)
+         */
+        boolean isExact() {
+            return tree instanceof OrderStatisticSet;
+        }
+
+        private static <K extends Comparable<? super K>> Set<Student> entries(SortedSet<IndexEntry<K>> range) {
+            return new AbstractSet<Student>() {
+                @Override
+                public Iterator<Student> iterator() {
+                    Iterator<IndexEntry<K>> iterator = range.iterator();
+                    return new Iterator<Student>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Student next() {
+                            return iterator.next().student;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return range.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Элемент дерева индекса по диапазону: ключ и студент. Границы диапазонов — элементы без студента,
+     * которые стоят до (bound = -1) или после (bound = 1) всех студентов со своим ключом
+     */
+    public static final class IndexEntry<K extends Comparable<? super K>> implements Comparable<IndexEntry<K>> {
+        /**
+         * Порядок студентов с одним ключом: по всем полям, которые сравнивает {@link Student#equals},
+         * поэтому он согласован с основным множеством
+         */
+        private static final Comparator<Student> RECORD_ORDER = Comparator.comparingLong(Student::getId)
+                .thenComparingInt(Student::getGroupId)
+                .thenComparingInt(Student::getYearOfAdmission)
+                .thenComparing(Student::getFirstName)
+                .thenComparing(Student::getLastName)
+                .thenComparing(Student::getGender)
+                .thenComparing(Student::getBirthday)
+                .thenComparing(Student::getPhotoReference, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(Student::getEmail, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(Student::getMobile, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+        private final K key;
+        private final Student student;
+        private final int bound;
+
+        private IndexEntry(K key, Student student, int bound) {
+            this.key = key;
+            this.student = student;
+            this.bound = bound;
+        }
+
+        @Override
+        public int compareTo(IndexEntry<K> other) {
+            int result = key.compareTo(other.key);
+            if (result != 0) {
+                return result;
+            }
+            result = Integer.compare(bound, other.bound);
+            if (result != 0 || bound != 0) {
+                return result;
+            }
+            return RECORD_ORDER.compare(student, other.student);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + student;
+        }
+    }
+
+}
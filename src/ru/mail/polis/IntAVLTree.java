@@ -0,0 +1,416 @@
+package ru.mail.polis;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * АВЛ-дерево для ключей типа int.
+ * Ключи хранятся в примитивных полях узлов, сравнение — без компаратора и без упаковки.
+ * Порядок всегда естественный, поэтому {@link #comparator()} возвращает null.
+ * Методы с Integer/Object оставлены для совместимости с {@link SortedSet} и делегируют в примитивные.
+ */
+public class IntAVLTree extends AbstractSet<Integer> implements BalancedSortedSet<Integer>, NavigableTree<Integer> {
+
+    private Node root;
+    private int size;
+    private int modCount;
+    private boolean modified; //результат последней рекурсивной вставки/удаления
+
+    public IntAVLTree() {
+        /* empty */
+    }
+
+    /**
+     * Вставляет элемент в дерево.
+     *
+     * @param value элемент который необходимо вставить
+     * @return true, если элемент в дереве отсутствовал
+     */
+    public boolean add(int value) {
+        modified = false;
+        root = add(root, value);
+        if (modified) {
+            size++;
+            modCount++;
+        }
+        return modified;
+    }
+
+    private Node add(Node curr, int value) {
+        if (curr == null) {
+            modified = true;
+            return new Node(value);
+        }
+        if (value == curr.key) {
+            return curr;
+        } else if (value > curr.key) {
+            curr.right = add(curr.right, value);
+        } else {
+            curr.left = add(curr.left, value);
+        }
+        return modified ? balance(curr) : curr;
+    }
+
+    /**
+     * Удаляет элемент с таким же значением из дерева.
+     *
+     * @param value элемент который необходимо удалить
+     * @return true, если элемент содержался в дереве
+     */
+    public boolean remove(int value) {
+        modified = false;
+        root = remove(root, value);
+        if (modified) {
+            size--;
+            modCount++;
+        }
+        return modified;
+    }
+
+    private Node remove(Node curr, int value) {
+        if (curr == null) {
+            return null;
+        }
+        if (value > curr.key) {
+            curr.right = remove(curr.right, value);
+        } else if (value < curr.key) {
+            curr.left = remove(curr.left, value);
+        } else {
+            modified = true;
+            if (curr.left == null) {
+                return curr.right;
+            }
+            if (curr.right == null) {
+                return curr.left;
+            }
+            Node next = curr.right;
+            while (next.left != null) {
+                next = next.left;
+            } //next = наименьший из больших
+            curr.key = next.key;
+            curr.right = removeMin(curr.right);
+        }
+        return modified ? balance(curr) : curr;
+    }
+
+    private Node removeMin(Node curr) {
+        if (curr.left == null) {
+            return curr.right;
+        }
+        curr.left = removeMin(curr.left);
+        return balance(curr);
+    }
+
+    /**
+     * Ищет элемент с таким же значением в дереве.
+     *
+     * @param value элемент который необходимо поискать
+     * @return true, если такой элемент содержится в дереве
+     */
+    public boolean contains(int value) {
+        Node curr = root;
+        while (curr != null) {
+            if (value == curr.key) {
+                return true;
+            }
+            curr = value > curr.key ? curr.right : curr.left;
+        }
+        return false;
+    }
+
+    /**
+     * Ищет наименьший элемент в дереве
+     * @return Возвращает наименьший элемент в дереве
+     * @throws NoSuchElementException если дерево пустое
+     */
+    public int firstInt() {
+        if (root == null) {
+            throw new NoSuchElementException("first");
+        }
+        Node curr = root;
+        while (curr.left != null) {
+            curr = curr.left;
+        }
+        return curr.key;
+    }
+
+    /**
+     * Ищет наибольший элемент в дереве
+     * @return Возвращает наибольший элемент в дереве
+     * @throws NoSuchElementException если дерево пустое
+     */
+    public int lastInt() {
+        if (root == null) {
+            throw new NoSuchElementException("last");
+        }
+        Node curr = root;
+        while (curr.right != null) {
+            curr = curr.right;
+        }
+        return curr.key;
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        return add(value.intValue());
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        return remove(((Integer) object).intValue());
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return contains(((Integer) object).intValue());
+    }
+
+    @Override
+    public Integer first() {
+        return firstInt();
+    }
+
+    @Override
+    public Integer last() {
+        return lastInt();
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static void fixHeight(Node node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        fixHeight(node);
+        fixHeight(left);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        fixHeight(node);
+        fixHeight(right);
+        return right;
+    }
+
+    private static Node balance(Node node) {
+        fixHeight(node);
+        int diff = height(node.left) - height(node.right);
+        if (diff > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (diff < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    @Override
+    public Comparator<? super Integer> comparator() {
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "IntAVLTree{" +
+                "tree=" + root +
+                "size=" + size + ", " +
+                '}';
+    }
+
+    @Override
+    public SortedSet<Integer> subSet(Integer fromElement, Integer toElement) {
+        return new TreeSubSet<>(this, fromElement, toElement);
+    }
+
+    @Override
+    public SortedSet<Integer> headSet(Integer toElement) {
+        return new TreeSubSet<>(this, null, toElement);
+    }
+
+    @Override
+    public SortedSet<Integer> tailSet(Integer fromElement) {
+        return new TreeSubSet<>(this, fromElement, null);
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new TreeIterator(null, null);
+    }
+
+    @Override
+    public Iterator<Integer> iterator(Integer fromElement, Integer toElement) {
+        return new TreeIterator(fromElement, toElement);
+    }
+
+    @Override
+    public Integer lower(Integer toElement) {
+        Node result = null;
+        Node curr = root;
+        while (curr != null) {
+            if (toElement == null || curr.key < toElement) {
+                result = curr;
+                curr = curr.right;
+            } else {
+                curr = curr.left;
+            }
+        }
+        return result == null ? null : result.key;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * In-order обход со стеком пройденных, но ещё не выданных узлов.
+     * Удаление узла с двумя потомками переносит в него ключ следующего, а балансировка
+     * перестраивает путь, поэтому после remove() стек заново строится спуском к следующему ключу.
+     */
+    private final class TreeIterator implements Iterator<Integer> {
+        private final Deque<Node> stack = new ArrayDeque<>();
+        private final boolean bounded;
+        private final int toElement;
+        private boolean canRemove;
+        private int lastReturned;
+        private int expectedModCount = modCount;
+
+        TreeIterator(Integer fromElement, Integer toElement) {
+            this.bounded = toElement != null;
+            this.toElement = bounded ? toElement : 0;
+            if (fromElement == null) {
+                seek(Integer.MIN_VALUE);
+            } else {
+                seek(fromElement);
+            }
+        }
+
+        private void seek(int fromElement) {
+            stack.clear();
+            Node curr = root;
+            while (curr != null) {
+                if (curr.key >= fromElement) {
+                    stack.push(curr);
+                    curr = curr.left;
+                } else {
+                    curr = curr.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty() && (!bounded || stack.peek().key < toElement);
+        }
+
+        @Override
+        public Integer next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node node = stack.pop();
+            for (Node curr = node.right; curr != null; curr = curr.left) {
+                stack.push(curr);
+            }
+            lastReturned = node.key;
+            canRemove = true;
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            boolean hasNext = !stack.isEmpty();
+            int next = hasNext ? stack.peek().key : 0;
+            IntAVLTree.this.remove(lastReturned);
+            expectedModCount = modCount;
+            canRemove = false;
+            if (hasNext) {
+                seek(next);
+            } else {
+                stack.clear();
+            }
+        }
+    }
+
+    /**
+     * Обходит дерево и проверяет что высоты двух поддеревьев
+     * различны по высоте не более чем на 1
+     *
+     * @throws NotBalancedTreeException если высоты отличаются более чем на один
+     */
+    @Override
+    public void checkBalanced() throws NotBalancedTreeException {
+        traverseTreeAndCheckBalanced(root);
+    }
+
+    private int traverseTreeAndCheckBalanced(Node curr) throws NotBalancedTreeException {
+        if (curr == null) {
+            return 1;
+        }
+        int leftHeight = traverseTreeAndCheckBalanced(curr.left);
+        int rightHeight = traverseTreeAndCheckBalanced(curr.right);
+        if (Math.abs(leftHeight - rightHeight) > 1) {
+            throw NotBalancedTreeException.create("The heights of the two child subtrees of any node must be differ by at most one",
+                    leftHeight, rightHeight, curr.toString());
+        }
+        return Math.max(leftHeight, rightHeight) + 1;
+    }
+
+    private static final class Node {
+        int key;
+        int height = 1;
+        Node left;
+        Node right;
+
+        Node(int key) {
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" +
+                    "key=" + key +
+                    ", left=" + left +
+                    ", right=" + right +
+                    ", height=" + height +
+                    '}';
+        }
+    }
+}
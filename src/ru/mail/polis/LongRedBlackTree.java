@@ -0,0 +1,529 @@
+package ru.mail.polis;
+
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * Красно-чёрное дерево для ключей типа long.
+ * Ключи хранятся в примитивных полях узлов, цвет — в boolean вместо ссылки на enum.
+ * Порядок всегда естественный, поэтому {@link #comparator()} возвращает null.
+ * Методы с Long/Object оставлены для совместимости с {@link SortedSet} и делегируют в примитивные.
+ */
+public class LongRedBlackTree extends AbstractSet<Long> implements BalancedSortedSet<Long>, NavigableTree<Long> {
+
+    private Node root;
+    private int size;
+    private int modCount;
+
+    public LongRedBlackTree() {
+        /* empty */
+    }
+
+    /**
+     * Вставляет элемент в дерево.
+     *
+     * @param value элемент который необходимо вставить
+     * @return true, если элемент в дереве отсутствовал
+     */
+    public boolean add(long value) {
+        Node parent = null;
+        Node curr = root;
+        while (curr != null) {
+            parent = curr;
+            if (value == curr.key) {
+                return false;
+            }
+            curr = value > curr.key ? curr.right : curr.left;
+        }
+        Node node = new Node(value, parent);
+        if (parent == null) {
+            root = node;
+        } else if (value > parent.key) {
+            parent.right = node;
+        } else {
+            parent.left = node;
+        }
+        fixAfterInsertion(node);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    private void fixAfterInsertion(Node x) {
+        x.red = true;
+        while (x != root && x.parent.red) {
+            Node parent = x.parent;
+            Node grand = parent.parent;
+            if (parent == grand.left) {
+                Node uncle = grand.right;
+                if (isRed(uncle)) {
+                    parent.red = false;
+                    uncle.red = false;
+                    grand.red = true;
+                    x = grand;
+                } else {
+                    if (x == parent.right) {
+                        x = parent;
+                        rotateLeft(x);
+                        parent = x.parent;
+                    }
+                    parent.red = false;
+                    grand.red = true;
+                    rotateRight(grand);
+                }
+            } else {
+                Node uncle = grand.left;
+                if (isRed(uncle)) {
+                    parent.red = false;
+                    uncle.red = false;
+                    grand.red = true;
+                    x = grand;
+                } else {
+                    if (x == parent.left) {
+                        x = parent;
+                        rotateRight(x);
+                        parent = x.parent;
+                    }
+                    parent.red = false;
+                    grand.red = true;
+                    rotateLeft(grand);
+                }
+            }
+        }
+        root.red = false;
+    }
+
+    /**
+     * Удаляет элемент с таким же значением из дерева.
+     *
+     * @param value элемент который необходимо удалить
+     * @return true, если элемент содержался в дереве
+     */
+    public boolean remove(long value) {
+        Node node = getNode(value);
+        if (node == null) {
+            return false;
+        }
+        deleteNode(node);
+        size--;
+        modCount++;
+        return true;
+    }
+
+    private void deleteNode(Node p) {
+        if (p.left != null && p.right != null) {
+            Node next = p.right;
+            while (next.left != null) {
+                next = next.left;
+            } //next = наименьший из больших
+            p.key = next.key;
+            p = next;
+        }
+        Node replacement = p.left != null ? p.left : p.right;
+        if (replacement != null) {
+            replacement.parent = p.parent;
+            replaceChild(p, replacement);
+            p.left = p.right = p.parent = null;
+            if (!p.red) {
+                fixAfterDeletion(replacement);
+            }
+        } else if (p.parent == null) {
+            root = null;
+        } else {
+            //удаляемый узел сам играет роль фиктивного листа, пока идёт балансировка
+            if (!p.red) {
+                fixAfterDeletion(p);
+            }
+            replaceChild(p, null);
+            p.parent = null;
+        }
+    }
+
+    private void fixAfterDeletion(Node x) {
+        while (x != root && !isRed(x)) {
+            if (x == x.parent.left) {
+                Node sibling = x.parent.right;
+                if (isRed(sibling)) {
+                    sibling.red = false;
+                    x.parent.red = true;
+                    rotateLeft(x.parent);
+                    sibling = x.parent.right;
+                }
+                if (!isRed(sibling.left) && !isRed(sibling.right)) {
+                    sibling.red = true;
+                    x = x.parent;
+                } else {
+                    if (!isRed(sibling.right)) {
+                        sibling.left.red = false;
+                        sibling.red = true;
+                        rotateRight(sibling);
+                        sibling = x.parent.right;
+                    }
+                    sibling.red = x.parent.red;
+                    x.parent.red = false;
+                    sibling.right.red = false;
+                    rotateLeft(x.parent);
+                    x = root;
+                }
+            } else {
+                Node sibling = x.parent.left;
+                if (isRed(sibling)) {
+                    sibling.red = false;
+                    x.parent.red = true;
+                    rotateRight(x.parent);
+                    sibling = x.parent.left;
+                }
+                if (!isRed(sibling.right) && !isRed(sibling.left)) {
+                    sibling.red = true;
+                    x = x.parent;
+                } else {
+                    if (!isRed(sibling.left)) {
+                        sibling.right.red = false;
+                        sibling.red = true;
+                        rotateLeft(sibling);
+                        sibling = x.parent.left;
+                    }
+                    sibling.red = x.parent.red;
+                    x.parent.red = false;
+                    sibling.left.red = false;
+                    rotateRight(x.parent);
+                    x = root;
+                }
+            }
+        }
+        x.red = false;
+    }
+
+    private static boolean isRed(Node node) {
+        return node != null && node.red;
+    }
+
+    private void replaceChild(Node node, Node child) {
+        if (node.parent == null) {
+            root = child;
+        } else if (node == node.parent.left) {
+            node.parent.left = child;
+        } else {
+            node.parent.right = child;
+        }
+    }
+
+    private void rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        if (right.left != null) {
+            right.left.parent = node;
+        }
+        right.parent = node.parent;
+        replaceChild(node, right);
+        right.left = node;
+        node.parent = right;
+    }
+
+    private void rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        if (left.right != null) {
+            left.right.parent = node;
+        }
+        left.parent = node.parent;
+        replaceChild(node, left);
+        left.right = node;
+        node.parent = left;
+    }
+
+    private Node getNode(long value) {
+        Node curr = root;
+        while (curr != null) {
+            if (value == curr.key) {
+                return curr;
+            }
+            curr = value > curr.key ? curr.right : curr.left;
+        }
+        return null;
+    }
+
+    /**
+     * Ищет элемент с таким же значением в дереве.
+     *
+     * @param value элемент который необходимо поискать
+     * @return true, если такой элемент содержится в дереве
+     */
+    public boolean contains(long value) {
+        return getNode(value) != null;
+    }
+
+    /**
+     * Ищет наименьший элемент в дереве
+     * @return Возвращает наименьший элемент в дереве
+     * @throws NoSuchElementException если дерево пустое
+     */
+    public long firstLong() {
+        if (root == null) {
+            throw new NoSuchElementException("first");
+        }
+        Node curr = root;
+        while (curr.left != null) {
+            curr = curr.left;
+        }
+        return curr.key;
+    }
+
+    /**
+     * Ищет наибольший элемент в дереве
+     * @return Возвращает наибольший элемент в дереве
+     * @throws NoSuchElementException если дерево пустое
+     */
+    public long lastLong() {
+        if (root == null) {
+            throw new NoSuchElementException("last");
+        }
+        Node curr = root;
+        while (curr.right != null) {
+            curr = curr.right;
+        }
+        return curr.key;
+    }
+
+    @Override
+    public boolean add(Long value) {
+        return add(value.longValue());
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        return remove(((Long) object).longValue());
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return contains(((Long) object).longValue());
+    }
+
+    @Override
+    public Long first() {
+        return firstLong();
+    }
+
+    @Override
+    public Long last() {
+        return lastLong();
+    }
+
+    @Override
+    public Comparator<? super Long> comparator() {
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "LongRBTree{" +
+                "size=" + size + ", " +
+                "tree=" + root +
+                '}';
+    }
+
+    @Override
+    public SortedSet<Long> subSet(Long fromElement, Long toElement) {
+        return new TreeSubSet<>(this, fromElement, toElement);
+    }
+
+    @Override
+    public SortedSet<Long> headSet(Long toElement) {
+        return new TreeSubSet<>(this, null, toElement);
+    }
+
+    @Override
+    public SortedSet<Long> tailSet(Long fromElement) {
+        return new TreeSubSet<>(this, fromElement, null);
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new TreeIterator(ceilingNode(null), null);
+    }
+
+    @Override
+    public Iterator<Long> iterator(Long fromElement, Long toElement) {
+        return new TreeIterator(ceilingNode(fromElement), toElement);
+    }
+
+    @Override
+    public Long lower(Long toElement) {
+        Node result = null;
+        Node curr = root;
+        while (curr != null) {
+            if (toElement == null || curr.key < toElement) {
+                result = curr;
+                curr = curr.right;
+            } else {
+                curr = curr.left;
+            }
+        }
+        return result == null ? null : result.key;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * @return узел с наименьшим ключом, не меньшим fromElement (null — наименьший узел дерева)
+     */
+    private Node ceilingNode(Long fromElement) {
+        Node result = null;
+        Node curr = root;
+        while (curr != null) {
+            if (fromElement == null || curr.key >= fromElement) {
+                result = curr;
+                curr = curr.left;
+            } else {
+                curr = curr.right;
+            }
+        }
+        return result;
+    }
+
+    private static Node successor(Node node) {
+        if (node.right != null) {
+            Node curr = node.right;
+            while (curr.left != null) {
+                curr = curr.left;
+            }
+            return curr;
+        }
+        Node curr = node;
+        Node parent = node.parent;
+        while (parent != null && curr == parent.right) {
+            curr = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+
+    private final class TreeIterator implements Iterator<Long> {
+        private final boolean bounded;
+        private final long toElement;
+        private Node next;
+        private Node lastReturned;
+        private int expectedModCount = modCount;
+
+        TreeIterator(Node first, Long toElement) {
+            this.next = first;
+            this.bounded = toElement != null;
+            this.toElement = bounded ? toElement : 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null && (!bounded || next.key < toElement);
+        }
+
+        @Override
+        public Long next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = successor(next);
+            return lastReturned.key;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            //у узла с двумя потомками deleteNode перенесёт в него ключ следующего узла
+            if (lastReturned.left != null && lastReturned.right != null) {
+                next = lastReturned;
+            }
+            deleteNode(lastReturned);
+            size--;
+            modCount++;
+            expectedModCount = modCount;
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * Обходит дерево и проверяет выполнение свойств сбалансированного красно-чёрного дерева
+     * <p>
+     * 1) Корень всегда чёрный.
+     * 2) Если узел красный, то его потомки должны быть чёрными (обратное не всегда верно)
+     * 3) Все пути от узла до листьев содержат одинаковое количество чёрных узлов (чёрная высота)
+     *
+     * @throws NotBalancedTreeException если какое-либо свойство невыполнено
+     */
+    @Override
+    public void checkBalanced() throws NotBalancedTreeException {
+        if (root != null) {
+            if (root.red) {
+                throw new NotBalancedTreeException("Root must be black");
+            }
+            traverseTreeAndCheckBalanced(root);
+        }
+    }
+
+    private int traverseTreeAndCheckBalanced(Node node) throws NotBalancedTreeException {
+        if (node == null) {
+            return 1;
+        }
+        int leftBlackHeight = traverseTreeAndCheckBalanced(node.left);
+        int rightBlackHeight = traverseTreeAndCheckBalanced(node.right);
+        if (leftBlackHeight != rightBlackHeight) {
+            throw NotBalancedTreeException.create("Black height must be equal.", leftBlackHeight, rightBlackHeight, node.toString());
+        }
+        if (node.red) {
+            if (isRed(node.left)) {
+                throw new NotBalancedTreeException("If a node is red, then left child must be black.\n" + node.toString());
+            }
+            if (isRed(node.right)) {
+                throw new NotBalancedTreeException("If a node is red, then right child must be black.\n" + node.toString());
+            }
+            return leftBlackHeight;
+        }
+        return leftBlackHeight + 1;
+    }
+
+    private static final class Node {
+        long key;
+        Node left;
+        Node right;
+        Node parent;
+        boolean red;
+
+        Node(long key, Node parent) {
+            this.key = key;
+            this.parent = parent;
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" +
+                    "key=" + key +
+                    ", left=" + left +
+                    ", right=" + right +
+                    ", color=" + (red ? "RED" : "BLACK") +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ru.mail.polis;
+
+import java.util.Iterator;
+import java.util.SortedSet;
+
+/**
+ * Операции поиска по дереву, на которых строятся представления {@link TreeSubSet}.
+ * Обе операции должны выполняться за O(log n).
+ */
+interface NavigableTree<E> extends SortedSet<E> {
+
+    /**
+     * @param fromElement нижняя граница (включительно), null — с наименьшего элемента
+     * @param toElement верхняя граница (не включительно), null — до наибольшего элемента
+     * @return итератор по элементам дерева из диапазона [fromElement, toElement)
+     */
+    Iterator<E> iterator(E fromElement, E toElement);
+
+    /**
+     * @param toElement верхняя граница (не включительно), null — без ограничения
+     * @return наибольший элемент дерева, строго меньший toElement, или null если такого нет
+     */
+    E lower(E toElement);
+}
@@ -0,0 +1,729 @@
+package ru.mail.polis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * Хеш-таблица студентов с открытой адресацией, хранящая записи вне кучи, в direct {@link ByteBuffer}.
+ * <p>
+ * Каждая ячейка — {@link #SLOT_SIZE} байт: id, ссылки на строки, birthday как epoch day, groupId,
+ * yearOfAdmission, пол, состояние ячейки (пустая, занятая, надгробие) и контрольная сумма.
+ * Строки в UTF-8 с длиной лежат в арене — страницах по {@link #ARENA_PAGE_SIZE} байт, куда пишут
+ * только в конец; ссылка на строку — int, адрес в арене в единицах по 4 байта, так что арена
+ * ограничена 8 ГБ. Ячейки тоже разбиты на страницы, поэтому размер таблицы не ограничен
+ * размером одного буфера. В куче остаются только массивы страниц, сколько бы записей ни было;
+ * объекты Student создаются лишь при чтении.
+ * <p>
+ * Пробы — та же схема двойного хеширования, что у {@link Student#hashCode(int, int)}, но от хеша id:
+ * равные записи имеют равный id, поэтому и поиск записи целиком, и поиск по id идут по одной цепочке проб.
+ * Перехеширование, как у {@link OpenHashTable}, при заполнении половины ячеек вместе с надгробиями;
+ * заодно переписывается арена, и строки удалённых записей пропадают.
+ * <p>
+ * В постоянном режиме ({@link #OffHeapStudentTable(Path)}) страницы — это отображённые в память
+ * участки файла: заголовок, ячейки, за ними страницы арены. Новая страница арены отображается
+ * за концом файла и тем самым его удлиняет, а перехеширование пишет таблицу в соседний файл
+ * и атомарно подменяет им исходный. После {@link #close()} заголовок помечен как чистый,
+ * и открытие читает только его, а страницы подгружаются по мере обращения. Если файл не закрыли,
+ * при открытии все ячейки проверяются по контрольной сумме (она покрывает и строки записи):
+ * недописанные записи становятся надгробиями, размер и конец арены пересчитываются.
+ * Записи, сделанные до {@link #flush()}, переживают и сбой ОС.
+ * Один файл должен открывать один экземпляр таблицы.
+ */
+public class OffHeapStudentTable extends AbstractSet<Student> implements Set<Student>, Closeable {
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int SLOT_PAGE_BITS = 16;
+    private static final int SLOT_PAGE_MASK = (1 << SLOT_PAGE_BITS) - 1;
+    private static final int ARENA_PAGE_BITS = 20;
+    private static final int ARENA_PAGE_SIZE = 1 << ARENA_PAGE_BITS;
+    private static final int ARENA_PAGE_MASK = ARENA_PAGE_SIZE - 1;
+    private static final int MAX_ARENA_PAGES = 1 << (31 - ARENA_PAGE_BITS + 2);
+
+    //раскладка ячейки
+    private static final int ID = 0;
+    private static final int FIRST_NAME = 8;
+    private static final int LAST_NAME = 12;
+    private static final int PHOTO_REFERENCE = 16;
+    private static final int EMAIL = 20;
+    private static final int MOBILE = 24;
+    private static final int BIRTHDAY = 28;
+    private static final int GROUP_ID = 32;
+    private static final int YEAR_OF_ADMISSION = 36;
+    private static final int GENDER = 40;
+    private static final int STATE = 41; //не входит в контрольную сумму: удаление её не пересчитывает
+    private static final int CHECKSUM = 44;
+    private static final int SLOT_SIZE = 48;
+    private static final int[] STRINGS = {FIRST_NAME, LAST_NAME, PHOTO_REFERENCE, EMAIL, MOBILE};
+
+    private static final byte EMPTY = 0; //direct-буфер и новый участок файла заполнены нулями
+    private static final byte OCCUPIED = 1;
+    private static final byte DELETED = 2;
+
+    private static final int NULL_REF = -1;
+    private static final Student.Gender[] GENDERS = Student.Gender.values();
+
+    //раскладка заголовка файла
+    private static final int MAGIC = 0;
+    private static final int VERSION = 4;
+    private static final int TABLE_SIZE = 8;
+    private static final int SIZE = 12;
+    private static final int DELETED_COUNT = 16;
+    private static final int ARENA_PAGES = 20;
+    private static final int ARENA_TOP = 24;
+    private static final int CLEAN = 28;
+    private static final int HEADER_CHECKSUM = 32;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_VALUE = 0x4F485354;
+    private static final int FORMAT_VERSION = 1;
+
+    private int size; //количество записей
+    private int deleted; //количество надгробий
+    private int modCount;
+    private int capacity;
+    private ByteBuffer[] slots;
+    private ByteBuffer[] arena = new ByteBuffer[0];
+    private int arenaPages; //занятые страницы арены, пишем в последнюю
+    private int arenaTop; //занятые байты последней страницы
+
+    private final Path file; //null, если таблица только в памяти
+    private FileChannel channel;
+    private MappedByteBuffer header;
+
+    public OffHeapStudentTable() {
+        this.file = null;
+        this.capacity = INITIAL_CAPACITY;
+        this.slots = allocateSlots(null, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Открывает таблицу в файле или создаёт новую, если файла нет
+     *
+     * @param file файл таблицы
+     * @throws IOException если файл не удалось открыть или это не файл таблицы
+     */
+    public OffHeapStudentTable(Path file) throws IOException {
+        this.file = file;
+        Files.deleteIfExists(rehashFile());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = channel.size() == 0;
+        this.header = map(channel, 0, HEADER_SIZE);
+        if (created) {
+            capacity = INITIAL_CAPACITY;
+            header.putInt(MAGIC, MAGIC_VALUE);
+            header.putInt(VERSION, FORMAT_VERSION);
+            header.putInt(TABLE_SIZE, capacity);
+        } else if (header.getInt(MAGIC) != MAGIC_VALUE || header.getInt(VERSION) != FORMAT_VERSION) {
+            channel.close();
+            throw new IOException("Not a student table or unsupported version: " + file);
+        } else {
+            capacity = header.getInt(TABLE_SIZE);
+        }
+        slots = allocateSlots(channel, capacity);
+        if (created) {
+            writeHeader(false);
+        } else if (header.getInt(CLEAN) == 1 && header.getInt(HEADER_CHECKSUM) == headerChecksum()) {
+            size = header.getInt(SIZE);
+            deleted = header.getInt(DELETED_COUNT);
+            mapArena(header.getInt(ARENA_PAGES));
+            arenaTop = header.getInt(ARENA_TOP);
+            writeHeader(false);
+        } else {
+            recover();
+        }
+        header.force();
+    }
+
+    private Path rehashFile() {
+        return file.resolveSibling(file.getFileName() + ".rehash");
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, int length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static ByteBuffer[] allocateSlots(FileChannel channel, int capacity) {
+        int pageSlots = Math.min(capacity, 1 << SLOT_PAGE_BITS);
+        ByteBuffer[] pages = new ByteBuffer[capacity / pageSlots];
+        for (int i = 0; i < pages.length; i++) {
+            if (channel == null) {
+                pages[i] = ByteBuffer.allocateDirect(pageSlots * SLOT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            } else {
+                try {
+                    pages[i] = map(channel, HEADER_SIZE + (long) i * pageSlots * SLOT_SIZE, pageSlots * SLOT_SIZE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        return pages;
+    }
+
+    private long arenaBase() {
+        return HEADER_SIZE + (long) capacity * SLOT_SIZE;
+    }
+
+    private ByteBuffer allocateArenaPage(int page) {
+        if (channel == null) {
+            return ByteBuffer.allocateDirect(ARENA_PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        try {
+            return map(channel, arenaBase() + (long) page * ARENA_PAGE_SIZE, ARENA_PAGE_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void mapArena(int pages) {
+        arena = new ByteBuffer[Math.max(4, pages)];
+        for (int i = 0; i < pages; i++) {
+            arena[i] = allocateArenaPage(i);
+        }
+        arenaPages = pages;
+    }
+
+    private ByteBuffer page(int idx) {
+        return slots[idx >>> SLOT_PAGE_BITS];
+    }
+
+    private static int offset(int idx) {
+        return (idx & SLOT_PAGE_MASK) * SLOT_SIZE;
+    }
+
+    private ByteBuffer arenaPage(int ref) {
+        return arena[ref >>> (ARENA_PAGE_BITS - 2)];
+    }
+
+    private static int arenaOffset(int ref) {
+        return (ref << 2) & ARENA_PAGE_MASK;
+    }
+
+    private static int hash(long id) {
+        return Long.hashCode(id);
+    }
+
+    /**
+     * Вставляет запись в хеш-таблицу.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param student запись которую необходимо вставить
+     * @return true, если такой записи в хеш-таблице не было
+     */
+    @Override
+    public boolean add(Student student) {
+        if (indexOf(student) >= 0) {
+            return false;
+        }
+        int idx = freeSlot(student.getId());
+        ByteBuffer page = page(idx);
+        int offset = offset(idx);
+        if (page.get(offset + STATE) == DELETED) {
+            deleted--;
+        }
+        page.putLong(offset + ID, student.getId());
+        page.putInt(offset + FIRST_NAME, putString(student.getFirstName()));
+        page.putInt(offset + LAST_NAME, putString(student.getLastName()));
+        page.putInt(offset + PHOTO_REFERENCE, putString(student.getPhotoReference()));
+        page.putInt(offset + EMAIL, putString(student.getEmail()));
+        page.putInt(offset + MOBILE, putString(student.getMobile()));
+        page.putInt(offset + BIRTHDAY, Math.toIntExact(student.getBirthday().toEpochDay()));
+        page.putInt(offset + GROUP_ID, student.getGroupId());
+        page.putInt(offset + YEAR_OF_ADMISSION, student.getYearOfAdmission());
+        page.put(offset + GENDER, (byte) student.getGender().ordinal());
+        if (channel != null) {
+            page.putInt(offset + CHECKSUM, checksum(page, offset));
+        }
+        page.put(offset + STATE, OCCUPIED);
+        size++;
+        modCount++;
+        resize();
+        return true;
+    }
+
+    /**
+     * Удаляет запись с такими же значениями полей из хеш-таблицы.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object запись которую необходимо удалить
+     * @return true, если запись содержалась в хеш-таблице
+     */
+    @Override
+    public boolean remove(Object object) {
+        int idx = indexOf((Student) object);
+        if (idx < 0) {
+            return false;
+        }
+        removeAt(idx);
+        return true;
+    }
+
+    private void removeAt(int idx) {
+        page(idx).put(offset(idx) + STATE, DELETED);
+        deleted++;
+        size--;
+        modCount++;
+    }
+
+    /**
+     * Ищет запись с такими же значениями полей в хеш-таблице.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object запись которую необходимо поискать
+     * @return true, если такая запись содержится в хеш-таблице
+     */
+    @Override
+    public boolean contains(Object object) {
+        return indexOf((Student) object) >= 0;
+    }
+
+    /**
+     * @return запись с таким id, прочитанная в новый объект, или null
+     */
+    public Student get(long id) {
+        int idx = indexOfId(id);
+        return idx < 0 ? null : read(idx);
+    }
+
+    public boolean containsId(long id) {
+        return indexOfId(id) >= 0;
+    }
+
+    private int indexOfId(long id) {
+        int hash = hash(id);
+        for (int probId = 0; probId < capacity; probId++) {
+            int idx = Student.probe(hash, capacity, probId);
+            ByteBuffer page = page(idx);
+            int offset = offset(idx);
+            byte state = page.get(offset + STATE);
+            if (state == EMPTY) {
+                return -1;
+            }
+            if (state == OCCUPIED && page.getLong(offset + ID) == id) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return индекс ячейки с равной записью или -1
+     */
+    private int indexOf(Student student) {
+        long id = student.getId();
+        int hash = hash(id);
+        for (int probId = 0; probId < capacity; probId++) {
+            int idx = Student.probe(hash, capacity, probId);
+            ByteBuffer page = page(idx);
+            int offset = offset(idx);
+            byte state = page.get(offset + STATE);
+            if (state == EMPTY) {
+                return -1;
+            }
+            if (state == OCCUPIED && page.getLong(offset + ID) == id && matches(page, offset, student)) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Сравнивает остальные поля записи, сначала фиксированные, потом строки
+     */
+    private boolean matches(ByteBuffer page, int offset, Student student) {
+        return page.getInt(offset + GROUP_ID) == student.getGroupId()
+                && page.getInt(offset + YEAR_OF_ADMISSION) == student.getYearOfAdmission()
+                && page.get(offset + GENDER) == student.getGender().ordinal()
+                && page.getInt(offset + BIRTHDAY) == student.getBirthday().toEpochDay()
+                && stringEquals(page.getInt(offset + FIRST_NAME), student.getFirstName())
+                && stringEquals(page.getInt(offset + LAST_NAME), student.getLastName())
+                && stringEquals(page.getInt(offset + PHOTO_REFERENCE), student.getPhotoReference())
+                && stringEquals(page.getInt(offset + EMAIL), student.getEmail())
+                && stringEquals(page.getInt(offset + MOBILE), student.getMobile());
+    }
+
+    /**
+     * @return первая пустая ячейка или надгробие на пути проб для id
+     */
+    private int freeSlot(long id) {
+        int hash = hash(id);
+        for (int probId = 0; probId < capacity; probId++) {
+            int idx = Student.probe(hash, capacity, probId);
+            if (page(idx).get(offset(idx) + STATE) != OCCUPIED) {
+                return idx;
+            }
+        }
+        throw new IllegalStateException("No free cells, tableSize = " + capacity);
+    }
+
+    private Student read(int idx) {
+        ByteBuffer page = page(idx);
+        int offset = offset(idx);
+        return new Student(
+                page.getLong(offset + ID),
+                getString(page.getInt(offset + FIRST_NAME)),
+                getString(page.getInt(offset + LAST_NAME)),
+                GENDERS[page.get(offset + GENDER)],
+                LocalDate.ofEpochDay(page.getInt(offset + BIRTHDAY)),
+                page.getInt(offset + GROUP_ID),
+                page.getInt(offset + YEAR_OF_ADMISSION),
+                getString(page.getInt(offset + PHOTO_REFERENCE)),
+                getString(page.getInt(offset + EMAIL)),
+                getString(page.getInt(offset + MOBILE)));
+    }
+
+    /**
+     * Перехеширует таблицу, когда записи вместе с надгробиями занимают половину ячеек.
+     * Если надгробий больше, чем записей, таблица перестраивается без увеличения.
+     * Живые строки переписываются в новую арену, старые буферы освобождает сборщик мусора.
+     * В постоянном режиме новая таблица пишется в соседний файл, сбрасывается на диск
+     * и атомарно заменяет старый файл, так что при сбое остаётся одна из двух целых таблиц
+     */
+    private void resize() {
+        if ((size + deleted) * 2 < capacity) {
+            return;
+        }
+        ByteBuffer[] oldSlots = slots;
+        ByteBuffer[] oldArena = arena;
+        FileChannel oldChannel = channel;
+        int oldCapacity = capacity;
+        if (size * 4 >= capacity) {
+            if (capacity == MAX_CAPACITY) {
+                throw new IllegalStateException("Table is too large, tableSize = " + capacity);
+            }
+            capacity <<= 1;
+        }
+        try {
+            if (file != null) {
+                channel = FileChannel.open(rehashFile(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                header = map(channel, 0, HEADER_SIZE);
+                header.putInt(MAGIC, MAGIC_VALUE);
+                header.putInt(VERSION, FORMAT_VERSION);
+                header.putInt(TABLE_SIZE, capacity);
+            }
+            slots = allocateSlots(channel, capacity);
+            arena = new ByteBuffer[0];
+            arenaPages = 0;
+            arenaTop = 0;
+            deleted = 0;
+            for (int from = 0; from < oldCapacity; from++) {
+                ByteBuffer src = oldSlots[from >>> SLOT_PAGE_BITS];
+                int srcOffset = offset(from);
+                if (src.get(srcOffset + STATE) != OCCUPIED) {
+                    continue;
+                }
+                int to = freeSlot(src.getLong(srcOffset + ID));
+                ByteBuffer dst = page(to);
+                int dstOffset = offset(to);
+                dst.put(dstOffset, src, srcOffset, SLOT_SIZE);
+                for (int field : STRINGS) {
+                    dst.putInt(dstOffset + field, copyString(oldArena, src.getInt(srcOffset + field)));
+                }
+                if (channel != null) {
+                    dst.putInt(dstOffset + CHECKSUM, checksum(dst, dstOffset));
+                }
+            }
+            if (file != null) {
+                force();
+                writeHeader(false);
+                header.force();
+                oldChannel.close();
+                Files.move(rehashFile(), file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                DurableSet.syncDirectory(file.toAbsolutePath().getParent());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return ссылка на место под length байт в конце арены
+     */
+    private int allocate(int length) {
+        length = (length + 3) & ~3; //ссылки адресуют арену с шагом 4 байта
+        if (length > ARENA_PAGE_SIZE) {
+            throw new IllegalArgumentException("String is too long: " + length + " bytes");
+        }
+        if (arenaPages == 0 || arenaTop + length > ARENA_PAGE_SIZE) {
+            if (arenaPages == MAX_ARENA_PAGES) {
+                throw new IllegalStateException("Arena is full");
+            }
+            if (arenaPages == arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(4, arenaPages * 2));
+            }
+            arena[arenaPages] = allocateArenaPage(arenaPages);
+            arenaPages++;
+            arenaTop = 0;
+        }
+        int ref = ((arenaPages - 1) << (ARENA_PAGE_BITS - 2)) | (arenaTop >>> 2);
+        arenaTop += length;
+        return ref;
+    }
+
+    private int putString(String value) {
+        if (value == null) {
+            return NULL_REF;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int ref = allocate(Integer.BYTES + bytes.length);
+        ByteBuffer page = arenaPage(ref);
+        int offset = arenaOffset(ref);
+        page.putInt(offset, bytes.length);
+        page.put(offset + Integer.BYTES, bytes);
+        return ref;
+    }
+
+    private int copyString(ByteBuffer[] from, int ref) {
+        if (ref == NULL_REF) {
+            return NULL_REF;
+        }
+        ByteBuffer src = from[ref >>> (ARENA_PAGE_BITS - 2)];
+        int srcOffset = arenaOffset(ref);
+        int length = Integer.BYTES + src.getInt(srcOffset);
+        int copy = allocate(length);
+        arenaPage(copy).put(arenaOffset(copy), src, srcOffset, length);
+        return copy;
+    }
+
+    private String getString(int ref) {
+        if (ref == NULL_REF) {
+            return null;
+        }
+        ByteBuffer page = arenaPage(ref);
+        int offset = arenaOffset(ref);
+        byte[] bytes = new byte[page.getInt(offset)];
+        page.get(offset + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean stringEquals(int ref, String value) {
+        if (ref == NULL_REF || value == null) {
+            return ref == NULL_REF && value == null;
+        }
+        ByteBuffer page = arenaPage(ref);
+        int offset = arenaOffset(ref);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (page.getInt(offset) != bytes.length) {
+            return false;
+        }
+        offset += Integer.BYTES;
+        for (int i = 0; i < bytes.length; i++) {
+            if (page.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * CRC32C полей ячейки до {@link #STATE} и всех строк записи
+     */
+    private int checksum(ByteBuffer page, int offset) {
+        CRC32C crc = new CRC32C();
+        crc.update(page.slice(offset, STATE));
+        for (int field : STRINGS) {
+            int ref = page.getInt(offset + field);
+            if (ref != NULL_REF) {
+                ByteBuffer arenaPage = arenaPage(ref);
+                int arenaOffset = arenaOffset(ref);
+                crc.update(arenaPage.slice(arenaOffset, Integer.BYTES + arenaPage.getInt(arenaOffset)));
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Проверяет, что ссылки записи не выходят за арену и контрольная сумма совпадает
+     */
+    private boolean isIntact(ByteBuffer page, int offset) {
+        if (page.get(offset + GENDER) < 0 || page.get(offset + GENDER) >= GENDERS.length) {
+            return false;
+        }
+        for (int field : STRINGS) {
+            int ref = page.getInt(offset + field);
+            if (ref == NULL_REF) {
+                continue;
+            }
+            if (ref < 0 || ref >>> (ARENA_PAGE_BITS - 2) >= arenaPages) {
+                return false;
+            }
+            int length = arenaPage(ref).getInt(arenaOffset(ref));
+            if (length < 0 || arenaOffset(ref) + Integer.BYTES + length > ARENA_PAGE_SIZE) {
+                return false;
+            }
+        }
+        return page.getInt(offset + CHECKSUM) == checksum(page, offset);
+    }
+
+    /**
+     * Восстановление после незакрытого файла: отображает всю арену, что есть в файле,
+     * превращает недописанные записи в надгробия и пересчитывает размер и конец арены
+     */
+    private void recover() throws IOException {
+        mapArena((int) ((channel.size() - arenaBase() + ARENA_PAGE_SIZE - 1) / ARENA_PAGE_SIZE));
+        size = 0;
+        deleted = 0;
+        long end = 0; //конец последней живой строки, в байтах от начала арены
+        for (int idx = 0; idx < capacity; idx++) {
+            ByteBuffer page = page(idx);
+            int offset = offset(idx);
+            byte state = page.get(offset + STATE);
+            if (state == OCCUPIED && !isIntact(page, offset)) {
+                page.put(offset + STATE, DELETED);
+                state = DELETED;
+            }
+            if (state == DELETED) {
+                deleted++;
+            } else if (state == OCCUPIED) {
+                size++;
+                for (int field : STRINGS) {
+                    int ref = page.getInt(offset + field);
+                    if (ref != NULL_REF) {
+                        long start = (long) ref << 2;
+                        end = Math.max(end, start + Integer.BYTES + arenaPage(ref).getInt(arenaOffset(ref)));
+                    }
+                }
+            }
+        }
+        //ссылки адресуют арену с шагом в 4 байта, поэтому конец выравнивается так же, как в allocate
+        end = (end + 3) & ~3L;
+        //страницы за концом переиспользуются: их содержимое никому не принадлежит
+        int used = (int) ((end + ARENA_PAGE_SIZE - 1) / ARENA_PAGE_SIZE);
+        Arrays.fill(arena, used, arenaPages, null);
+        arenaPages = used;
+        arenaTop = used == 0 ? 0 : (int) (end - (long) (used - 1) * ARENA_PAGE_SIZE);
+        writeHeader(false);
+    }
+
+    private int headerChecksum() {
+        CRC32C crc = new CRC32C();
+        crc.update(header.slice(0, HEADER_CHECKSUM));
+        return (int) crc.getValue();
+    }
+
+    private void writeHeader(boolean clean) {
+        header.putInt(TABLE_SIZE, capacity);
+        header.putInt(SIZE, size);
+        header.putInt(DELETED_COUNT, deleted);
+        header.putInt(ARENA_PAGES, arenaPages);
+        header.putInt(ARENA_TOP, arenaTop);
+        header.putInt(CLEAN, clean ? 1 : 0);
+        header.putInt(HEADER_CHECKSUM, headerChecksum());
+    }
+
+    private void force() {
+        for (ByteBuffer page : slots) {
+            ((MappedByteBuffer) page).force();
+        }
+        for (int i = 0; i < arenaPages; i++) {
+            ((MappedByteBuffer) arena[i]).force();
+        }
+    }
+
+    /**
+     * Сбрасывает изменения на диск. Для таблицы в памяти ничего не делает
+     */
+    public void flush() {
+        if (channel != null) {
+            force();
+        }
+    }
+
+    /**
+     * Сбрасывает изменения на диск и помечает файл как чистый, после этого таблицей пользоваться нельзя.
+     * Для таблицы в памяти ничего не делает
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            return;
+        }
+        force();
+        writeHeader(true);
+        header.force();
+        channel.close();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getTableSize() {
+        return capacity;
+    }
+
+    /**
+     * Итератор по ячейкам таблицы, каждая запись читается в новый объект.
+     * Удаление через итератор ставит надгробие в текущую ячейку. Любое другое изменение
+     * таблицы после создания итератора приводит к ConcurrentModificationException
+     */
+    @Override
+    public Iterator<Student> iterator() {
+        return new Iterator<Student>() {
+            private int idx = advance(0);
+            private int lastReturned = -1;
+            private int expectedModCount = modCount;
+
+            private int advance(int from) {
+                while (from < capacity && page(from).get(offset(from) + STATE) != OCCUPIED) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return idx < capacity;
+            }
+
+            @Override
+            public Student next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = idx;
+                Student student = read(idx);
+                idx = advance(idx + 1);
+                return student;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned < 0) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                removeAt(lastReturned);
+                expectedModCount = modCount;
+                lastReturned = -1;
+            }
+        };
+    }
+
+}
@@ -1,16 +1,51 @@
 package ru.mail.polis;
 
 import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
+/**
+ * Хеш-таблица с открытой адресацией. Размер таблицы — степень двойки (изначально 8),
+ * перехеширование при load factor = 1/2.
+ * <p>
+ * В обычном режиме ячейки обходятся двойным хешированием через {@link OpenHashTableEntity#hashCode(int, int)},
+ * а удалённые элементы помечаются надгробиями, которые убираются при перехешировании.
+ * <p>
+ * В режиме Robin Hood для каждой ячейки хранится расстояние пробы — номер пробы,
+ * на которой элемент попал в ячейку. При вставке «бедный» элемент (с большим расстоянием)
+ * вытесняет «богатого», поэтому расстояния выравниваются, а неуспешный поиск останавливается,
+ * как только встречает элемент ближе к своей начальной ячейке, чем текущая проба.
+ * Удаление без надгробий: следующие элементы серии сдвигаются на одну ячейку назад.
+ * Сдвиг возможен только при линейном пробировании, поэтому в этом режиме начальная ячейка
+ * берётся как hashCode(tableSize, 0), а дальше ячейки идут подряд.
+ */
 public class OpenHashTable<E extends OpenHashTableEntity> extends AbstractSet<E> implements Set<E> {
 
+    private static final int INITIAL_CAPACITY = 8;
+    private static final Object DELETED = new Object();
+
     private int size; //количество элементов в хеш-таблице
-    private int tableSize; //размер хещ-таблицы todo: измените на array.length
+    private int deleted; //количество надгробий
+    private int modCount;
+    private Object[] table;
+    private final boolean robinHood;
+    private int[] distances; //расстояния пробы в режиме Robin Hood
 
     public OpenHashTable() {
-        //todo
+        this(false);
+    }
+
+    /**
+     * @param robinHood использовать ли вставку Robin Hood с удалением сдвигом назад
+     */
+    public OpenHashTable(boolean robinHood) {
+        this.robinHood = robinHood;
+        this.table = new Object[INITIAL_CAPACITY];
+        if (robinHood) {
+            this.distances = new int[INITIAL_CAPACITY];
+        }
     }
 
     /**
@@ -22,9 +57,18 @@ public class OpenHashTable<E extends OpenHashTableEntity> extends AbstractSet<E>
      */
     @Override
     public boolean add(E value) {
-        //todo: следует реализовать
-        //Используйте value.hashCode(tableSize, probId) для вычисления хеша
-        return false;
+        if (indexOf(value) >= 0) {
+            return false;
+        }
+        if (robinHood) {
+            insertRobinHood(value);
+        } else {
+            insert(value);
+        }
+        size++;
+        modCount++;
+        resize();
+        return true;
     }
 
     /**
@@ -38,9 +82,23 @@ public class OpenHashTable<E extends OpenHashTableEntity> extends AbstractSet<E>
     public boolean remove(Object object) {
         @SuppressWarnings("unchecked")
         E value = (E) object;
-        //todo: следует реализовать
-        //Используйте value.hashCode(tableSize, probId) для вычисления хеша
-        return false;
+        int idx = indexOf(value);
+        if (idx < 0) {
+            return false;
+        }
+        removeAt(idx);
+        return true;
+    }
+
+    private void removeAt(int idx) {
+        if (robinHood) {
+            shiftBackward(idx);
+        } else {
+            table[idx] = DELETED;
+            deleted++;
+        }
+        size--;
+        modCount++;
     }
 
     /**
@@ -54,9 +112,125 @@ public class OpenHashTable<E extends OpenHashTableEntity> extends AbstractSet<E>
     public boolean contains(Object object) {
         @SuppressWarnings("unchecked")
         E value = (E) object;
-        //todo: следует реализовать
-        //Используйте value.hashCode(tableSize, probId) для вычисления хеша
-        return false;
+        return indexOf(value) >= 0;
+    }
+
+    /**
+     * @return индекс ячейки с элементом или -1
+     */
+    private int indexOf(E value) {
+        int length = table.length;
+        if (robinHood) {
+            int mask = length - 1;
+            int idx = value.hashCode(length, 0);
+            for (int probId = 0; probId < length; probId++, idx = (idx + 1) & mask) {
+                Object curr = table[idx];
+                //дальше элемента быть не может: он вытеснил бы более богатого при вставке
+                if (curr == null || distances[idx] < probId) {
+                    return -1;
+                }
+                if (value.equals(curr)) {
+                    return idx;
+                }
+            }
+            return -1;
+        }
+        for (int probId = 0; probId < length; probId++) {
+            int idx = value.hashCode(length, probId);
+            Object curr = table[idx];
+            if (curr == null) {
+                return -1;
+            }
+            if (curr != DELETED && value.equals(curr)) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Кладёт элемент в первую свободную ячейку или надгробие. Элемента в таблице быть не должно
+     */
+    private void insert(Object value) {
+        OpenHashTableEntity entity = (OpenHashTableEntity) value;
+        int length = table.length;
+        for (int probId = 0; probId < length; probId++) {
+            int idx = entity.hashCode(length, probId);
+            Object curr = table[idx];
+            if (curr == null || curr == DELETED) {
+                if (curr == DELETED) {
+                    deleted--;
+                }
+                table[idx] = value;
+                return;
+            }
+        }
+        throw new IllegalStateException("No free cells, tableSize = " + length);
+    }
+
+    private void insertRobinHood(Object value) {
+        int length = table.length;
+        int mask = length - 1;
+        int idx = ((OpenHashTableEntity) value).hashCode(length, 0);
+        int distance = 0;
+        while (table[idx] != null) {
+            if (distances[idx] < distance) {
+                //вытесняем более богатый элемент и дальше вставляем его
+                Object rich = table[idx];
+                int richDistance = distances[idx];
+                table[idx] = value;
+                distances[idx] = distance;
+                value = rich;
+                distance = richDistance;
+            }
+            idx = (idx + 1) & mask;
+            distance++;
+        }
+        table[idx] = value;
+        distances[idx] = distance;
+    }
+
+    /**
+     * Удаляет элемент из ячейки idx, сдвигая на одну ячейку назад следующие элементы,
+     * которые стоят не в своей начальной ячейке
+     */
+    private void shiftBackward(int idx) {
+        int mask = table.length - 1;
+        int next = (idx + 1) & mask;
+        while (table[next] != null && distances[next] > 0) {
+            table[idx] = table[next];
+            distances[idx] = distances[next] - 1;
+            idx = next;
+            next = (next + 1) & mask;
+        }
+        table[idx] = null;
+        distances[idx] = 0;
+    }
+
+    /**
+     * Перехеширует таблицу, когда элементы вместе с надгробиями занимают половину ячеек.
+     * Если надгробий больше, чем элементов, таблица перестраивается без увеличения
+     */
+    private void resize() {
+        if ((size + deleted) * 2 < table.length) {
+            return;
+        }
+        Object[] old = table;
+        int length = size * 4 >= old.length ? old.length << 1 : old.length;
+        table = new Object[length];
+        deleted = 0;
+        if (robinHood) {
+            distances = new int[length];
+        }
+        for (Object value : old) {
+            if (value != null && value != DELETED) {
+                if (robinHood) {
+                    insertRobinHood(value);
+                } else {
+                    insert(value);
+                }
+            }
+        }
     }
 
     @Override
@@ -65,12 +239,81 @@ public class OpenHashTable<E extends OpenHashTableEntity> extends AbstractSet<E>
     }
 
     public int getTableSize() {
-        return tableSize;
+        return table.length;
     }
 
+    /**
+     * Итератор по ячейкам таблицы по кругу, начиная за пустой ячейкой. Сдвиг назад при удалении
+     * в режиме Robin Hood не переходит через пустую ячейку, поэтому элементы двигаются только
+     * на одну позицию назад в порядке обхода: после удаления через итератор текущая ячейка
+     * просматривается ещё раз, и ни один элемент не пропускается и не выдаётся дважды.
+     * Любое другое изменение таблицы после создания итератора приводит к ConcurrentModificationException
+     */
     @Override
     public Iterator<E> iterator() {
-        throw new UnsupportedOperationException();
+        return new Iterator<E>() {
+            //пустая ячейка есть всегда: элементы с надгробиями занимают меньше половины таблицы
+            private final int start = emptySlot();
+            private int offset = advance(1); //следующая ячейка — (start + offset) по модулю длины
+            private int lastReturned = -1;
+            private int expectedModCount = modCount;
+
+            private int slot(int offset) {
+                return (start + offset) & (table.length - 1);
+            }
+
+            private int advance(int from) {
+                while (from < table.length && (table[slot(from)] == null || table[slot(from)] == DELETED)) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return offset < table.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = slot(offset);
+                E value = (E) table[lastReturned];
+                offset = advance(offset + 1);
+                return value;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned < 0) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                removeAt(lastReturned);
+                if (robinHood) {
+                    //в текущую ячейку мог сдвинуться ещё не выданный элемент
+                    offset = advance((lastReturned - start) & (table.length - 1));
+                }
+                expectedModCount = modCount;
+                lastReturned = -1;
+            }
+        };
+    }
+
+    private int emptySlot() {
+        int idx = 0;
+        while (table[idx] != null) {
+            idx++;
+        }
+        return idx;
     }
 
 }
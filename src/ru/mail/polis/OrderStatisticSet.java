@@ -0,0 +1,31 @@
+package ru.mail.polis;
+
+import java.util.SortedSet;
+
+/**
+ * Порядковые статистики: узлы дерева хранят размеры своих поддеревьев,
+ * поэтому позиция элемента и элемент по позиции находятся одним спуском, за O(log n).
+ */
+public interface OrderStatisticSet<E> extends SortedSet<E> {
+
+    /**
+     * @param element элемент, не обязательно содержащийся в множестве
+     * @return количество элементов, строго меньших element
+     */
+    int rank(E element);
+
+    /**
+     * @param index номер элемента в порядке возрастания, от 0 до size() - 1
+     * @return index-й наименьший элемент
+     * @throws IndexOutOfBoundsException если index < 0 или index >= size()
+     */
+    E select(int index);
+
+    /**
+     * @param fromElement нижняя граница (включительно)
+     * @param toElement верхняя граница (не включительно)
+     * @return количество элементов из диапазона [fromElement, toElement)
+     * @throws IllegalArgumentException если fromElement > toElement
+     */
+    int countInRange(E fromElement, E toElement);
+}
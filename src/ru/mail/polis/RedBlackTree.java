@@ -1,25 +1,467 @@
 package ru.mail.polis;
 
 import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implements BalancedSortedSet<E> {
+public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E>
+        implements BalancedSortedSet<E>, NavigableTree<E>, OrderStatisticSet<E>, BoundedSearch<E> {
+
+    /**
+     * Поддеревья меньшего суммарного размера операции над множествами обрабатывают в одном потоке
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
 
     private final Comparator<E> comparator;
-    private Node root; //todo: Создайте новый класс если нужно. Добавьте новые поля, если нужно.
+    private Node<E> root;
     private int size;
-    //todo: добавьте дополнительные переменные и/или методы если нужно
+    private int modCount;
 
     public RedBlackTree() {
-        this(null);
+        this((Comparator<E>) null);
     }
     public RedBlackTree(Comparator<E> comparator) {
         this.comparator = comparator;
     }
 
+    /**
+     * Строит дерево из элементов отсортированного множества за O(n), без сравнений и поворотов.
+     * Компаратор берётся из исходного множества.
+     *
+     * @param sortedSet исходное множество
+     */
+    @SuppressWarnings("unchecked")
+    public RedBlackTree(SortedSet<E> sortedSet) {
+        this((Comparator<E>) sortedSet.comparator());
+        buildFromSorted(sortedSet.iterator(), sortedSet.size());
+    }
+
+    /**
+     * Строит дерево из отсортированного по возрастанию массива без повторов за O(n).
+     *
+     * @param comparator компаратор, в порядке которого отсортирован массив
+     * @param sorted отсортированные элементы
+     * @throws IllegalArgumentException если массив не упорядочен строго по возрастанию
+     */
+    public RedBlackTree(Comparator<E> comparator, E[] sorted) {
+        this(comparator);
+        for (int i = 1; i < sorted.length; i++) {
+            if (compare(sorted[i - 1], sorted[i]) >= 0) {
+                throw new IllegalArgumentException("Elements must be strictly increasing, index = " + i);
+            }
+        }
+        buildFromSorted(Arrays.asList(sorted).iterator(), sorted.length);
+    }
+
+    /**
+     * Если дерево пустое, а на вход пришло множество с тем же порядком,
+     * строит дерево за O(n) вместо n вставок
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (size == 0 && !c.isEmpty() && c instanceof SortedSet
+                && Objects.equals(comparator, ((SortedSet<?>) c).comparator())) {
+            buildFromSorted(c.iterator(), c.size());
+            return true;
+        }
+        if (isSameTree(c)) {
+            return apply(SetOperation.UNION, (RedBlackTree<?>) c);
+        }
+        return super.addAll(c);
+    }
+
+    /**
+     * Если на вход пришло RedBlackTree с тем же порядком — пересечение через split / join
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        if (isSameTree(c)) {
+            return apply(SetOperation.INTERSECTION, (RedBlackTree<?>) c);
+        }
+        return super.retainAll(c);
+    }
+
+    /**
+     * Если на вход пришло RedBlackTree с тем же порядком — разность через split / join
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        if (isSameTree(c)) {
+            return apply(SetOperation.DIFFERENCE, (RedBlackTree<?>) c);
+        }
+        return super.removeAll(c);
+    }
+
+    private boolean isSameTree(Collection<?> c) {
+        return c instanceof RedBlackTree && Objects.equals(comparator, ((RedBlackTree<?>) c).comparator);
+    }
+
+    /**
+     * Операции над множествами на split / join, как в {@link AVLTree}, только join выравнивает
+     * не высоты, а чёрные высоты. Чёрная высота поддерева передаётся вместе с ним ({@link Part}),
+     * чтобы не пересчитывать её спуском. Для деревьев из n и m элементов (m <= n) это
+     * O(m log(n / m + 1)) работы; половины обрабатываются параллельно в {@link ForkJoinPool}.
+     * Второе дерево только читается, новые узлы создаются лишь для ключей, добавляемых объединением.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean apply(SetOperation operation, RedBlackTree<?> other) {
+        if (other == this) {
+            if (operation != SetOperation.DIFFERENCE || size == 0) {
+                return false;
+            }
+            root = null;
+            size = 0;
+            modCount++;
+            return true;
+        }
+        Node<E> otherRoot = (Node<E>) other.root;
+        Part<E> result = ForkJoinPool.commonPool().invoke(new SetOperationTask(operation,
+                new Part<>(root, blackHeight(root)), new Part<>(otherRoot, blackHeight(otherRoot))));
+        root = result.root;
+        if (root != null) {
+            root.parent = null;
+            root.color = Color.BLACK;
+        }
+        int oldSize = size;
+        size = size(root);
+        modCount++;
+        return size != oldSize;
+    }
+
+    /**
+     * @return количество чёрных узлов на пути от node до листа, включая сам node
+     */
+    private static int blackHeight(Node<?> node) {
+        int height = 0;
+        for (Node<?> curr = node; curr != null; curr = curr.left) {
+            if (curr.color == Color.BLACK) {
+                height++;
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Поддерево вместе с его чёрной высотой
+     */
+    private static final class Part<E> {
+        final Node<E> root;
+        final int blackHeight;
+
+        Part(Node<E> root, int blackHeight) {
+            this.root = root;
+            this.blackHeight = blackHeight;
+        }
+
+        Part<E> left() {
+            return new Part<>(root.left, childBlackHeight());
+        }
+
+        Part<E> right() {
+            return new Part<>(root.right, childBlackHeight());
+        }
+
+        private int childBlackHeight() {
+            return blackHeight - (root.color == Color.BLACK ? 1 : 0);
+        }
+    }
+
+    private enum SetOperation {
+        UNION, INTERSECTION, DIFFERENCE
+    }
+
+    @SuppressWarnings("serial")
+    private final class SetOperationTask extends RecursiveTask<Part<E>> {
+        private final SetOperation operation;
+        private final Part<E> t1;
+        private final Part<E> t2;
+
+        SetOperationTask(SetOperation operation, Part<E> t1, Part<E> t2) {
+            this.operation = operation;
+            this.t1 = t1;
+            this.t2 = t2;
+        }
+
+        @Override
+        protected Part<E> compute() {
+            if (t1.root == null || t2.root == null) {
+                switch (operation) {
+                    case UNION:
+                        if (t1.root == null) {
+                            //все ключи t2 добавляются: только здесь узлы второго дерева копируются
+                            return new Part<>(new CopyTask<>(t2.root, null).compute(), t2.blackHeight);
+                        }
+                        return t1;
+                    case INTERSECTION:
+                        return new Part<>(null, 0);
+                    default:
+                        return t1;
+                }
+            }
+            Split<E> split = split(t1, t2.root.value);
+            SetOperationTask leftTask = new SetOperationTask(operation, split.left, t2.left());
+            SetOperationTask rightTask = new SetOperationTask(operation, split.right, t2.right());
+            Part<E> left;
+            Part<E> right;
+            if (size(t1.root) + size(t2.root) > PARALLEL_THRESHOLD) {
+                leftTask.fork();
+                right = rightTask.compute();
+                left = leftTask.join();
+            } else {
+                left = leftTask.compute();
+                right = rightTask.compute();
+            }
+            switch (operation) {
+                case UNION:
+                    Node<E> middle = split.node != null ? split.node : new Node<>(t2.root.value, null);
+                    return RedBlackTree.this.join(left, middle, right);
+                case INTERSECTION:
+                    return split.node != null
+                            ? RedBlackTree.this.join(left, split.node, right) : RedBlackTree.this.join(left, right);
+                default:
+                    return RedBlackTree.this.join(left, right);
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class CopyTask<E> extends RecursiveTask<Node<E>> {
+        private final Node<E> node;
+        private final Node<E> parent;
+
+        CopyTask(Node<E> node, Node<E> parent) {
+            this.node = node;
+            this.parent = parent;
+        }
+
+        @Override
+        protected Node<E> compute() {
+            if (node == null) {
+                return null;
+            }
+            Node<E> copy = new Node<>(node.value, parent);
+            copy.color = node.color;
+            copy.size = node.size;
+            CopyTask<E> leftTask = new CopyTask<>(node.left, copy);
+            CopyTask<E> rightTask = new CopyTask<>(node.right, copy);
+            if (node.size > PARALLEL_THRESHOLD) {
+                leftTask.fork();
+                copy.right = rightTask.compute();
+                copy.left = leftTask.join();
+            } else {
+                copy.left = leftTask.compute();
+                copy.right = rightTask.compute();
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Результат split: элементы меньше ключа, узел с ключом (или null) и элементы больше ключа
+     */
+    private static final class Split<E> {
+        final Part<E> left;
+        final Node<E> node;
+        final Part<E> right;
+
+        Split(Part<E> left, Node<E> node, Part<E> right) {
+            this.left = left;
+            this.node = node;
+            this.right = right;
+        }
+    }
+
+    /**
+     * Делит дерево по ключу за O(log n): спускается к ключу и склеивает через join
+     * оставшиеся по сторонам от пути поддеревья. Узел с ключом отсоединяется от дерева
+     */
+    private Split<E> split(Part<E> part, E key) {
+        Node<E> node = part.root;
+        if (node == null) {
+            return new Split<>(part, null, part);
+        }
+        Part<E> left = part.left();
+        Part<E> right = part.right();
+        int cmp = compare(node.value, key);
+        if (cmp == 0) {
+            return new Split<>(left, node, right);
+        }
+        if (cmp > 0) {
+            Split<E> split = split(left, key);
+            return new Split<>(split.left, split.node, join(split.right, node, right));
+        }
+        Split<E> split = split(right, key);
+        return new Split<>(join(left, node, split.left), split.node, split.right);
+    }
+
+    /**
+     * Склеивает два дерева и узел между ними (все элементы left меньше middle, а right — больше).
+     * Спускается по краю дерева с большей чёрной высотой до чёрного поддерева с той же чёрной высотой,
+     * что у другого, и подвешивает туда красный middle. Два красных подряд исправляются поворотом
+     * на обратном пути, а красный корень с красным ребёнком перекрашивается в чёрный:
+     * O(|blackHeight(left) - blackHeight(right)| + 1)
+     */
+    private Part<E> join(Part<E> left, Node<E> middle, Part<E> right) {
+        if (left.blackHeight > right.blackHeight) {
+            Node<E> node = joinRight(left.root, left.blackHeight, middle, right.root, right.blackHeight);
+            if (node.color == Color.RED && colorOf(node.right) == Color.RED) {
+                node.color = Color.BLACK;
+                return new Part<>(node, left.blackHeight + 1);
+            }
+            return new Part<>(node, left.blackHeight);
+        }
+        if (right.blackHeight > left.blackHeight) {
+            Node<E> node = joinLeft(left.root, left.blackHeight, middle, right.root, right.blackHeight);
+            if (node.color == Color.RED && colorOf(node.left) == Color.RED) {
+                node.color = Color.BLACK;
+                return new Part<>(node, right.blackHeight + 1);
+            }
+            return new Part<>(node, right.blackHeight);
+        }
+        link(middle, left.root, right.root);
+        if (colorOf(left.root) == Color.BLACK && colorOf(right.root) == Color.BLACK) {
+            middle.color = Color.RED;
+            return new Part<>(middle, left.blackHeight);
+        }
+        middle.color = Color.BLACK;
+        return new Part<>(middle, left.blackHeight + 1);
+    }
+
+    private Node<E> joinRight(Node<E> left, int leftBlackHeight, Node<E> middle, Node<E> right, int rightBlackHeight) {
+        if (colorOf(left) == Color.BLACK && leftBlackHeight == rightBlackHeight) {
+            middle.color = Color.RED;
+            link(middle, left, right);
+            return middle;
+        }
+        int childBlackHeight = leftBlackHeight - (left.color == Color.BLACK ? 1 : 0);
+        Node<E> child = joinRight(left.right, childBlackHeight, middle, right, rightBlackHeight);
+        link(left, left.left, child);
+        if (left.color == Color.BLACK && child.color == Color.RED && colorOf(child.right) == Color.RED) {
+            child.right.color = Color.BLACK;
+            return rotateLeftDetached(left);
+        }
+        return left;
+    }
+
+    private Node<E> joinLeft(Node<E> left, int leftBlackHeight, Node<E> middle, Node<E> right, int rightBlackHeight) {
+        if (colorOf(right) == Color.BLACK && leftBlackHeight == rightBlackHeight) {
+            middle.color = Color.RED;
+            link(middle, left, right);
+            return middle;
+        }
+        int childBlackHeight = rightBlackHeight - (right.color == Color.BLACK ? 1 : 0);
+        Node<E> child = joinLeft(left, leftBlackHeight, middle, right.left, childBlackHeight);
+        link(right, child, right.right);
+        if (right.color == Color.BLACK && child.color == Color.RED && colorOf(child.left) == Color.RED) {
+            child.left.color = Color.BLACK;
+            return rotateRightDetached(right);
+        }
+        return right;
+    }
+
+    /**
+     * Склеивает два дерева без среднего узла: им становится наибольший узел left
+     */
+    private Part<E> join(Part<E> left, Part<E> right) {
+        if (left.root == null) {
+            return right;
+        }
+        Split<E> split = splitLast(left);
+        return join(split.left, split.node, right);
+    }
+
+    /**
+     * @return дерево без наибольшего узла (в left) и сам этот узел
+     */
+    private Split<E> splitLast(Part<E> part) {
+        Node<E> node = part.root;
+        if (node.right == null) {
+            return new Split<>(part.left(), node, null);
+        }
+        Split<E> split = splitLast(part.right());
+        return new Split<>(join(part.left(), node, split.left), split.node, null);
+    }
+
+    /**
+     * Делает left и right детьми parent и пересчитывает его размер
+     */
+    private static <E> void link(Node<E> parent, Node<E> left, Node<E> right) {
+        parent.left = left;
+        parent.right = right;
+        if (left != null) {
+            left.parent = parent;
+        }
+        if (right != null) {
+            right.parent = parent;
+        }
+        updateSize(parent);
+    }
+
+    /**
+     * Повороты для поддеревьев, которые ещё не подвешены в дерево: родителя нового корня
+     * выставит тот, кто его подвесит
+     */
+    private static <E> Node<E> rotateLeftDetached(Node<E> node) {
+        Node<E> right = node.right;
+        link(node, node.left, right.left);
+        link(right, node, right.right);
+        return right;
+    }
+
+    private static <E> Node<E> rotateRightDetached(Node<E> node) {
+        Node<E> left = node.left;
+        link(node, left.right, node.right);
+        link(left, left.left, node);
+        return left;
+    }
+
+    private void buildFromSorted(Iterator<? extends E> it, int count) {
+        root = build(it, count, 0, redLevel(count), null);
+        size = count;
+        modCount++;
+    }
+
+    /**
+     * Глубина нижнего, неполного уровня идеально сбалансированного дерева из count узлов.
+     * Все узлы выше него чёрные, а узлы на нём красные — так чёрная высота всех путей одинакова.
+     */
+    private static int redLevel(int count) {
+        int level = 0;
+        for (int m = count - 1; m >= 0; m = m / 2 - 1) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Средний элемент становится корнем, левая и правая половины — поддеревьями.
+     * Элементы читаются из итератора в порядке in-order обхода.
+     */
+    private Node<E> build(Iterator<? extends E> it, int count, int level, int redLevel, Node<E> parent) {
+        if (count == 0) {
+            return null;
+        }
+        int leftCount = (count - 1) / 2;
+        Node<E> node = new Node<>(null, parent);
+        node.left = build(it, leftCount, level + 1, redLevel, node);
+        node.value = it.next();
+        node.right = build(it, count - 1 - leftCount, level + 1, redLevel, node);
+        node.size = count;
+        if (level == redLevel) {
+            node.color = Color.RED;
+        }
+        return node;
+    }
+
     /**
      * Вставляет элемент в дерево.
      * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
@@ -29,8 +471,76 @@ public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implem
      */
     @Override
     public boolean add(E value) {
-        //todo: следует реализовать
-        return false;
+        Node<E> parent = null;
+        Node<E> curr = root;
+        int cmp = 0;
+        while (curr != null) {
+            parent = curr;
+            cmp = compare(curr.value, value);
+            if (cmp == 0) {
+                return false;
+            }
+            curr = cmp < 0 ? curr.right : curr.left;
+        }
+        Node<E> node = new Node<>(value, parent);
+        if (parent == null) {
+            root = node;
+        } else if (cmp < 0) {
+            parent.right = node;
+        } else {
+            parent.left = node;
+        }
+        for (Node<E> ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+            ancestor.size++;
+        }
+        fixAfterInsertion(node);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    private void fixAfterInsertion(Node<E> x) {
+        x.color = Color.RED;
+        while (x != root && x.parent.color == Color.RED) {
+            Node<E> parent = x.parent;
+            Node<E> grand = parent.parent;
+            if (parent == grand.left) {
+                Node<E> uncle = grand.right;
+                if (colorOf(uncle) == Color.RED) {
+                    parent.color = Color.BLACK;
+                    uncle.color = Color.BLACK;
+                    grand.color = Color.RED;
+                    x = grand;
+                } else {
+                    if (x == parent.right) {
+                        x = parent;
+                        rotateLeft(x);
+                        parent = x.parent;
+                    }
+                    parent.color = Color.BLACK;
+                    grand.color = Color.RED;
+                    rotateRight(grand);
+                }
+            } else {
+                Node<E> uncle = grand.left;
+                if (colorOf(uncle) == Color.RED) {
+                    parent.color = Color.BLACK;
+                    uncle.color = Color.BLACK;
+                    grand.color = Color.RED;
+                    x = grand;
+                } else {
+                    if (x == parent.left) {
+                        x = parent;
+                        rotateRight(x);
+                        parent = x.parent;
+                    }
+                    parent.color = Color.BLACK;
+                    grand.color = Color.RED;
+                    rotateLeft(grand);
+                }
+            }
+        }
+        root.color = Color.BLACK;
     }
 
     /**
@@ -44,8 +554,174 @@ public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implem
     public boolean remove(Object object) {
         @SuppressWarnings("unchecked")
         E value = (E) object;
-        //todo: следует реализовать
-        return false;
+        Node<E> node = getNode(value);
+        if (node == null) {
+            return false;
+        }
+        deleteNode(node);
+        size--;
+        modCount++;
+        return true;
+    }
+
+    private void deleteNode(Node<E> p) {
+        if (p.left != null && p.right != null) {
+            Node<E> next = p.right;
+            while (next.left != null) {
+                next = next.left;
+            } //next = наименьший из больших
+            p.value = next.value;
+            p = next;
+        }
+        //p уходит из дерева: поддеревья всех его предков становятся на один узел меньше
+        for (Node<E> curr = p.parent; curr != null; curr = curr.parent) {
+            curr.size--;
+        }
+        Node<E> replacement = p.left != null ? p.left : p.right;
+        if (replacement != null) {
+            replacement.parent = p.parent;
+            replaceChild(p, replacement);
+            p.left = p.right = p.parent = null;
+            if (p.color == Color.BLACK) {
+                fixAfterDeletion(replacement);
+            }
+        } else if (p.parent == null) {
+            root = null;
+        } else {
+            //удаляемый узел сам играет роль фиктивного листа, пока идёт балансировка,
+            //и при поворотах не должен учитываться в размерах
+            p.size = 0;
+            if (p.color == Color.BLACK) {
+                fixAfterDeletion(p);
+            }
+            replaceChild(p, null);
+            p.parent = null;
+        }
+        p.value = null;
+    }
+
+    private void fixAfterDeletion(Node<E> x) {
+        while (x != root && colorOf(x) == Color.BLACK) {
+            if (x == x.parent.left) {
+                Node<E> sibling = x.parent.right;
+                if (colorOf(sibling) == Color.RED) {
+                    sibling.color = Color.BLACK;
+                    x.parent.color = Color.RED;
+                    rotateLeft(x.parent);
+                    sibling = x.parent.right;
+                }
+                if (colorOf(sibling.left) == Color.BLACK && colorOf(sibling.right) == Color.BLACK) {
+                    sibling.color = Color.RED;
+                    x = x.parent;
+                } else {
+                    if (colorOf(sibling.right) == Color.BLACK) {
+                        sibling.left.color = Color.BLACK;
+                        sibling.color = Color.RED;
+                        rotateRight(sibling);
+                        sibling = x.parent.right;
+                    }
+                    sibling.color = x.parent.color;
+                    x.parent.color = Color.BLACK;
+                    sibling.right.color = Color.BLACK;
+                    rotateLeft(x.parent);
+                    x = root;
+                }
+            } else {
+                Node<E> sibling = x.parent.left;
+                if (colorOf(sibling) == Color.RED) {
+                    sibling.color = Color.BLACK;
+                    x.parent.color = Color.RED;
+                    rotateRight(x.parent);
+                    sibling = x.parent.left;
+                }
+                if (colorOf(sibling.right) == Color.BLACK && colorOf(sibling.left) == Color.BLACK) {
+                    sibling.color = Color.RED;
+                    x = x.parent;
+                } else {
+                    if (colorOf(sibling.left) == Color.BLACK) {
+                        sibling.right.color = Color.BLACK;
+                        sibling.color = Color.RED;
+                        rotateLeft(sibling);
+                        sibling = x.parent.left;
+                    }
+                    sibling.color = x.parent.color;
+                    x.parent.color = Color.BLACK;
+                    sibling.left.color = Color.BLACK;
+                    rotateRight(x.parent);
+                    x = root;
+                }
+            }
+        }
+        x.color = Color.BLACK;
+    }
+
+    private static Color colorOf(Node<?> node) {
+        return node == null ? Color.BLACK : node.color;
+    }
+
+    private void replaceChild(Node<E> node, Node<E> child) {
+        if (node.parent == null) {
+            root = child;
+        } else if (node == node.parent.left) {
+            node.parent.left = child;
+        } else {
+            node.parent.right = child;
+        }
+    }
+
+    private void rotateLeft(Node<E> node) {
+        Node<E> right = node.right;
+        node.right = right.left;
+        if (right.left != null) {
+            right.left.parent = node;
+        }
+        right.parent = node.parent;
+        replaceChild(node, right);
+        right.left = node;
+        node.parent = right;
+        right.size = node.size;
+        updateSize(node);
+    }
+
+    private void rotateRight(Node<E> node) {
+        Node<E> left = node.left;
+        node.left = left.right;
+        if (left.right != null) {
+            left.right.parent = node;
+        }
+        left.parent = node.parent;
+        replaceChild(node, left);
+        left.right = node;
+        node.parent = left;
+        left.size = node.size;
+        updateSize(node);
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void updateSize(Node<?> node) {
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private Node<E> getNode(E value) {
+        return getNode(value, Integer.MAX_VALUE);
+    }
+
+    private Node<E> getNode(E value, int maxHops) {
+        Node<E> curr = root;
+        while (curr != null) {
+            if (--maxHops < 0) {
+                throw HopLimitExceededException.INSTANCE;
+            }
+            int cmp = compare(curr.value, value);
+            if (cmp == 0) {
+                return curr;
+            }
+            curr = cmp < 0 ? curr.right : curr.left;
+        }
+        return null;
     }
 
     /**
@@ -59,8 +735,14 @@ public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implem
     public boolean contains(Object object) {
         @SuppressWarnings("unchecked")
         E value = (E) object;
-        //todo: следует реализовать
-        return false;
+        return getNode(value) != null;
+    }
+
+    @Override
+    public boolean contains(Object object, int maxHops) {
+        @SuppressWarnings("unchecked")
+        E value = (E) object;
+        return getNode(value, maxHops) != null;
     }
 
     /**
@@ -70,8 +752,22 @@ public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implem
      */
     @Override
     public E first() {
-        //todo: следует реализовать
-        throw new NoSuchElementException("first");
+        return first(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public E first(int maxHops) {
+        if (root == null) {
+            throw new NoSuchElementException("first");
+        }
+        Node<E> curr = root;
+        while (curr.left != null) {
+            if (--maxHops < 0) {
+                throw HopLimitExceededException.INSTANCE;
+            }
+            curr = curr.left;
+        }
+        return curr.value;
     }
 
     /**
@@ -81,8 +777,64 @@ public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implem
      */
     @Override
     public E last() {
-        //todo: следует реализовать
-        throw new NoSuchElementException("last");
+        return last(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public E last(int maxHops) {
+        if (root == null) {
+            throw new NoSuchElementException("last");
+        }
+        Node<E> curr = root;
+        while (curr.right != null) {
+            if (--maxHops < 0) {
+                throw HopLimitExceededException.INSTANCE;
+            }
+            curr = curr.right;
+        }
+        return curr.value;
+    }
+
+    @Override
+    public int rank(E element) {
+        int rank = 0;
+        Node<E> curr = root;
+        while (curr != null) {
+            if (compare(curr.value, element) < 0) {
+                rank += size(curr.left) + 1;
+                curr = curr.right;
+            } else {
+                curr = curr.left;
+            }
+        }
+        return rank;
+    }
+
+    @Override
+    public E select(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index = " + index + ", size = " + size);
+        }
+        Node<E> curr = root;
+        while (true) {
+            int leftSize = size(curr.left);
+            if (index < leftSize) {
+                curr = curr.left;
+            } else if (index == leftSize) {
+                return curr.value;
+            } else {
+                index -= leftSize + 1;
+                curr = curr.right;
+            }
+        }
+    }
+
+    @Override
+    public int countInRange(E fromElement, E toElement) {
+        if (compare(fromElement, toElement) > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return rank(toElement) - rank(fromElement);
     }
 
     private int compare(E v1, E v2) {
@@ -96,7 +848,7 @@ public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implem
 
     @Override
     public int size() {
-        return 0;
+        return size;
     }
 
     @Override
@@ -109,22 +861,162 @@ public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implem
 
     @Override
     public SortedSet<E> subSet(E fromElement, E toElement) {
-        throw new UnsupportedOperationException("subSet");
+        return new TreeSubSet<>(this, fromElement, toElement);
     }
 
     @Override
     public SortedSet<E> headSet(E toElement) {
-        throw new UnsupportedOperationException("headSet");
+        return new TreeSubSet<>(this, null, toElement);
     }
 
     @Override
     public SortedSet<E> tailSet(E fromElement) {
-        throw new UnsupportedOperationException("tailSet");
+        return new TreeSubSet<>(this, fromElement, null);
     }
 
     @Override
     public Iterator<E> iterator() {
-        throw new UnsupportedOperationException("iterator");
+        return new TreeIterator(ceilingNode(null), null);
+    }
+
+    @Override
+    public Iterator<E> iterator(E fromElement, E toElement) {
+        return new TreeIterator(ceilingNode(fromElement), toElement);
+    }
+
+    @Override
+    public E lower(E toElement) {
+        return lower(toElement, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public E lower(E toElement, int maxHops) {
+        Node<E> result = null;
+        Node<E> curr = root;
+        while (curr != null) {
+            if (--maxHops < 0) {
+                throw HopLimitExceededException.INSTANCE;
+            }
+            if (toElement == null || compare(curr.value, toElement) < 0) {
+                result = curr;
+                curr = curr.right;
+            } else {
+                curr = curr.left;
+            }
+        }
+        return result == null ? null : result.value;
+    }
+
+    /**
+     * @return узел с наименьшим значением, не меньшим fromElement (null — наименьший узел дерева)
+     */
+    private Node<E> ceilingNode(E fromElement) {
+        Node<E> result = null;
+        Node<E> curr = root;
+        while (curr != null) {
+            if (fromElement == null || compare(curr.value, fromElement) >= 0) {
+                result = curr;
+                curr = curr.left;
+            } else {
+                curr = curr.right;
+            }
+        }
+        return result;
+    }
+
+    private static <E> Node<E> successor(Node<E> node) {
+        if (node.right != null) {
+            Node<E> curr = node.right;
+            while (curr.left != null) {
+                curr = curr.left;
+            }
+            return curr;
+        }
+        Node<E> curr = node;
+        Node<E> parent = node.parent;
+        while (parent != null && curr == parent.right) {
+            curr = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+
+    private final class TreeIterator implements Iterator<E> {
+        private final E toElement;
+        private Node<E> next;
+        private Node<E> lastReturned;
+        private int expectedModCount = modCount;
+
+        TreeIterator(Node<E> first, E toElement) {
+            this.next = first;
+            this.toElement = toElement;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null && (toElement == null || compare(next.value, toElement) < 0);
+        }
+
+        @Override
+        public E next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = successor(next);
+            return lastReturned.value;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            //у узла с двумя потомками deleteNode перенесёт в него значение следующего узла
+            if (lastReturned.left != null && lastReturned.right != null) {
+                next = lastReturned;
+            }
+            deleteNode(lastReturned);
+            size--;
+            modCount++;
+            expectedModCount = modCount;
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * Делится по границам поддеревьев без обхода элементов,
+     * поэтому parallelStream() распределяет работу между потоками
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        return new TreeSpliterator<>(new TreeSpliterator.Nodes<E, Node<E>>() {
+            @Override
+            public Node<E> left(Node<E> node) {
+                return node.left;
+            }
+
+            @Override
+            public Node<E> right(Node<E> node) {
+                return node.right;
+            }
+
+            @Override
+            public E value(Node<E> node) {
+                return node.value;
+            }
+
+            @Override
+            public int modCount() {
+                return modCount;
+            }
+        }, root, size, comparator);
     }
 
     /**
@@ -133,6 +1025,7 @@ public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implem
      * 1) Корень всегда чёрный.
      * 2) Если узел красный, то его потомки должны быть чёрными (обратное не всегда верно)
      * 3) Все пути от узла до листьев содержат одинаковое количество чёрных узлов (чёрная высота)
+     * 4) Размер каждого поддерева равен сумме размеров поддеревьев детей плюс один
      *
      * @throws NotBalancedTreeException если какое-либо свойство невыполнено
      */
@@ -146,12 +1039,15 @@ public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implem
         }
     }
 
-    private int traverseTreeAndCheckBalanced(Node node) throws NotBalancedTreeException {
+    private int traverseTreeAndCheckBalanced(Node<E> node) throws NotBalancedTreeException {
         if (node == null) {
             return 1;
         }
         int leftBlackHeight = traverseTreeAndCheckBalanced(node.left);
         int rightBlackHeight = traverseTreeAndCheckBalanced(node.right);
+        if (node.size != size(node.left) + size(node.right) + 1) {
+            throw new NotBalancedTreeException("Subtree size is out of date\n" + node.toString());
+        }
         if (leftBlackHeight != rightBlackHeight) {
             throw NotBalancedTreeException.create("Black height must be equal.", leftBlackHeight, rightBlackHeight, node.toString());
         }
@@ -162,7 +1058,7 @@ public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implem
         return leftBlackHeight + 1;
     }
 
-    private void checkRedNodeRule(Node node) throws NotBalancedTreeException {
+    private void checkRedNodeRule(Node<E> node) throws NotBalancedTreeException {
         if (node.left != null && node.left.color != Color.BLACK) {
             throw new NotBalancedTreeException("If a node is red, then left child must be black.\n" + node.toString());
         }
@@ -181,6 +1077,12 @@ public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implem
         Node<E> right;
         Node<E> parent;
         Color color = Color.BLACK;
+        int size = 1; //количество узлов в поддереве
+
+        Node(E value, Node<E> parent) {
+            this.value = value;
+            this.parent = parent;
+        }
 
         @Override
         public String toString() {
@@ -189,6 +1091,7 @@ public class RedBlackTree<E extends Comparable<E>> extends AbstractSet<E> implem
                     ", left=" + left +
                     ", right=" + right +
                     ", color=" + color +
+                    ", size=" + size +
                     '}';
         }
     }
@@ -2,13 +2,26 @@ package ru.mail.polis;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoField;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import ru.mail.polis.Student.Gender;
 
 /**
  * Created by Nechaev Mikhail
  * Since 13/12/2017.
+ * <p>
+ * {@link #generate()} берёт случайные числа из {@link ThreadLocalRandom}, так что потоки не делят одно
+ * состояние. Для больших объёмов есть {@link #stream(long, long)} и {@link #generate(int, long)}:
+ * студенты генерируются блоками по {@link #BLOCK_SIZE}, у каждого блока свой {@link SplittableRandom},
+ * засеянный seed и номером блока, а id выдаются диапазоном. Поэтому параллельный поток делится
+ * по границам блоков без общего состояния, а результат зависит только от seed, но не от того,
+ * как и на скольких ядрах поток был разделён.
  */
 public class SimpleStudentGenerator {
 
@@ -24,7 +37,15 @@ public class SimpleStudentGenerator {
     private final static int MAX_LETTER_CODE = 'z';
     private final static String EMAIL_SUFFIX = "@polis.mail.ru";
     private final static int MIN_PHONE_NUMBER = 1000000000;
-    private final static Random random = new Random();
+    private final static int EMAIL_USERNAME_LENGTH = 10;
+    private final static String PHOTO_PREFIX = URL_PREFIX + 1000000;
+    private final static char[] EMAIL_SUFFIX_CHARS = EMAIL_SUFFIX.toCharArray();
+    private final static long SEED_INCREMENT = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Количество студентов с одним генератором случайных чисел; параллельный поток делится по этим границам
+     */
+    public final static int BLOCK_SIZE = 1 << 12;
 
     private static final String[] maleFirstNames = {
             "Адонис", "Баграт", "Вальтер", "Гелеон", "Дамир", "Жерар", "Измаил", "Камиль", "Лазарь",
@@ -53,6 +74,45 @@ public class SimpleStudentGenerator {
     }
 
     public Student generate() {
+        return generate(Student.reserveIds(1), ThreadLocalRandom.current());
+    }
+
+    /**
+     * Генерирует count студентов параллельно
+     *
+     * @param seed при одинаковом seed студенты отличаются только id
+     */
+    public Student[] generate(int count, long seed) {
+        return stream(count, seed).parallel().toArray(Student[]::new);
+    }
+
+    public Student[] generate(int count) {
+        return generate(count, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Последовательный поток из count студентов, который можно сделать параллельным.
+     * Сразу резервирует count подряд идущих id
+     *
+     * @param seed при одинаковом seed студенты отличаются только id
+     */
+    public Stream<Student> stream(long count, long seed) {
+        return stream(Student.reserveIds(count), count, seed);
+    }
+
+    /**
+     * То же, что {@link #stream(long, long)}, но с id от firstId до firstId + count - 1, без резервирования.
+     * При одинаковых аргументах выдаёт равных студентов — для воспроизводимых наборов данных.
+     * Уникальность id тогда на вызывающем
+     */
+    public Stream<Student> stream(long firstId, long count, long seed) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count = " + count);
+        }
+        return StreamSupport.stream(new StudentSpliterator(firstId, 0, count, seed), false);
+    }
+
+    private static Student generate(long id, RandomGenerator random) {
         Gender gender = random.nextBoolean() ? Gender.MALE : Gender.FEMALE;
         String[] firstNames = gender == Gender.MALE ? maleFirstNames : femaleFirstNames;
         String firstName = firstNames[random.nextInt(firstNames.length)];
@@ -62,21 +122,104 @@ public class SimpleStudentGenerator {
                 .plusMonths(ChronoField.MONTH_OF_YEAR.range().getMinimum() + random.nextInt((int) ChronoField.MONTH_OF_YEAR.range().getMaximum()))
                 .plusDays(ChronoField.DAY_OF_MONTH.range().getMinimum() + random.nextInt((int) ChronoField.DAY_OF_MONTH.range().getSmallestMaximum()));
         int groupId = MIN_GROUP_ID + random.nextInt(100);
-        int yearOfAdmission = MIN_YEAR_OF_ADMISSION.plusYears(random.nextInt(MAX_YEARS_AFTER_ADMISSION + 1)).getYear();
+        int yearOfAdmission = MIN_YEAR_OF_ADMISSION.getYear() + random.nextInt(MAX_YEARS_AFTER_ADMISSION + 1);
 
-        Student student = new Student(firstName, lastName, gender, birthday, groupId, yearOfAdmission);
+        String photoReference = null;
+        String email = null;
+        String mobile = null;
         if (random.nextBoolean()) {
-            student.setPhotoReference(URL_PREFIX + 1000000 + random.nextInt(1000000));
+            photoReference = PHOTO_PREFIX + random.nextInt(1000000);
         }
         if (random.nextBoolean()) {
-            StringBuilder username = new StringBuilder();
-            random.ints(10, MIN_LETTER_CODE, MAX_LETTER_CODE + 1).forEach(((value -> username.append((char) value))));
-            student.setEmail(username + EMAIL_SUFFIX);
+            char[] chars = new char[EMAIL_USERNAME_LENGTH + EMAIL_SUFFIX_CHARS.length];
+            for (int i = 0; i < EMAIL_USERNAME_LENGTH; i++) {
+                chars[i] = (char) (MIN_LETTER_CODE + random.nextInt(MAX_LETTER_CODE - MIN_LETTER_CODE + 1));
+            }
+            System.arraycopy(EMAIL_SUFFIX_CHARS, 0, chars, EMAIL_USERNAME_LENGTH, EMAIL_SUFFIX_CHARS.length);
+            email = new String(chars);
         }
         if (random.nextBoolean()) {
-            student.setMobile("" + (MIN_PHONE_NUMBER + random.nextInt(MIN_PHONE_NUMBER)));
+            mobile = Integer.toString(MIN_PHONE_NUMBER + random.nextInt(MIN_PHONE_NUMBER));
+        }
+        return new Student(id, firstName, lastName, gender, birthday, groupId, yearOfAdmission,
+                photoReference, email, mobile);
+    }
+
+    /**
+     * Студенты с номерами [index, fence): номер i получает id firstId + i и генерируется
+     * из генератора блока i / BLOCK_SIZE. Делится только по границам блоков
+     */
+    private static final class StudentSpliterator implements Spliterator<Student> {
+
+        private final long firstId;
+        private final long seed;
+        private final long fence;
+        private long index;
+        private SplittableRandom random; //генератор блока, в котором лежит index
+
+        StudentSpliterator(long firstId, long index, long fence, long seed) {
+            this.firstId = firstId;
+            this.index = index;
+            this.fence = fence;
+            this.seed = seed;
+        }
+
+        private Student next() {
+            if (random == null || index % BLOCK_SIZE == 0) {
+                random = new SplittableRandom(seed + (index / BLOCK_SIZE + 1) * SEED_INCREMENT);
+            }
+            Student student = generate(firstId + index, random);
+            index++;
+            return student;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Student> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            if (index >= fence) {
+                return false;
+            }
+            action.accept(next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Student> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            while (index < fence) {
+                action.accept(next());
+            }
+        }
+
+        @Override
+        public Spliterator<Student> trySplit() {
+            if (random != null && index % BLOCK_SIZE != 0) {
+                //начатый блок доделывает тот, кто его начал
+                return null;
+            }
+            long mid = (index + (fence - index) / 2) / BLOCK_SIZE * BLOCK_SIZE;
+            if (mid <= index) {
+                return null;
+            }
+            StudentSpliterator prefix = new StudentSpliterator(firstId, index, mid, seed);
+            index = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED
+                    | Spliterator.NONNULL | Spliterator.IMMUTABLE;
         }
-        return student;
     }
 
     public static void main(String[] args) {
@@ -1,6 +1,7 @@
 package ru.mail.polis;
 
 import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Nechaev Mikhail
@@ -8,7 +9,7 @@ import java.time.LocalDate;
  */
 public class Student extends CheckedOpenHashTableEntity {
 
-    private static int counter = 0;
+    private static final AtomicLong counter = new AtomicLong();
 
     //NotNullable поля
     private long id; //Уникальный идентификатор студента
@@ -22,11 +23,40 @@ public class Student extends CheckedOpenHashTableEntity {
     private String photoReference; //Ссылка на фотографию студента
     private String email;
     private String mobile; //Номер телефона
-
+    //Кеш hash64(), 0 — ещё не посчитан. Потоки могут посчитать его одновременно, но значение у всех одно.
+    //volatile: запись обычного long может разорваться на две половины (JLS 17.7)
+    private volatile long hash;
+
+    /**
+     * Двойное хеширование: начальная ячейка — младшая половина hash64(), шаг — старшая, сделанная нечётной.
+     * Шаг нечётный, а размер таблицы — степень двойки, поэтому они взаимно просты
+     * и за tableSize проб обходятся все ячейки. Хеш закеширован, так что проба — это умножение со сложением.
+     */
     @Override
     public int hashCode(int tableSize, int probId) throws IllegalArgumentException {
-        //todo: реализуйте этот метод
-        return 0;
+        return probe(hash64(), tableSize, probId);
+    }
+
+    static int probe(long hash, int tableSize, int probId) throws IllegalArgumentException {
+        if (probId < 0 || probId >= tableSize) {
+            throw new IllegalArgumentException("probId = " + probId + ", tableSize = " + tableSize);
+        }
+        int start = (int) hash;
+        int step = (int) (hash >>> 32) | 1;
+        return (start + probId * step) & (tableSize - 1);
+    }
+
+    /**
+     * Та же схема проб для 32-битного хеша — для таблиц, которые хранят студентов не объектами.
+     * От неё зависит раскладка файлов {@link OffHeapStudentTable}, поэтому она не меняется
+     */
+    static int probe(int hash, int tableSize, int probId) throws IllegalArgumentException {
+        if (probId < 0 || probId >= tableSize) {
+            throw new IllegalArgumentException("probId = " + probId + ", tableSize = " + tableSize);
+        }
+        int start = hash ^ (hash >>> 16);
+        int step = ((hash * 0x9E3779B9) >>> 16) | 1;
+        return (start + probId * step) & (tableSize - 1);
     }
 
     public enum  Gender {
@@ -34,7 +64,7 @@ public class Student extends CheckedOpenHashTableEntity {
     }
 
     public Student(String firstName, String lastName, Gender gender, LocalDate birthday, int groupId, int yearOfAdmission) {
-        this.id = counter++;
+        this.id = counter.getAndIncrement();
         this.firstName = firstName;
         this.lastName = lastName;
         this.gender = gender;
@@ -51,6 +81,32 @@ public class Student extends CheckedOpenHashTableEntity {
         this.mobile = mobile;
     }
 
+    /**
+     * Резервирует count подряд идущих id для студентов, создаваемых конструктором с явным id
+     *
+     * @return первый из зарезервированных id
+     */
+    static long reserveIds(long count) {
+        return counter.getAndAdd(count);
+    }
+
+    /**
+     * Восстанавливает студента с уже выданным id, не трогая счётчик
+     */
+    Student(long id, String firstName, String lastName, Gender gender, LocalDate birthday, int groupId,
+            int yearOfAdmission, String photoReference, String email, String mobile) {
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.gender = gender;
+        this.birthday = birthday;
+        this.groupId = groupId;
+        this.yearOfAdmission = yearOfAdmission;
+        this.photoReference = photoReference;
+        this.email = email;
+        this.mobile = mobile;
+    }
+
     public long getId() {
         return id;
     }
@@ -85,6 +141,7 @@ public class Student extends CheckedOpenHashTableEntity {
 
     public void setPhotoReference(String photoReference) {
         this.photoReference = photoReference;
+        this.hash = 0;
     }
 
     public String getEmail() {
@@ -93,6 +150,7 @@ public class Student extends CheckedOpenHashTableEntity {
 
     public void setEmail(String email) {
         this.email = email;
+        this.hash = 0;
     }
 
     public String getMobile() {
@@ -101,6 +159,7 @@ public class Student extends CheckedOpenHashTableEntity {
 
     public void setMobile(String mobile) {
         this.mobile = mobile;
+        this.hash = 0;
     }
 
     @Override
@@ -125,17 +184,43 @@ public class Student extends CheckedOpenHashTableEntity {
 
     @Override
     public int hashCode() {
-        int result = (int) (id ^ (id >>> 32));
-        result = 31 * result + firstName.hashCode();
-        result = 31 * result + lastName.hashCode();
-        result = 31 * result + gender.hashCode();
-        result = 31 * result + birthday.hashCode();
-        result = 31 * result + groupId;
-        result = 31 * result + yearOfAdmission;
-        result = 31 * result + (photoReference != null ? photoReference.hashCode() : 0);
-        result = 31 * result + (email != null ? email.hashCode() : 0);
-        result = 31 * result + (mobile != null ? mobile.hashCode() : 0);
-        return result;
+        long h = hash64();
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 64-битный хеш по всем полям, перемешанный финализатором MurmurHash3, так что и младшие,
+     * и старшие биты зависят от каждого поля. Считается один раз и сбрасывается сеттерами
+     */
+    long hash64() {
+        long h = hash;
+        if (h == 0) {
+            h = id;
+            h = 31 * h + firstName.hashCode();
+            h = 31 * h + lastName.hashCode();
+            h = 31 * h + gender.ordinal();
+            h = 31 * h + birthday.toEpochDay();
+            h = 31 * h + groupId;
+            h = 31 * h + yearOfAdmission;
+            h = 31 * h + (photoReference != null ? photoReference.hashCode() : 0);
+            h = 31 * h + (email != null ? email.hashCode() : 0);
+            h = 31 * h + (mobile != null ? mobile.hashCode() : 0);
+            h = mix(h);
+            if (h == 0) {
+                h = 1;
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
     }
 
     @Override
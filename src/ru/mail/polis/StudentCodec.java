@@ -0,0 +1,332 @@
+package ru.mail.polis;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Компактное двоичное представление {@link Student}.
+ * <p>
+ * Запись: байт флагов (пол и наличие photoReference, email, mobile), затем varint-ы
+ * (по 7 бит в байте, zigzag для знака) id, groupId, yearOfAdmission и birthday как epoch day,
+ * затем строки firstName, lastName и присутствующие nullable строки — длина varint-ом и UTF-8.
+ * Типичный студент занимает меньше сотни байт, при этом для записи и чтения не нужен ни
+ * один промежуточный объект, кроме самих строк.
+ * <p>
+ * {@link #encode(Student, ByteBuffer)} и {@link #decode(ByteBuffer)} работают с буфером напрямую
+ * и не оставляют половину записи: если места или данных не хватило, позиция буфера возвращается назад.
+ * {@link ChannelWriter} и {@link ChannelReader} поверх них пишут и читают поток записей через канал
+ * большими блоками. Как {@link ElementCodec} кодек подходит для журнала и снимков {@link DurableSet}.
+ */
+public class StudentCodec implements ElementCodec<Student> {
+
+    private static final int FEMALE = 1;
+    private static final int HAS_PHOTO_REFERENCE = 1 << 1;
+    private static final int HAS_EMAIL = 1 << 2;
+    private static final int HAS_MOBILE = 1 << 3;
+    private static final int KNOWN_FLAGS = FEMALE | HAS_PHOTO_REFERENCE | HAS_EMAIL | HAS_MOBILE;
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Записывает студента в буфер с текущей позиции
+     *
+     * @return количество записанных байт
+     * @throws BufferOverflowException если запись не поместилась; позиция буфера не меняется
+     */
+    public static int encode(Student student, ByteBuffer buffer) {
+        int start = buffer.position();
+        try {
+            int flags = (student.getGender() == Student.Gender.FEMALE ? FEMALE : 0)
+                    | (student.getPhotoReference() != null ? HAS_PHOTO_REFERENCE : 0)
+                    | (student.getEmail() != null ? HAS_EMAIL : 0)
+                    | (student.getMobile() != null ? HAS_MOBILE : 0);
+            buffer.put((byte) flags);
+            putVarLong(buffer, zigzag(student.getId()));
+            putVarLong(buffer, zigzag(student.getGroupId()));
+            putVarLong(buffer, zigzag(student.getYearOfAdmission()));
+            putVarLong(buffer, zigzag(student.getBirthday().toEpochDay()));
+            putString(buffer, student.getFirstName());
+            putString(buffer, student.getLastName());
+            if (student.getPhotoReference() != null) {
+                putString(buffer, student.getPhotoReference());
+            }
+            if (student.getEmail() != null) {
+                putString(buffer, student.getEmail());
+            }
+            if (student.getMobile() != null) {
+                putString(buffer, student.getMobile());
+            }
+        } catch (BufferOverflowException e) {
+            buffer.position(start);
+            throw e;
+        }
+        return buffer.position() - start;
+    }
+
+    /**
+     * Читает студента с текущей позиции буфера
+     *
+     * @throws BufferUnderflowException если запись в буфере неполная; позиция буфера не меняется
+     * @throws IllegalArgumentException если данные не являются записью студента
+     */
+    public static Student decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        try {
+            int flags = buffer.get();
+            if ((flags & ~KNOWN_FLAGS) != 0) {
+                throw new IllegalArgumentException("Unknown flags: " + flags);
+            }
+            long id = unzigzag(getVarLong(buffer));
+            int groupId = (int) unzigzag(getVarLong(buffer));
+            int yearOfAdmission = (int) unzigzag(getVarLong(buffer));
+            LocalDate birthday = LocalDate.ofEpochDay(unzigzag(getVarLong(buffer)));
+            String firstName = getString(buffer);
+            String lastName = getString(buffer);
+            String photoReference = (flags & HAS_PHOTO_REFERENCE) != 0 ? getString(buffer) : null;
+            String email = (flags & HAS_EMAIL) != 0 ? getString(buffer) : null;
+            String mobile = (flags & HAS_MOBILE) != 0 ? getString(buffer) : null;
+            Student.Gender gender = (flags & FEMALE) != 0 ? Student.Gender.FEMALE : Student.Gender.MALE;
+            return new Student(id, firstName, lastName, gender, birthday, groupId, yearOfAdmission,
+                    photoReference, email, mobile);
+        } catch (BufferUnderflowException e) {
+            buffer.position(start);
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(Student value, DataOutput out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        while (true) {
+            try {
+                encode(value, buffer);
+                break;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    @Override
+    public Student read(DataInput in) throws IOException {
+        int flags = in.readByte();
+        if ((flags & ~KNOWN_FLAGS) != 0) {
+            throw new IOException("Unknown flags: " + flags);
+        }
+        long id = unzigzag(readVarLong(in));
+        int groupId = (int) unzigzag(readVarLong(in));
+        int yearOfAdmission = (int) unzigzag(readVarLong(in));
+        LocalDate birthday = LocalDate.ofEpochDay(unzigzag(readVarLong(in)));
+        String firstName = readString(in);
+        String lastName = readString(in);
+        String photoReference = (flags & HAS_PHOTO_REFERENCE) != 0 ? readString(in) : null;
+        String email = (flags & HAS_EMAIL) != 0 ? readString(in) : null;
+        String mobile = (flags & HAS_MOBILE) != 0 ? readString(in) : null;
+        Student.Gender gender = (flags & FEMALE) != 0 ? Student.Gender.FEMALE : Student.Gender.MALE;
+        return new Student(id, firstName, lastName, gender, birthday, groupId, yearOfAdmission,
+                photoReference, email, mobile);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarLong(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        long length = getVarLong(buffer);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Malformed string length: " + length);
+        }
+        if (buffer.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), (int) length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + (int) length);
+        } else {
+            byte[] bytes = new byte[(int) length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        long length = readVarLong(in);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Malformed string length: " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Пишет студентов в канал через буфер; запись, которая не влезает в пустой буфер, его увеличивает
+     */
+    public static class ChannelWriter implements Closeable {
+
+        private final WritableByteChannel channel;
+        private ByteBuffer buffer;
+
+        public ChannelWriter(WritableByteChannel channel) {
+            this(channel, DEFAULT_BUFFER_SIZE);
+        }
+
+        public ChannelWriter(WritableByteChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        public void write(Student student) throws IOException {
+            while (true) {
+                try {
+                    encode(student, buffer);
+                    return;
+                } catch (BufferOverflowException e) {
+                    if (buffer.position() == 0) {
+                        buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                    } else {
+                        flush();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Отдаёт накопленные записи в канал
+         */
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * Читает студентов из канала, записанных {@link ChannelWriter} или {@link #encode(Student, ByteBuffer)}
+     */
+    public static class ChannelReader implements Closeable {
+
+        private final ReadableByteChannel channel;
+        private ByteBuffer buffer;
+        private boolean eof;
+
+        public ChannelReader(ReadableByteChannel channel) {
+            this(channel, DEFAULT_BUFFER_SIZE);
+        }
+
+        public ChannelReader(ReadableByteChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+            this.buffer.flip();
+        }
+
+        /**
+         * @return следующий студент или null, если поток закончился
+         * @throws EOFException если поток оборвался посреди записи
+         */
+        public Student read() throws IOException {
+            while (true) {
+                if (buffer.hasRemaining()) {
+                    try {
+                        return decode(buffer);
+                    } catch (BufferUnderflowException e) {
+                        //запись дочитается из канала
+                    }
+                }
+                if (eof) {
+                    if (buffer.hasRemaining()) {
+                        throw new EOFException("Truncated student record");
+                    }
+                    return null;
+                }
+                fill();
+            }
+        }
+
+        /**
+         * Дочитывает канал в буфер; если неполная запись занимает весь буфер, увеличивает его
+         */
+        private void fill() throws IOException {
+            if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                bigger.put(buffer);
+                buffer = bigger;
+            } else {
+                buffer.compact();
+            }
+            if (channel.read(buffer) < 0) {
+                eof = true;
+            }
+            buffer.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+}
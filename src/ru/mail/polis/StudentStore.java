@@ -0,0 +1,397 @@
+package ru.mail.polis;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Колоночное хранилище студентов: каждое поле лежит в своём массиве примитивов.
+ * <p>
+ * id — long[], groupId — int[], yearOfAdmission — short[], birthday — int[] epoch day,
+ * пол — битовое множество (бит строки установлен у FEMALE). Имена и фамилии повторяются,
+ * поэтому хранятся номерами в словаре строк. Nullable поля нужны только при материализации
+ * и лежат в массивах строк. Основные колонки занимают 26 байт на студента против сотен байт
+ * у объекта со строками.
+ * <p>
+ * Фильтры where* проходят по одной колонке подряд без ветвлений и возвращают {@link RowSet} —
+ * битовое множество номеров строк, которые можно пересекать и объединять. Такой цикл JIT
+ * разворачивает и векторизует, и скорость скана упирается в пропускную способность памяти.
+ * Объекты {@link Student} создаются только в {@link #get(int)} и {@link #students(RowSet)}.
+ * <p>
+ * Хранилище только для добавления и не потокобезопасно.
+ */
+public class StudentStore {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int size;
+    private long[] ids;
+    private int[] groupIds;
+    private short[] years;
+    private int[] birthdays;
+    private long[] female;
+    private int[] firstNames;
+    private int[] lastNames;
+    private String[] photoReferences;
+    private String[] emails;
+    private String[] mobiles;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private String[] dictionary = new String[DEFAULT_CAPACITY];
+
+    public StudentStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public StudentStore(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity = " + capacity);
+        }
+        ids = new long[capacity];
+        groupIds = new int[capacity];
+        years = new short[capacity];
+        birthdays = new int[capacity];
+        female = new long[words(capacity)];
+        firstNames = new int[capacity];
+        lastNames = new int[capacity];
+        photoReferences = new String[capacity];
+        emails = new String[capacity];
+        mobiles = new String[capacity];
+    }
+
+    private static int words(int rows) {
+        return (rows + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Добавляет студента в конец хранилища
+     *
+     * @return номер строки
+     * @throws IllegalArgumentException если год поступления не помещается в short
+     */
+    public int add(Student student) {
+        int year = student.getYearOfAdmission();
+        if (year != (short) year) {
+            throw new IllegalArgumentException("yearOfAdmission = " + year);
+        }
+        long epochDay = student.getBirthday().toEpochDay();
+        if (epochDay != (int) epochDay) {
+            throw new IllegalArgumentException("birthday = " + student.getBirthday());
+        }
+        if (size == ids.length) {
+            resize(size * 2);
+        }
+        int row = size++;
+        ids[row] = student.getId();
+        groupIds[row] = student.getGroupId();
+        years[row] = (short) year;
+        birthdays[row] = (int) epochDay;
+        if (student.getGender() == Student.Gender.FEMALE) {
+            female[row >>> 6] |= 1L << row;
+        }
+        firstNames[row] = encode(student.getFirstName());
+        lastNames[row] = encode(student.getLastName());
+        photoReferences[row] = student.getPhotoReference();
+        emails[row] = student.getEmail();
+        mobiles[row] = student.getMobile();
+        return row;
+    }
+
+    public void addAll(Iterable<? extends Student> students) {
+        for (Student student : students) {
+            add(student);
+        }
+    }
+
+    private void resize(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        groupIds = Arrays.copyOf(groupIds, capacity);
+        years = Arrays.copyOf(years, capacity);
+        birthdays = Arrays.copyOf(birthdays, capacity);
+        female = Arrays.copyOf(female, words(capacity));
+        firstNames = Arrays.copyOf(firstNames, capacity);
+        lastNames = Arrays.copyOf(lastNames, capacity);
+        photoReferences = Arrays.copyOf(photoReferences, capacity);
+        emails = Arrays.copyOf(emails, capacity);
+        mobiles = Arrays.copyOf(mobiles, capacity);
+    }
+
+    private int encode(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = codes.size();
+            if (code == dictionary.length) {
+                dictionary = Arrays.copyOf(dictionary, code * 2);
+            }
+            dictionary[code] = value;
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return количество разных имён и фамилий в словаре
+     */
+    public int getDictionarySize() {
+        return codes.size();
+    }
+
+    /**
+     * Материализует строку в нового студента, равного добавленному
+     */
+    public Student get(int row) {
+        checkRow(row);
+        return new Student(ids[row], dictionary[firstNames[row]], dictionary[lastNames[row]], getGender(row),
+                LocalDate.ofEpochDay(birthdays[row]), groupIds[row], years[row],
+                photoReferences[row], emails[row], mobiles[row]);
+    }
+
+    public long getId(int row) {
+        checkRow(row);
+        return ids[row];
+    }
+
+    public int getGroupId(int row) {
+        checkRow(row);
+        return groupIds[row];
+    }
+
+    public int getYearOfAdmission(int row) {
+        checkRow(row);
+        return years[row];
+    }
+
+    public Student.Gender getGender(int row) {
+        checkRow(row);
+        return (female[row >>> 6] & (1L << row)) != 0 ? Student.Gender.FEMALE : Student.Gender.MALE;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row = " + row + ", size = " + size);
+        }
+    }
+
+    /**
+     * @return все строки хранилища
+     */
+    public RowSet all() {
+        long[] words = new long[words(size)];
+        Arrays.fill(words, -1L);
+        return new RowSet(words, size);
+    }
+
+    public RowSet whereGroupId(int groupId) {
+        return whereGroupId(groupId, groupId);
+    }
+
+    /**
+     * @return строки с groupId из [from, to]
+     */
+    public RowSet whereGroupId(int from, int to) {
+        return scan(groupIds, from, to);
+    }
+
+    /**
+     * @return строки с yearOfAdmission из [from, to]
+     */
+    public RowSet whereYearOfAdmission(int from, int to) {
+        return scan(years, from, to);
+    }
+
+    /**
+     * @return строки с birthday из [from, to]
+     */
+    public RowSet whereBirthday(LocalDate from, LocalDate to) {
+        long fromDay = Math.max(from.toEpochDay(), Integer.MIN_VALUE);
+        long toDay = Math.min(to.toEpochDay(), Integer.MAX_VALUE);
+        if (fromDay > toDay) {
+            return new RowSet(new long[words(size)], size);
+        }
+        return scan(birthdays, (int) fromDay, (int) toDay);
+    }
+
+    public RowSet whereGender(Student.Gender gender) {
+        long[] words = Arrays.copyOf(female, words(size));
+        if (gender == Student.Gender.MALE) {
+            for (int word = 0; word < words.length; word++) {
+                words[word] = ~words[word];
+            }
+        }
+        return new RowSet(words, size);
+    }
+
+    public RowSet whereFirstName(String firstName) {
+        return whereCode(firstNames, firstName);
+    }
+
+    public RowSet whereLastName(String lastName) {
+        return whereCode(lastNames, lastName);
+    }
+
+    /**
+     * Имя ищется в словаре один раз, дальше скан сравнивает числа
+     */
+    private RowSet whereCode(int[] column, String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            return new RowSet(new long[words(size)], size);
+        }
+        return scan(column, code, code);
+    }
+
+    /**
+     * Циклы для int[] и short[] отдельные: чтение колонки через лямбду JIT не всегда
+     * встраивает, и тогда цикл не векторизуется
+     */
+    private RowSet scan(int[] column, int from, int to) {
+        long[] words = new long[words(size)];
+        if (from <= to) {
+            long span = (long) to - from;
+            for (int word = 0; word < words.length; word++) {
+                int base = word << 6;
+                int end = Math.min(base + Long.SIZE, size);
+                long bits = 0;
+                for (int row = base; row < end; row++) {
+                    bits |= inRange(column[row] - from, span) << row;
+                }
+                words[word] = bits;
+            }
+        }
+        return new RowSet(words, size);
+    }
+
+    private RowSet scan(short[] column, int from, int to) {
+        long[] words = new long[words(size)];
+        if (from <= to) {
+            long span = (long) to - from;
+            for (int word = 0; word < words.length; word++) {
+                int base = word << 6;
+                int end = Math.min(base + Long.SIZE, size);
+                long bits = 0;
+                for (int row = base; row < end; row++) {
+                    bits |= inRange(column[row] - from, span) << row;
+                }
+                words[word] = bits;
+            }
+        }
+        return new RowSet(words, size);
+    }
+
+    /**
+     * Без ветвлений: 1, если offset как беззнаковое число не больше span, иначе 0
+     */
+    private static long inRange(int offset, long span) {
+        return ((offset & 0xFFFFFFFFL) - span - 1) >>> 63;
+    }
+
+    /**
+     * Материализует студентов из выбранных строк в порядке номеров
+     */
+    public Stream<Student> students(RowSet rows) {
+        return rows.stream().mapToObj(this::get);
+    }
+
+    /**
+     * Множество номеров строк хранилища. Неизменяемое: операции возвращают новые множества
+     */
+    public static final class RowSet {
+
+        private final long[] words;
+        private final int size;
+
+        private RowSet(long[] words, int size) {
+            this.words = words;
+            this.size = size;
+            //биты за последней строкой всегда сброшены
+            if (size % Long.SIZE != 0) {
+                words[words.length - 1] &= (1L << size) - 1;
+            }
+        }
+
+        public boolean contains(int row) {
+            return row >= 0 && row < size && (words[row >>> 6] & (1L << row)) != 0;
+        }
+
+        public int cardinality() {
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            return count;
+        }
+
+        public RowSet and(RowSet other) {
+            checkSize(other);
+            long[] result = new long[words.length];
+            for (int i = 0; i < words.length; i++) {
+                result[i] = words[i] & other.words[i];
+            }
+            return new RowSet(result, size);
+        }
+
+        public RowSet or(RowSet other) {
+            checkSize(other);
+            long[] result = new long[words.length];
+            for (int i = 0; i < words.length; i++) {
+                result[i] = words[i] | other.words[i];
+            }
+            return new RowSet(result, size);
+        }
+
+        public RowSet andNot(RowSet other) {
+            checkSize(other);
+            long[] result = new long[words.length];
+            for (int i = 0; i < words.length; i++) {
+                result[i] = words[i] & ~other.words[i];
+            }
+            return new RowSet(result, size);
+        }
+
+        /**
+         * Дополнительно отбирает строки, для которых выполняется предикат. Для условий,
+         * под которые нет колоночного фильтра
+         */
+        public RowSet filter(IntPredicate predicate) {
+            long[] result = words.clone();
+            for (int i = 0; i < result.length; i++) {
+                for (long rest = result[i]; rest != 0; rest &= rest - 1) {
+                    int row = (i << 6) + Long.numberOfTrailingZeros(rest);
+                    if (!predicate.test(row)) {
+                        result[i] &= ~(1L << row);
+                    }
+                }
+            }
+            return new RowSet(result, size);
+        }
+
+        /**
+         * @return номера строк по возрастанию
+         */
+        public IntStream stream() {
+            return IntStream.range(0, words.length).flatMap(i -> {
+                long word = words[i];
+                int[] rows = new int[Long.bitCount(word)];
+                for (int j = 0; word != 0; word &= word - 1, j++) {
+                    rows[j] = (i << 6) + Long.numberOfTrailingZeros(word);
+                }
+                return IntStream.of(rows);
+            });
+        }
+
+        private void checkSize(RowSet other) {
+            if (other.size != size) {
+                throw new IllegalArgumentException("Row sets of different sizes: " + size + " and " + other.size);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,284 @@
+package ru.mail.polis;
+
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Хеш-таблица с открытой адресацией в духе SwissTable.
+ * <p>
+ * Ячейки разбиты на группы по 8, и для каждой ячейки хранится управляющий байт:
+ * {@link #EMPTY}, {@link #DELETED} или 7-битный тег — младшие биты перемешанного hashCode() элемента.
+ * Управляющие байты группы лежат в одном long, поэтому сравнение тега со всей группой,
+ * поиск пустых ячеек и т. п. делаются несколькими арифметическими операциями над long (SWAR).
+ * equals() вызывается только для ячеек с совпавшим тегом, так что неуспешный поиск
+ * почти всегда обходится чтением одного long и не трогает сами элементы.
+ * <p>
+ * Группы обходятся двойным хешированием: проба номер probId — группа
+ * {@link OpenHashTableEntity#hashCode(int, int)} от числа групп. Поиск останавливается
+ * на группе, в которой есть пустая ячейка. Таблица расширяется при заполнении 7/8.
+ */
+public class SwissHashTable<E extends OpenHashTableEntity> extends AbstractSet<E> implements Set<E> {
+
+    private static final int GROUP_SIZE = 8;
+    private static final int INITIAL_GROUPS = 1;
+
+    private static final long EMPTY = 0x80L;
+    private static final long DELETED = 0xFEL;
+
+    private static final long LSBS = 0x0101010101010101L;
+    private static final long MSBS = 0x8080808080808080L;
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private int size;
+    private int deleted;
+    private int modCount;
+    private long[] control;
+    private Object[] slots;
+
+    public SwissHashTable() {
+        this.control = emptyControl(INITIAL_GROUPS);
+        this.slots = new Object[INITIAL_GROUPS * GROUP_SIZE];
+    }
+
+    private static long[] emptyControl(int groups) {
+        long[] control = new long[groups];
+        for (int i = 0; i < groups; i++) {
+            control[i] = EMPTY * LSBS;
+        }
+        return control;
+    }
+
+    private static int tag(Object value) {
+        return (value.hashCode() * 0x9E3779B9) >>> 25;
+    }
+
+    /**
+     * @return старший бит каждого байта группы, равного tag
+     */
+    private static long matchTag(long group, int tag) {
+        long x = group ^ (tag * LSBS);
+        //точная проверка байтов на ноль, без ложных срабатываний из-за переносов
+        return ~(((x & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | x | LOW_SEVEN_BITS);
+    }
+
+    /**
+     * @return старший бит каждого байта группы, равного EMPTY.
+     * У EMPTY (1000_0000) бит 1 нулевой, у DELETED (1111_1110) — единичный, у тегов нулевой старший бит
+     */
+    private static long matchEmpty(long group) {
+        return group & ~(group << 6) & MSBS;
+    }
+
+    private static long matchEmptyOrDeleted(long group) {
+        return group & MSBS;
+    }
+
+    private static int firstSlot(long match) {
+        return Long.numberOfTrailingZeros(match) >>> 3;
+    }
+
+    private void setControl(int idx, long value) {
+        int group = idx / GROUP_SIZE;
+        int shift = (idx % GROUP_SIZE) * 8;
+        control[group] = (control[group] & ~(0xFFL << shift)) | (value << shift);
+    }
+
+    /**
+     * Вставляет элемент в хеш-таблицу.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param value элемент который необходимо вставить
+     * @return true, если элемент в хеш-таблице отсутствовал
+     */
+    @Override
+    public boolean add(E value) {
+        int tag = tag(value);
+        if (indexOf(value, tag) >= 0) {
+            return false;
+        }
+        insert(value, tag);
+        size++;
+        modCount++;
+        resize();
+        return true;
+    }
+
+    /**
+     * Удаляет элемент с таким же значением из хеш-таблицы.
+     * Если в группе есть пустая ячейка, ни один поиск не проходит через неё дальше,
+     * и ячейку можно сделать пустой, иначе ставится DELETED.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо вставить
+     * @return true, если элемент содержался в хеш-таблице
+     */
+    @Override
+    public boolean remove(Object object) {
+        @SuppressWarnings("unchecked")
+        E value = (E) object;
+        int idx = indexOf(value, tag(value));
+        if (idx < 0) {
+            return false;
+        }
+        removeAt(idx);
+        return true;
+    }
+
+    private void removeAt(int idx) {
+        slots[idx] = null;
+        if (matchEmpty(control[idx / GROUP_SIZE]) != 0) {
+            setControl(idx, EMPTY);
+        } else {
+            setControl(idx, DELETED);
+            deleted++;
+        }
+        size--;
+        modCount++;
+    }
+
+    /**
+     * Ищет элемент с таким же значением в хеш-таблице.
+     * Инвариант: на вход всегда приходит NotNull объект, который имеет корректный тип
+     *
+     * @param object элемент который необходимо поискать
+     * @return true, если такой элемент содержится в хеш-таблице
+     */
+    @Override
+    public boolean contains(Object object) {
+        @SuppressWarnings("unchecked")
+        E value = (E) object;
+        return indexOf(value, tag(value)) >= 0;
+    }
+
+    private int indexOf(E value, int tag) {
+        int groups = control.length;
+        for (int probId = 0; probId < groups; probId++) {
+            int group = value.hashCode(groups, probId);
+            long ctrl = control[group];
+            for (long match = matchTag(ctrl, tag); match != 0; match &= match - 1) {
+                int idx = group * GROUP_SIZE + firstSlot(match);
+                if (value.equals(slots[idx])) {
+                    return idx;
+                }
+            }
+            if (matchEmpty(ctrl) != 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Кладёт элемент в первую пустую или удалённую ячейку на его пути. Элемента в таблице быть не должно
+     */
+    private void insert(Object value, int tag) {
+        OpenHashTableEntity entity = (OpenHashTableEntity) value;
+        int groups = control.length;
+        for (int probId = 0; probId < groups; probId++) {
+            int group = entity.hashCode(groups, probId);
+            long match = matchEmptyOrDeleted(control[group]);
+            if (match != 0) {
+                int idx = group * GROUP_SIZE + firstSlot(match);
+                if (isDeleted(idx)) {
+                    deleted--;
+                }
+                slots[idx] = value;
+                setControl(idx, tag);
+                return;
+            }
+        }
+        throw new IllegalStateException("No free cells, tableSize = " + slots.length);
+    }
+
+    private boolean isDeleted(int idx) {
+        return ((control[idx / GROUP_SIZE] >>> ((idx % GROUP_SIZE) * 8)) & 0xFF) == DELETED;
+    }
+
+    /**
+     * Перестраивает таблицу, когда элементы вместе с удалёнными ячейками занимают 7/8 ячеек.
+     * Если удалённых больше, чем элементов, размер не меняется
+     */
+    private void resize() {
+        int capacity = slots.length;
+        if ((size + deleted) * 8 < capacity * 7) {
+            return;
+        }
+        Object[] old = slots;
+        int groups = size * 2 >= capacity ? control.length << 1 : control.length;
+        control = emptyControl(groups);
+        slots = new Object[groups * GROUP_SIZE];
+        deleted = 0;
+        for (Object value : old) {
+            if (value != null) {
+                insert(value, tag(value));
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getTableSize() {
+        return slots.length;
+    }
+
+    /**
+     * Итератор по ячейкам таблицы. Удаление через итератор не двигает элементы, а только
+     * освобождает ячейку, как {@link #remove(Object)}. Любое другое изменение таблицы
+     * после создания итератора приводит к ConcurrentModificationException
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int idx = advance(0);
+            private int lastReturned = -1;
+            private int expectedModCount = modCount;
+
+            private int advance(int from) {
+                while (from < slots.length && slots[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return idx < slots.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = idx;
+                E value = (E) slots[idx];
+                idx = advance(idx + 1);
+                return value;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned < 0) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                removeAt(lastReturned);
+                expectedModCount = modCount;
+                lastReturned = -1;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,167 @@
+package ru.mail.polis;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator по бинарному дереву поиска, который делится по границам поддеревьев.
+ * <p>
+ * Состояние — стек узлов, каждый из которых означает «сам узел, затем его правое поддерево»
+ * (на вершине стека — наименьший), и необязательная верхняя граница fence (не включительно).
+ * При делении нижний элемент стека (ближайший к корню предок) остаётся в текущем spliterator,
+ * а всё, что выше него, уходит в префикс. Если в стеке один узел, граница ставится
+ * на корень его правого поддерева: префикс получает узел и левую половину, текущий — правую.
+ * Так каждое деление отрезает примерно половину дерева, не обходя элементы.
+ *
+ * @param <N> тип узла дерева
+ */
+final class TreeSpliterator<E, N> implements Spliterator<E> {
+
+    /**
+     * Доступ к полям узлов конкретного дерева
+     */
+    interface Nodes<E, N> {
+        N left(N node);
+
+        N right(N node);
+
+        E value(N node);
+
+        /**
+         * @return текущий счётчик модификаций дерева
+         */
+        int modCount();
+    }
+
+    private final Nodes<E, N> nodes;
+    private final Comparator<? super E> comparator;
+    private final Deque<N> stack = new ArrayDeque<>();
+    private final int expectedModCount;
+    private final E fence; //null — без ограничения
+    private long estimate;
+    private boolean exact;
+
+    TreeSpliterator(Nodes<E, N> nodes, N root, int size, Comparator<? super E> comparator) {
+        this(nodes, comparator, null, size, true, nodes.modCount());
+        pushLeft(root);
+    }
+
+    private TreeSpliterator(Nodes<E, N> nodes, Comparator<? super E> comparator, E fence,
+                            long estimate, boolean exact, int modCount) {
+        this.nodes = nodes;
+        this.comparator = comparator;
+        this.fence = fence;
+        this.estimate = estimate;
+        this.exact = exact;
+        this.expectedModCount = modCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(E v1, E v2) {
+        return comparator == null ? ((Comparable<? super E>) v1).compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    private void pushLeft(N node) {
+        for (N curr = node; curr != null; curr = nodes.left(curr)) {
+            stack.push(curr);
+        }
+    }
+
+    private boolean beforeFence(N node) {
+        return fence == null || compare(nodes.value(node), fence) < 0;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        N node = stack.peek();
+        if (node == null || !beforeFence(node)) {
+            return false;
+        }
+        stack.pop();
+        pushLeft(nodes.right(node));
+        action.accept(nodes.value(node));
+        if (nodes.modCount() != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super E> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        N node;
+        while ((node = stack.peek()) != null && beforeFence(node)) {
+            stack.pop();
+            pushLeft(nodes.right(node));
+            action.accept(nodes.value(node));
+        }
+        if (nodes.modCount() != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public Spliterator<E> trySplit() {
+        //узлы за границей вместе с правыми поддеревьями уже не будут выданы
+        while (!stack.isEmpty() && !beforeFence(stack.peekLast())) {
+            stack.pollLast();
+        }
+        if (stack.isEmpty()) {
+            return null;
+        }
+        TreeSpliterator<E, N> prefix;
+        N bottom = stack.pollLast();
+        if (!stack.isEmpty()) {
+            //все узлы выше нижнего лежат в его левом поддереве, граница им не нужна
+            prefix = create(null);
+            prefix.stack.addAll(stack);
+            stack.clear();
+            stack.push(bottom);
+        } else {
+            N mid = nodes.right(bottom);
+            while (mid != null && !beforeFence(mid)) {
+                mid = nodes.left(mid);
+            }
+            if (mid == null) {
+                stack.push(bottom);
+                return null;
+            }
+            prefix = create(nodes.value(mid));
+            prefix.stack.push(bottom);
+            stack.push(mid);
+        }
+        estimate >>>= 1;
+        exact = false;
+        prefix.estimate = estimate;
+        return prefix;
+    }
+
+    private TreeSpliterator<E, N> create(E prefixFence) {
+        return new TreeSpliterator<>(nodes, comparator, prefixFence, 0, false, expectedModCount);
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return (exact ? Spliterator.SIZED : 0)
+                | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.ORDERED | Spliterator.NONNULL;
+    }
+
+    @Override
+    public Comparator<? super E> getComparator() {
+        return comparator;
+    }
+}
@@ -0,0 +1,152 @@
+package ru.mail.polis;
+
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * Живое представление диапазона [fromElement, toElement) дерева.
+ * <p>
+ * Элементы не копируются: все операции обращаются к исходному дереву, а изменения
+ * в дереве сразу видны в представлении и наоборот. Итератор за O(log n) находит
+ * нижнюю границу и дальше идёт только по элементам диапазона, поэтому обход k элементов
+ * стоит O(log n + k). Граница, равная null, означает отсутствие ограничения с этой стороны.
+ */
+final class TreeSubSet<E> extends AbstractSet<E> implements SortedSet<E> {
+
+    private final NavigableTree<E> tree;
+    private final E fromElement; //включительно
+    private final E toElement; //не включительно
+
+    TreeSubSet(NavigableTree<E> tree, E fromElement, E toElement) {
+        this.tree = tree;
+        this.fromElement = fromElement;
+        this.toElement = toElement;
+        if (fromElement != null && toElement != null && compare(fromElement, toElement) > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(E v1, E v2) {
+        Comparator<? super E> comparator = tree.comparator();
+        return comparator == null ? ((Comparable<? super E>) v1).compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    private boolean tooLow(E value) {
+        return fromElement != null && compare(value, fromElement) < 0;
+    }
+
+    private boolean tooHigh(E value) {
+        return toElement != null && compare(value, toElement) >= 0;
+    }
+
+    private boolean inRange(E value) {
+        return !tooLow(value) && !tooHigh(value);
+    }
+
+    @Override
+    public boolean add(E value) {
+        if (!inRange(value)) {
+            throw new IllegalArgumentException("value out of range");
+        }
+        return tree.add(value);
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        @SuppressWarnings("unchecked")
+        E value = (E) object;
+        return inRange(value) && tree.remove(value);
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        @SuppressWarnings("unchecked")
+        E value = (E) object;
+        return inRange(value) && tree.contains(value);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return tree.iterator(fromElement, toElement);
+    }
+
+    /**
+     * Если дерево хранит размеры поддеревьев — разность рангов границ за O(log n),
+     * иначе обход диапазона за O(log n + k)
+     */
+    @Override
+    public int size() {
+        if (tree instanceof OrderStatisticSet) {
+            @SuppressWarnings("unchecked")
+            OrderStatisticSet<E> statistics = (OrderStatisticSet<E>) tree;
+            int high = toElement == null ? tree.size() : statistics.rank(toElement);
+            int low = fromElement == null ? 0 : statistics.rank(fromElement);
+            return high - low;
+        }
+        int count = 0;
+        for (Iterator<E> it = iterator(); it.hasNext(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+        return tree.comparator();
+    }
+
+    @Override
+    public E first() {
+        Iterator<E> it = iterator();
+        if (!it.hasNext()) {
+            throw new NoSuchElementException("first");
+        }
+        return it.next();
+    }
+
+    @Override
+    public E last() {
+        E value = tree.lower(toElement);
+        if (value == null || tooLow(value)) {
+            throw new NoSuchElementException("last");
+        }
+        return value;
+    }
+
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        checkBound(fromElement);
+        checkBound(toElement);
+        return new TreeSubSet<>(tree, fromElement, toElement);
+    }
+
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        checkBound(toElement);
+        return new TreeSubSet<>(tree, fromElement, toElement);
+    }
+
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        checkBound(fromElement);
+        return new TreeSubSet<>(tree, fromElement, toElement);
+    }
+
+    /**
+     * Вложенный диапазон не может выходить за границы текущего
+     */
+    private void checkBound(E bound) {
+        if (tooLow(bound) || (toElement != null && compare(bound, toElement) > 0)) {
+            throw new IllegalArgumentException("bound out of range");
+        }
+    }
+}
@@ -1,12 +1,19 @@
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.SortedSet;
+import java.util.Spliterator;
 import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
@@ -15,8 +22,11 @@ import org.junit.runners.MethodSorters;
 import org.junit.runners.Parameterized;
 
 import ru.mail.polis.AVLTree;
+import ru.mail.polis.ArrayRedBlackTree;
 import ru.mail.polis.BalancedSortedSet;
+import ru.mail.polis.ConcurrentAVLTree;
 import ru.mail.polis.NotBalancedTreeException;
+import ru.mail.polis.OrderStatisticSet;
 import ru.mail.polis.RedBlackTree;
 
 /**
@@ -42,6 +52,8 @@ public class TestBalancedSortedSet extends AbstractSetTest {
     private static final Class<?>[] testClasses = (Class<?>[]) new Class<?>[]{
             AVLTree.class,
             RedBlackTree.class,
+            ArrayRedBlackTree.class,
+            ConcurrentAVLTree.class,
     };
 
     @SuppressWarnings("unchecked")
@@ -161,6 +173,276 @@ public class TestBalancedSortedSet extends AbstractSetTest {
         }
     }
 
+    @Test
+    public void test08_addAllSorted() {
+        for (int count = 0; count < 100; count++) {
+            createSortedSets();
+            for (int value = 0; value < count; value++) {
+                validSortedSet.add(RANDOM.nextInt(1000));
+            }
+            testSortedSet.addAll(validSortedSet);
+            checkBalanced(testSortedSet);
+            checkFirstAndLast(validSortedSet, testSortedSet);
+            for (int value = 0; value < 1000; value++) {
+                checkSizeAndContains(validSortedSet, testSortedSet, value);
+            }
+            check(validSortedSet, testSortedSet, RANDOM.nextInt(1000), TransformOperation.ADD);
+            check(validSortedSet, testSortedSet, RANDOM.nextInt(1000), TransformOperation.REMOVE);
+        }
+    }
+
+    @Test
+    public void test09_iterator() {
+        for (int i = 0; i < 1000; i++) {
+            int value = RANDOM.nextInt(1000);
+            validSortedSet.add(value);
+            testSortedSet.add(value);
+        }
+        Assert.assertEquals("iterator", new ArrayList<>(validSortedSet), new ArrayList<>(testSortedSet));
+        Iterator<Integer> validIterator = validSortedSet.iterator();
+        Iterator<Integer> testIterator = testSortedSet.iterator();
+        while (validIterator.hasNext()) {
+            Assert.assertTrue("hasNext", testIterator.hasNext());
+            Integer value = validIterator.next();
+            Assert.assertEquals("next", value, testIterator.next());
+            if (value % 3 == 0) {
+                validIterator.remove();
+                testIterator.remove();
+            }
+        }
+        Assert.assertFalse("hasNext", testIterator.hasNext());
+        checkBalanced(testSortedSet);
+        Assert.assertEquals("iterator.remove", new ArrayList<>(validSortedSet), new ArrayList<>(testSortedSet));
+    }
+
+    @Test
+    public void test10_ranges() {
+        for (int i = 0; i < 1000; i++) {
+            int value = RANDOM.nextInt(1000);
+            validSortedSet.add(value);
+            testSortedSet.add(value);
+        }
+        for (int i = 0; i < 100; i++) {
+            int from = RANDOM.nextInt(1000);
+            int to = RANDOM.nextInt(1000);
+            if (compare(from, to) > 0) {
+                int tmp = from;
+                from = to;
+                to = tmp;
+            }
+            checkRange(validSortedSet.subSet(from, to), testSortedSet.subSet(from, to));
+            checkRange(validSortedSet.headSet(to), testSortedSet.headSet(to));
+            checkRange(validSortedSet.tailSet(from), testSortedSet.tailSet(from));
+            checkRange(validSortedSet.tailSet(from).headSet(to), testSortedSet.tailSet(from).headSet(to));
+        }
+        int from = RANDOM.nextInt(1000);
+        SortedSet<Integer> validTail = validSortedSet.tailSet(from);
+        SortedSet<Integer> testTail = testSortedSet.tailSet(from);
+        for (int i = 0; i < 100; i++) {
+            int value = RANDOM.nextInt(1000);
+            validSortedSet.remove(value);
+            testSortedSet.remove(value);
+            checkRange(validTail, testTail);
+        }
+    }
+
+    @Test
+    public void test11_spliterator() {
+        for (int i = 0; i < 10000; i++) {
+            int value = RANDOM.nextInt(100000);
+            validSortedSet.add(value);
+            testSortedSet.add(value);
+        }
+        Assert.assertEquals("parallelStream",
+                validSortedSet.stream().map(v -> v * 2).collect(Collectors.toList()),
+                testSortedSet.parallelStream().map(v -> v * 2).collect(Collectors.toList()));
+        List<Integer> values = new ArrayList<>();
+        collectSplits(testSortedSet.spliterator(), values, 0);
+        Assert.assertEquals("trySplit", new ArrayList<>(validSortedSet), values);
+    }
+
+    @Test
+    public void test12_orderStatistics() {
+        Assume.assumeTrue(testSortedSet instanceof OrderStatisticSet);
+        OrderStatisticSet<Integer> statistics = (OrderStatisticSet<Integer>) testSortedSet;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 200; i++) {
+                int value = RANDOM.nextInt(1000);
+                TransformOperation operation = RANDOM.nextInt(3) == 0 ? TransformOperation.REMOVE : TransformOperation.ADD;
+                checkTransformOperation(validSortedSet, testSortedSet, value, operation);
+            }
+            //удаление через итератор идёт другим путём
+            Iterator<Integer> iterator = testSortedSet.iterator();
+            while (iterator.hasNext()) {
+                Integer value = iterator.next();
+                if (RANDOM.nextInt(20) == 0) {
+                    iterator.remove();
+                    validSortedSet.remove(value);
+                }
+            }
+            checkBalanced(testSortedSet);
+            List<Integer> values = new ArrayList<>(validSortedSet);
+            for (int index = 0; index < values.size(); index++) {
+                Assert.assertEquals("select", values.get(index), statistics.select(index));
+                Assert.assertEquals("rank", index, statistics.rank(values.get(index)));
+            }
+            for (int i = 0; i < 100; i++) {
+                int from = RANDOM.nextInt(1000);
+                int to = RANDOM.nextInt(1000);
+                if (compare(from, to) > 0) {
+                    int tmp = from;
+                    from = to;
+                    to = tmp;
+                }
+                Assert.assertEquals("rank", validSortedSet.headSet(from).size(), statistics.rank(from));
+                Assert.assertEquals("countInRange", validSortedSet.subSet(from, to).size(), statistics.countInRange(from, to));
+            }
+        }
+        try {
+            statistics.select(testSortedSet.size());
+            Assert.fail("IndexOutOfBoundsException - select");
+        } catch (IndexOutOfBoundsException e) {
+            /* empty */
+        }
+    }
+
+    /**
+     * addAll / retainAll / removeAll с деревом того же типа: у AVLTree и RedBlackTree
+     * это split / join, в том числе параллельный на больших деревьях
+     */
+    @Test
+    public void test13_setOperations() throws NotBalancedTreeException {
+        int[][] sizes = {{0, 100}, {100, 0}, {1000, 10}, {10, 1000}, {3000, 3000}, {20000, 300}, {30000, 30000}};
+        for (int[] size : sizes) {
+            for (int operation = 0; operation < 3; operation++) {
+                List<Integer> first = randomValues(size[0], size[0] * 2);
+                List<Integer> second = randomValues(size[1], size[0] + size[1]);
+                SortedSet<Integer> validFirst = create(TreeSet.class);
+                validFirst.addAll(first);
+                testSortedSet = createTestSortedSet(testClass);
+                for (Integer value : first) {
+                    testSortedSet.add(value);
+                }
+                BalancedSortedSet<Integer> other = createTestSortedSet(testClass);
+                for (Integer value : second) {
+                    other.add(value);
+                }
+                List<Integer> otherValues = new ArrayList<>(other);
+                boolean expected;
+                boolean actual;
+                if (operation == 0) {
+                    expected = validFirst.addAll(other);
+                    actual = testSortedSet.addAll(other);
+                } else if (operation == 1) {
+                    expected = validFirst.retainAll(other);
+                    actual = testSortedSet.retainAll(other);
+                } else {
+                    expected = validFirst.removeAll(other);
+                    actual = testSortedSet.removeAll(other);
+                }
+                String message = "operation " + operation + ", sizes " + size[0] + " " + size[1];
+                Assert.assertEquals(message, expected, actual);
+                Assert.assertEquals(message, new ArrayList<>(validFirst), new ArrayList<>(testSortedSet));
+                Assert.assertEquals(message, validFirst.size(), testSortedSet.size());
+                checkBalanced(testSortedSet);
+                Assert.assertEquals("other is unchanged", otherValues, new ArrayList<>(other));
+                other.checkBalanced();
+                //узлы other не должны попасть в testSortedSet
+                other.clear();
+                Assert.assertEquals(message, new ArrayList<>(validFirst), new ArrayList<>(testSortedSet));
+                for (int i = 0; i < 100; i++) {
+                    TransformOperation transformOperation = RANDOM.nextBoolean() ? TransformOperation.ADD : TransformOperation.REMOVE;
+                    check(validFirst, testSortedSet, RANDOM.nextInt(size[0] * 2 + 1), transformOperation);
+                }
+            }
+        }
+    }
+
+    /**
+     * Операция над деревьями перестраивает дерево, даже если набор элементов не изменился,
+     * поэтому открытые итераторы должны падать. Операция с самим собой тоже должна работать
+     */
+    @Test
+    public void test14_setOperationsModCount() {
+        Assume.assumeTrue(testClass == AVLTree.class || testClass == RedBlackTree.class);
+        for (int operation = 0; operation < 3; operation++) {
+            testSortedSet = createTestSortedSet(testClass);
+            BalancedSortedSet<Integer> other = createTestSortedSet(testClass);
+            for (int i = 0; i < 100; i++) {
+                testSortedSet.add(i);
+                other.add(operation == 2 ? i + 1000 : i);
+            }
+            SortedSet<Integer> validSortedSet = create(TreeSet.class);
+            validSortedSet.addAll(testSortedSet);
+            Iterator<Integer> iterator = testSortedSet.iterator();
+            iterator.next();
+            boolean expected;
+            boolean actual;
+            if (operation == 0) {
+                expected = validSortedSet.addAll(other);
+                actual = testSortedSet.addAll(other);
+            } else if (operation == 1) {
+                expected = validSortedSet.retainAll(other);
+                actual = testSortedSet.retainAll(other);
+            } else {
+                expected = validSortedSet.removeAll(other);
+                actual = testSortedSet.removeAll(other);
+            }
+            Assert.assertEquals("operation " + operation, expected, actual);
+            Assert.assertEquals("operation " + operation, new ArrayList<>(validSortedSet), new ArrayList<>(testSortedSet));
+            try {
+                iterator.next();
+                Assert.fail("ConcurrentModificationException - operation " + operation);
+            } catch (ConcurrentModificationException e) {
+                /* empty */
+            }
+        }
+        testSortedSet = createTestSortedSet(testClass);
+        for (int i = 0; i < 100; i++) {
+            testSortedSet.add(i);
+        }
+        int size = testSortedSet.size();
+        Assert.assertFalse(testSortedSet.addAll(testSortedSet));
+        Assert.assertFalse(testSortedSet.retainAll(testSortedSet));
+        Assert.assertEquals(size, testSortedSet.size());
+        Assert.assertTrue(testSortedSet.removeAll(testSortedSet));
+        Assert.assertTrue(testSortedSet.isEmpty());
+    }
+
+    private List<Integer> randomValues(int count, int bound) {
+        List<Integer> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(RANDOM.nextInt(bound + 1));
+        }
+        return values;
+    }
+
+    /**
+     * Делит spliterator до глубины 8 и собирает элементы в порядке: сначала префикс, затем остаток
+     */
+    private void collectSplits(Spliterator<Integer> spliterator, List<Integer> values, int depth) {
+        Assert.assertTrue("characteristics", spliterator.hasCharacteristics(Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.ORDERED));
+        Spliterator<Integer> prefix = depth < 8 ? spliterator.trySplit() : null;
+        if (prefix != null) {
+            collectSplits(prefix, values, depth + 1);
+            collectSplits(spliterator, values, depth + 1);
+        } else {
+            spliterator.forEachRemaining(values::add);
+        }
+    }
+
+    private int compare(Integer v1, Integer v2) {
+        return comparator == null ? v1.compareTo(v2) : comparator.compare(v1, v2);
+    }
+
+    private void checkRange(SortedSet<Integer> validRange, SortedSet<Integer> testRange) {
+        Assert.assertEquals("range", new ArrayList<>(validRange), new ArrayList<>(testRange));
+        Assert.assertEquals("range size", validRange.size(), testRange.size());
+        checkFirstAndLast(validRange, testRange);
+        int value = RANDOM.nextInt(1000);
+        Assert.assertEquals("range contains", validRange.contains(value), testRange.contains(value));
+    }
+
     private <E> void check(SortedSet<E> validSortedSet, BalancedSortedSet<E> testSortedSet, E value, TransformOperation transformOperation) {
         checkFirstAndLast(validSortedSet, testSortedSet);
         checkTransformOperation(validSortedSet, testSortedSet, value, transformOperation);
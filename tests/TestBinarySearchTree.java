@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import ru.mail.polis.BinarySearchTree;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestBinarySearchTree extends AbstractSetTest {
+
+    @Test
+    public void test01_empty() {
+        BinarySearchTree<Integer> tree = new BinarySearchTree<>();
+        Assert.assertEquals("size", 0, tree.size());
+        Assert.assertFalse(tree.contains(0));
+        Assert.assertFalse(tree.remove(0));
+        Assert.assertFalse(tree.iterator().hasNext());
+        try {
+            tree.iterator().next();
+            Assert.fail("NoSuchElementException - next");
+        } catch (NoSuchElementException e) {
+            /* empty */
+        }
+        try {
+            tree.iterator().remove();
+            Assert.fail("IllegalStateException - remove");
+        } catch (IllegalStateException e) {
+            /* empty */
+        }
+    }
+
+    @Test
+    public void test02_random() {
+        SortedSet<Integer> validSet = new TreeSet<>();
+        BinarySearchTree<Integer> testSet = new BinarySearchTree<>();
+        for (int i = 0; i < 10000; i++) {
+            int value = RANDOM.nextInt(2000) - 1000;
+            checkTransformOperation(validSet, testSet, value, TransformOperation.ADD);
+            checkSizeAndContains(validSet, testSet, value);
+            value = RANDOM.nextInt(2000) - 1000;
+            checkTransformOperation(validSet, testSet, value, TransformOperation.REMOVE);
+            checkSizeAndContains(validSet, testSet, value);
+        }
+        Assert.assertEquals("iterator", new ArrayList<>(validSet), new ArrayList<>(testSet));
+    }
+
+    /**
+     * Удаление через итератор каждого второго элемента: среди удаляемых много узлов с двумя детьми,
+     * в которые переносится значение преемника
+     */
+    @Test
+    public void test03_iteratorRemove() {
+        SortedSet<Integer> validSet = new TreeSet<>();
+        BinarySearchTree<Integer> testSet = new BinarySearchTree<>();
+        //вставка середины раньше краёв даёт полное дерево, где у внутренних узлов по два ребёнка
+        addBalanced(validSet, testSet, 0, 1023);
+        checkIteratorRemove(testSet.iterator(), validSet.iterator());
+        Assert.assertEquals("iterator remove", new ArrayList<>(validSet), new ArrayList<>(testSet));
+        Assert.assertEquals("size", validSet.size(), testSet.size());
+
+        Iterator<Integer> it = testSet.iterator();
+        while (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+        Assert.assertTrue("remove all", testSet.isEmpty());
+    }
+
+    @Test
+    public void test04_iteratorFailFast() {
+        BinarySearchTree<Integer> testSet = new BinarySearchTree<>();
+        for (int value = 0; value < 100; value++) {
+            testSet.add(RANDOM.nextInt(1000));
+        }
+        Iterator<Integer> it = testSet.iterator();
+        it.next();
+        testSet.add(-1);
+        try {
+            it.next();
+            Assert.fail("ConcurrentModificationException - next");
+        } catch (ConcurrentModificationException e) {
+            /* empty */
+        }
+        try {
+            it.remove();
+            Assert.fail("ConcurrentModificationException - remove");
+        } catch (ConcurrentModificationException e) {
+            /* empty */
+        }
+        it = testSet.iterator();
+        it.next();
+        it.remove();
+        try {
+            it.remove();
+            Assert.fail("IllegalStateException - remove twice");
+        } catch (IllegalStateException e) {
+            /* empty */
+        }
+    }
+
+    @Test
+    public void test05_views() {
+        for (Comparator<Integer> comparator : Arrays.<Comparator<Integer>>asList(null, Comparator.reverseOrder())) {
+            SortedSet<Integer> validSet = new TreeSet<>(comparator);
+            BinarySearchTree<Integer> testSet = new BinarySearchTree<>(comparator);
+            for (int i = 0; i < 2000; i++) {
+                int value = RANDOM.nextInt(4000) - 2000;
+                validSet.add(value);
+                testSet.add(value);
+            }
+            int from = comparator == null ? -500 : 500;
+            int to = -from;
+            checkRange(validSet.subSet(from, to), testSet.subSet(from, to));
+            checkRange(validSet.headSet(to), testSet.headSet(to));
+            checkRange(validSet.tailSet(from), testSet.tailSet(from));
+
+            checkIteratorRemove(testSet.subSet(from, to).iterator(), validSet.subSet(from, to).iterator());
+            Assert.assertEquals("subSet iterator remove", new ArrayList<>(validSet), new ArrayList<>(testSet));
+            checkRange(validSet.subSet(from, to), testSet.subSet(from, to));
+
+            testSet.headSet(from).clear();
+            validSet.headSet(from).clear();
+            Assert.assertEquals("headSet clear", new ArrayList<>(validSet), new ArrayList<>(testSet));
+            testSet.tailSet(to).clear();
+            validSet.tailSet(to).clear();
+            Assert.assertEquals("tailSet clear", new ArrayList<>(validSet), new ArrayList<>(testSet));
+            Assert.assertEquals("size", validSet.size(), testSet.size());
+        }
+    }
+
+    private void addBalanced(SortedSet<Integer> validSet, BinarySearchTree<Integer> testSet, int from, int to) {
+        if (from > to) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        validSet.add(middle);
+        testSet.add(middle);
+        addBalanced(validSet, testSet, from, middle - 1);
+        addBalanced(validSet, testSet, middle + 1, to);
+    }
+
+    private void checkIteratorRemove(Iterator<Integer> testIt, Iterator<Integer> validIt) {
+        boolean drop = false;
+        while (validIt.hasNext()) {
+            Assert.assertTrue("hasNext", testIt.hasNext());
+            Assert.assertEquals("next", validIt.next(), testIt.next());
+            if (drop) {
+                validIt.remove();
+                testIt.remove();
+            }
+            drop = !drop;
+        }
+        Assert.assertFalse("hasNext", testIt.hasNext());
+    }
+
+    private void checkRange(SortedSet<Integer> validRange, SortedSet<Integer> testRange) {
+        Assert.assertEquals("range", new ArrayList<>(validRange), new ArrayList<>(testRange));
+        Assert.assertEquals("range size", validRange.size(), testRange.size());
+        Assert.assertEquals("first", validRange.first(), testRange.first());
+        Assert.assertEquals("last", validRange.last(), testRange.last());
+        int value = RANDOM.nextInt(4000) - 2000;
+        Assert.assertEquals("range contains", validRange.contains(value), testRange.contains(value));
+    }
+}
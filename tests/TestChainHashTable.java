@@ -0,0 +1,159 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.MethodSorters;
+import org.junit.runners.Parameterized;
+
+import ru.mail.polis.ChainHashTable;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@RunWith(value = Parameterized.class)
+public class TestChainHashTable extends AbstractSetTest {
+
+    @Parameterized.Parameter()
+    public boolean incrementalResize;
+
+    @Parameterized.Parameters(name = "incrementalResize = {0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{{false}, {true}});
+    }
+
+    private Set<Integer> validSet;
+    private Set<Integer> testSet;
+
+    @Before
+    public void createSets() {
+        validSet = new HashSet<>();
+        testSet = new ChainHashTable<>(incrementalResize);
+    }
+
+    @Test
+    public void test01_addRemove() {
+        for (int value = 0; value < 10000; value++) {
+            check(value, TransformOperation.ADD);
+        }
+        for (int value = 0; value < 10000; value += 2) {
+            check(value, TransformOperation.REMOVE);
+        }
+        for (int value = -5000; value < 15000; value++) {
+            checkSizeAndContains(validSet, testSet, value);
+        }
+    }
+
+    /**
+     * Вперемешку add / remove, в том числе посреди переноса корзин и с отрицательными хешами
+     */
+    @Test
+    public void test02_random() {
+        for (int i = 0; i < 200000; i++) {
+            int value = RANDOM.nextInt(20000) - 10000;
+            check(value, RANDOM.nextInt(3) == 0 ? TransformOperation.REMOVE : TransformOperation.ADD);
+            if (i % 10000 == 0) {
+                //в инкрементальном режиме итератор обходит и ещё не перенесённые корзины старой таблицы
+                Assert.assertEquals(validSet, new HashSet<>(testSet));
+            }
+        }
+        check(Integer.MIN_VALUE, TransformOperation.ADD);
+        check(Integer.MIN_VALUE, TransformOperation.REMOVE);
+    }
+
+    /**
+     * Удаление через итератор, в том числе посреди переноса корзин, и fail-fast после чужого изменения
+     */
+    @Test
+    public void test03_iteratorRemove() {
+        //1024-я вставка расширяет таблицу до 4096: в инкрементальном режиме перенос только начат
+        for (int value = 0; value < 1025; value++) {
+            check(value, TransformOperation.ADD);
+        }
+        Iterator<Integer> it = testSet.iterator();
+        while (it.hasNext()) {
+            int value = it.next();
+            if (value % 3 != 0) {
+                it.remove();
+                validSet.remove(value);
+            }
+        }
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+        Assert.assertEquals(validSet.size(), testSet.size());
+
+        it = testSet.iterator();
+        it.next();
+        testSet.add(-1);
+        try {
+            it.next();
+            Assert.fail("ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            /* empty */
+        }
+        testSet.retainAll(Collections.singleton(-1));
+        Assert.assertEquals(Collections.singleton(-1), new HashSet<>(testSet));
+        testSet.clear();
+        Assert.assertTrue(testSet.isEmpty());
+    }
+
+    /**
+     * Перенос идёт по MIGRATION_STEP = 4 корзины за add / remove и заканчивается за
+     * oldTable.length / 4 операций, раньше следующего расширения. Без инкрементального
+     * режима старая таблица переносится сразу
+     */
+    @Test
+    public void test04_migrationIsSpreadOut() {
+        ChainHashTable<Integer> table = (ChainHashTable<Integer>) testSet;
+        int value = 0;
+        for (int round = 0; round < 10; round++) {
+            int tableSize = table.getTableSize();
+            while (table.getTableSize() == tableSize) {
+                check(value++, TransformOperation.ADD);
+            }
+            int pending = table.getPendingBuckets();
+            if (!incrementalResize) {
+                Assert.assertEquals(0, pending);
+                continue;
+            }
+            Assert.assertEquals("whole old table pending", tableSize, pending);
+            int operations = 0;
+            while (pending > 0) {
+                //и удачные, и неудачные операции двигают перенос
+                switch (operations % 4) {
+                    case 0:
+                        check(value++, TransformOperation.ADD);
+                        break;
+                    case 1:
+                        check(value - 1, TransformOperation.ADD);
+                        break;
+                    case 2:
+                        check(-1, TransformOperation.REMOVE);
+                        break;
+                    default:
+                        check(value++, TransformOperation.ADD);
+                        break;
+                }
+                operations++;
+                Assert.assertEquals("step", Math.max(0, pending - 4), table.getPendingBuckets());
+                pending = table.getPendingBuckets();
+            }
+            Assert.assertEquals("drained in oldTable.length / 4 operations", tableSize / 4, operations);
+            Assert.assertEquals("no resize before drained", tableSize * 2, table.getTableSize());
+        }
+        for (int v = 0; v < value; v++) {
+            checkSizeAndContains(validSet, testSet, v);
+        }
+    }
+
+    private void check(Integer value, TransformOperation transformOperation) {
+        checkSizeAndContains(validSet, testSet, value);
+        checkTransformOperation(validSet, testSet, value, transformOperation);
+        checkSizeAndContains(validSet, testSet, value);
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import ru.mail.polis.CheckedOpenHashTableEntity;
+import ru.mail.polis.ConcurrentChainHashTable;
+import ru.mail.polis.ConcurrentOpenHashTable;
+import ru.mail.polis.SimpleStudentGenerator;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestConcurrentHashTable extends AbstractSetTest {
+
+    private static final int THREADS = 4;
+    private static final int VALUES_PER_THREAD = 50000;
+
+    @Test
+    public void test01_singleThread() {
+        singleThread(new ConcurrentChainHashTable<>());
+    }
+
+    private void singleThread(Set<CheckedOpenHashTableEntity> testSet) {
+        Set<CheckedOpenHashTableEntity> validSet = new HashSet<>();
+        List<CheckedOpenHashTableEntity> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            CheckedOpenHashTableEntity entity = SimpleStudentGenerator.getInstance().generate();
+            values.add(entity);
+            check(validSet, testSet, entity, TransformOperation.ADD);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            check(validSet, testSet, values.get(i), TransformOperation.REMOVE);
+        }
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+    }
+
+    private <E> void check(Set<E> validSet, Set<E> testSet, E value, TransformOperation transformOperation) {
+        checkSizeAndContains(validSet, testSet, value);
+        checkTransformOperation(validSet, testSet, value, transformOperation);
+        checkSizeAndContains(validSet, testSet, value);
+        checkTransformOperation(validSet, testSet, value, transformOperation);
+        checkSizeAndContains(validSet, testSet, value);
+    }
+
+    /**
+     * Писатели добавляют и удаляют непересекающиеся диапазоны, проходя через несколько
+     * расширений таблицы, читатели параллельно ищут элементы. Элементы, которые писатель
+     * уже добавил и не собирается удалять, читатели обязаны находить.
+     */
+    @Test
+    public void test02_stress() throws Exception {
+        stress(new ConcurrentChainHashTable<>(), value -> value);
+    }
+
+    @Test
+    public void test03_openSingleThread() {
+        singleThread(new ConcurrentOpenHashTable<>());
+    }
+
+    /**
+     * То же для открытой адресации; элементы — заранее сгенерированные студенты
+     */
+    @Test
+    public void test04_openStress() throws Exception {
+        CheckedOpenHashTableEntity[] students = new CheckedOpenHashTableEntity[THREADS * VALUES_PER_THREAD];
+        for (int i = 0; i < students.length; i++) {
+            students[i] = SimpleStudentGenerator.getInstance().generate();
+        }
+        ConcurrentOpenHashTable<CheckedOpenHashTableEntity> testSet = new ConcurrentOpenHashTable<>();
+        stress(testSet, value -> students[value]);
+        int tableSize = testSet.getTableSize();
+        Assert.assertEquals("power of two", 0, tableSize & (tableSize - 1));
+    }
+
+    /**
+     * @param valueOf различные элементы для номеров 0 .. THREADS * VALUES_PER_THREAD - 1
+     */
+    private <E> void stress(Set<E> testSet, IntFunction<E> valueOf) throws Exception {
+        Set<E> validSet = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS * 2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        List<Future<?>> readers = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int base = t * VALUES_PER_THREAD;
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    for (int value = base; value < base + VALUES_PER_THREAD; value++) {
+                        E element = valueOf.apply(value);
+                        Assert.assertTrue("add", testSet.add(element));
+                        Assert.assertFalse("add twice", testSet.add(element));
+                        validSet.add(element);
+                    }
+                    for (int value = base; value < base + VALUES_PER_THREAD; value += 3) {
+                        E element = valueOf.apply(value);
+                        Assert.assertTrue("remove", testSet.remove(element));
+                        Assert.assertFalse("remove twice", testSet.remove(element));
+                        validSet.remove(element);
+                    }
+                    return null;
+                }));
+                readers.add(executor.submit(() -> {
+                    start.await();
+                    int i = 0;
+                    while (writing.get()) {
+                        int value = i++ % (THREADS * VALUES_PER_THREAD);
+                        //remove в validSet идёт после remove в testSet, поэтому наличие в validSet
+                        //при отсутствии в testSet возможно, только если элемент удаляется прямо сейчас
+                        E element = valueOf.apply(value);
+                        if (value % VALUES_PER_THREAD % 3 != 0 && validSet.contains(element)) {
+                            Assert.assertTrue("contains " + element, testSet.contains(element));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(1, TimeUnit.MINUTES);
+            }
+            writing.set(false);
+            for (Future<?> reader : readers) {
+                reader.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals("size", validSet.size(), testSet.size());
+        for (int value = 0; value < THREADS * VALUES_PER_THREAD; value++) {
+            E element = valueOf.apply(value);
+            Assert.assertEquals("contains", validSet.contains(element), testSet.contains(element));
+        }
+        Assert.assertEquals("iterator", validSet, new HashSet<>(testSet));
+    }
+}
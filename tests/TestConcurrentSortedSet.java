@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import ru.mail.polis.AVLTree;
+import ru.mail.polis.BalancedSortedSet;
+import ru.mail.polis.ConcurrentAVLTree;
+import ru.mail.polis.ConcurrentBalancedSortedSet;
+import ru.mail.polis.RedBlackTree;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestConcurrentSortedSet {
+
+    private static final int THREADS = 4;
+    private static final int VALUES_PER_THREAD = 20000;
+    private static final int KEY_RANGE = 1 << 16;
+    private static final int MIXED_OPS_PER_THREAD = 200000;
+
+    @Test
+    public void test01_stampedAVLTree() throws Exception {
+        stress(new ConcurrentBalancedSortedSet<>(new AVLTree<Integer>()));
+    }
+
+    @Test
+    public void test02_stampedRedBlackTree() throws Exception {
+        stress(new ConcurrentBalancedSortedSet<>(new RedBlackTree<Integer>()));
+    }
+
+    @Test
+    public void test03_concurrentAVLTree() throws Exception {
+        //балансировка ослабленная: дерево сбалансировано только в момент покоя
+        stress(new ConcurrentAVLTree<Integer>(), false);
+    }
+
+    /**
+     * Смешанная нагрузка (10% add, 10% remove, 80% contains) на общем диапазоне ключей.
+     * Каждый поток работает со своими ключами (остаток от деления на THREADS) и ведёт
+     * собственный эталон, поэтому результат каждой операции известен заранее, а после
+     * остановки дерево должно быть сбалансировано и совпадать с объединением эталонов.
+     */
+    @Test
+    public void test04_concurrentAVLTreeMixed() throws Exception {
+        ConcurrentAVLTree<Integer> tree = new ConcurrentAVLTree<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Set<Integer>>> workers = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int residue = t;
+                SplittableRandom random = new SplittableRandom(t);
+                workers.add(executor.submit(() -> {
+                    Set<Integer> own = new HashSet<>();
+                    start.await();
+                    for (int i = 0; i < MIXED_OPS_PER_THREAD; i++) {
+                        int value = random.nextInt(KEY_RANGE / THREADS) * THREADS + residue;
+                        int op = random.nextInt(10);
+                        if (op == 0) {
+                            Assert.assertEquals("add", own.add(value), tree.add(value));
+                        } else if (op == 1) {
+                            Assert.assertEquals("remove", own.remove(value), tree.remove(value));
+                        } else {
+                            Assert.assertEquals("contains", own.contains(value), tree.contains(value));
+                        }
+                    }
+                    return own;
+                }));
+            }
+            start.countDown();
+            Set<Integer> validSet = new TreeSet<>();
+            for (Future<Set<Integer>> worker : workers) {
+                validSet.addAll(worker.get(1, TimeUnit.MINUTES));
+            }
+            tree.checkBalanced();
+            Assert.assertEquals("size", validSet.size(), tree.size());
+            for (int value = 0; value < KEY_RANGE; value++) {
+                Assert.assertEquals("contains", validSet.contains(value), tree.contains(value));
+            }
+            Assert.assertEquals("iterator", new ArrayList<>(validSet), new ArrayList<>(tree));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Возвращённый в множество маршрутный узел хранит новый элемент, а не удалённый
+     */
+    @Test
+    public void test05_concurrentAVLTreeReAddStoresNewElement() {
+        ConcurrentAVLTree<Integer> tree = new ConcurrentAVLTree<>((a, b) -> Integer.compare(a / 3, b / 3));
+        for (int value : new int[]{30, -20, 60, -60, 0}) {
+            Assert.assertTrue(tree.add(value));
+        }
+        //у -20 два потомка: после удаления узел остаётся маршрутным
+        Assert.assertTrue(tree.remove(-20));
+        Assert.assertTrue(tree.add(-19));
+        Assert.assertEquals(Arrays.asList(-60, -19, 0, 30, 60), new ArrayList<>(tree));
+        Assert.assertEquals(Integer.valueOf(-60), tree.first());
+        Assert.assertEquals(Integer.valueOf(-19), tree.lower(0));
+    }
+
+    /**
+     * Писатели добавляют и удаляют непересекающиеся диапазоны, читатели параллельно
+     * ищут элементы и проверяют сбалансированность. В конце содержимое сравнивается
+     * с ConcurrentSkipListSet, который получил те же операции.
+     */
+    protected void stress(BalancedSortedSet<Integer> testSet) throws Exception {
+        stress(testSet, true);
+    }
+
+    /**
+     * @param checkWhileWriting проверять ли сбалансированность, пока идёт запись
+     */
+    protected void stress(BalancedSortedSet<Integer> testSet, boolean checkWhileWriting) throws Exception {
+        Set<Integer> validSet = new ConcurrentSkipListSet<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS * 2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        List<Future<?>> readers = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int base = t * VALUES_PER_THREAD;
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    for (int value = base; value < base + VALUES_PER_THREAD; value++) {
+                        Assert.assertTrue("add", testSet.add(value));
+                        validSet.add(value);
+                    }
+                    for (int value = base; value < base + VALUES_PER_THREAD; value += 3) {
+                        Assert.assertTrue("remove", testSet.remove(value));
+                        validSet.remove(value);
+                    }
+                    return null;
+                }));
+                readers.add(executor.submit(() -> {
+                    start.await();
+                    int i = 0;
+                    while (writing.get()) {
+                        int value = i++ % (THREADS * VALUES_PER_THREAD);
+                        //validSet пополняется после testSet, а ключи, у которых value - base не делится на 3,
+                        //никогда не удаляются: попавший в validSet такой ключ обязан находиться и в testSet
+                        if (value % VALUES_PER_THREAD % 3 != 0 && validSet.contains(value)) {
+                            Assert.assertTrue("contains " + value, testSet.contains(value));
+                        }
+                        if (checkWhileWriting && i % 10000 == 0) {
+                            testSet.checkBalanced();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(1, TimeUnit.MINUTES);
+            }
+            writing.set(false);
+            for (Future<?> reader : readers) {
+                reader.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        testSet.checkBalanced();
+        Assert.assertEquals("size", validSet.size(), testSet.size());
+        for (int value = 0; value < THREADS * VALUES_PER_THREAD; value++) {
+            Assert.assertEquals("contains", validSet.contains(value), testSet.contains(value));
+        }
+        Assert.assertEquals("iterator", new ArrayList<>(validSet), new ArrayList<>(testSet));
+    }
+}
@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.MethodSorters;
+import org.junit.runners.Parameterized;
+
+import ru.mail.polis.AVLTree;
+import ru.mail.polis.ChainHashTable;
+import ru.mail.polis.DurableSet;
+import ru.mail.polis.DurableSet.SyncPolicy;
+import ru.mail.polis.ElementCodec;
+import ru.mail.polis.RedBlackTree;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@RunWith(value = Parameterized.class)
+public class TestDurableSet extends AbstractSetTest {
+
+    @Parameterized.Parameter()
+    public String name;
+
+    @Parameterized.Parameter(1)
+    public Supplier<Set<Integer>> factory;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {"AVLTree", (Supplier<Set<Integer>>) AVLTree::new},
+                {"RedBlackTree", (Supplier<Set<Integer>>) RedBlackTree::new},
+                {"ChainHashTable", (Supplier<Set<Integer>>) ChainHashTable::new},
+        });
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private Set<Integer> validSet;
+
+    @Before
+    public void createSets() {
+        directory = folder.getRoot().toPath().resolve("set");
+        validSet = new HashSet<>();
+    }
+
+    private DurableSet<Integer> open(SyncPolicy policy, long snapshotThreshold) throws IOException {
+        return open(directory, policy, snapshotThreshold);
+    }
+
+    private DurableSet<Integer> open(Path directory, SyncPolicy policy, long snapshotThreshold) throws IOException {
+        return new DurableSet<>(directory, factory.get(), ElementCodec.integers(), policy, snapshotThreshold);
+    }
+
+    /**
+     * Падение процесса: копия каталога, пока множество открыто. Второй экземпляр на том же
+     * каталоге открывать нельзя — он начал бы писать в те же файлы
+     */
+    private Path crashCopy() throws IOException {
+        Path crashed = folder.getRoot().toPath().resolve("crashed");
+        Files.createDirectory(crashed);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, crashed.resolve(file.getFileName()));
+            }
+        }
+        return crashed;
+    }
+
+    private void randomOperations(Set<Integer> testSet, int count) {
+        for (int i = 0; i < count; i++) {
+            int value = RANDOM.nextInt(2000);
+            TransformOperation operation = RANDOM.nextInt(3) == 0 ? TransformOperation.REMOVE : TransformOperation.ADD;
+            checkSizeAndContains(validSet, testSet, value);
+            checkTransformOperation(validSet, testSet, value, operation);
+        }
+    }
+
+    @Test
+    public void test01_reopen() throws IOException {
+        DurableSet<Integer> testSet = open(SyncPolicy.perBatch(100), Long.MAX_VALUE);
+        randomOperations(testSet, 5000);
+        testSet.close();
+
+        testSet = open(SyncPolicy.perBatch(100), Long.MAX_VALUE);
+        Assert.assertEquals(validSet, testSet);
+        randomOperations(testSet, 5000);
+        testSet.close();
+
+        testSet = open(SyncPolicy.perBatch(100), Long.MAX_VALUE);
+        Assert.assertEquals(validSet, testSet);
+        testSet.close();
+    }
+
+    /**
+     * Маленький порог: снимков много, от старых поколений ничего не остаётся,
+     * а после sync() без close() всё восстанавливается из снимка и хвоста журнала
+     */
+    @Test
+    public void test02_snapshots() throws IOException {
+        DurableSet<Integer> testSet = open(SyncPolicy.perBatch(1000), 4096);
+        randomOperations(testSet, 20000);
+        testSet.sync();
+        try (Stream<Path> files = Files.list(directory)) {
+            Assert.assertEquals(2, files.count());
+        }
+        Path crashed = crashCopy();
+        testSet.close();
+
+        DurableSet<Integer> recovered = open(crashed, SyncPolicy.perBatch(1000), 4096);
+        Assert.assertEquals(validSet, recovered);
+        recovered.close();
+    }
+
+    /**
+     * Оборванная последняя запись журнала отбрасывается, и журнал продолжается с неё
+     */
+    @Test
+    public void test03_tornTail() throws IOException {
+        DurableSet<Integer> testSet = open(SyncPolicy.perOperation(), Long.MAX_VALUE);
+        randomOperations(testSet, 1000);
+        testSet.close();
+        Path log;
+        try (Stream<Path> files = Files.list(directory)) {
+            log = files.filter(file -> file.getFileName().toString().startsWith("wal-")).findFirst().get();
+        }
+        //операция ADD, длина 4 и два байта элемента из четырёх
+        Files.write(log, new byte[]{1, 0, 0, 0, 4, 0, 1}, StandardOpenOption.APPEND);
+
+        testSet = open(SyncPolicy.perOperation(), Long.MAX_VALUE);
+        Assert.assertEquals(validSet, testSet);
+        randomOperations(testSet, 1000);
+        testSet.close();
+
+        testSet = open(SyncPolicy.perOperation(), Long.MAX_VALUE);
+        Assert.assertEquals(validSet, testSet);
+        testSet.close();
+    }
+
+    /**
+     * Потоки пишут одновременно с fsync на каждую операцию: всё, что вернулось из add, надёжно
+     */
+    @Test
+    public void test04_groupCommit() throws Exception {
+        DurableSet<Integer> testSet = open(SyncPolicy.perOperation(), Long.MAX_VALUE);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<>();
+        Path crashed;
+        try {
+            for (int t = 0; t < 4; t++) {
+                int base = t * 1000;
+                writers.add(executor.submit(() -> {
+                    for (int value = base; value < base + 300; value++) {
+                        Assert.assertTrue(testSet.add(value));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(1, TimeUnit.MINUTES);
+            }
+            //без sync(): каждая операция уже сброшена на диск
+            crashed = crashCopy();
+        } finally {
+            executor.shutdownNow();
+            testSet.close();
+        }
+        DurableSet<Integer> recovered = open(crashed, SyncPolicy.perOperation(), Long.MAX_VALUE);
+        Assert.assertEquals(1200, recovered.size());
+        for (int t = 0; t < 4; t++) {
+            for (int value = t * 1000; value < t * 1000 + 300; value++) {
+                Assert.assertTrue(recovered.contains(value));
+            }
+        }
+        recovered.close();
+    }
+
+    @Test
+    public void test05_interval() throws IOException {
+        DurableSet<Integer> testSet = open(SyncPolicy.interval(5), 4096);
+        randomOperations(testSet, 5000);
+        testSet.close();
+
+        testSet = open(SyncPolicy.interval(5), 4096);
+        Assert.assertEquals(validSet, testSet);
+        testSet.close();
+    }
+}
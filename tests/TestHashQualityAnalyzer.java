@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import ru.mail.polis.CheckedOpenHashTableEntity;
+import ru.mail.polis.HashQualityAnalyzer;
+import ru.mail.polis.SimpleStudentGenerator;
+import ru.mail.polis.Student;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestHashQualityAnalyzer {
+
+    /**
+     * Все элементы начинают с ячейки 0 и идут линейно — худший случай для открытой адресации
+     */
+    private static class LinearEntity extends CheckedOpenHashTableEntity {
+        @Override
+        public int hashCode(int tableSize, int probId) {
+            return probId % tableSize;
+        }
+    }
+
+    /**
+     * Пробы ходят только по чётным ячейкам
+     */
+    private static class EvenEntity extends CheckedOpenHashTableEntity {
+        @Override
+        public int hashCode(int tableSize, int probId) {
+            return (probId * 2) % tableSize;
+        }
+    }
+
+    @Test
+    public void test01_student() {
+        int tableSize = 1 << 16;
+        List<Student> students = new ArrayList<>(tableSize / 2);
+        for (int i = 0; i < tableSize / 2; i++) {
+            students.add(SimpleStudentGenerator.getInstance().generate());
+        }
+        HashQualityAnalyzer.Report report = HashQualityAnalyzer.analyze(students, tableSize, 0.5);
+        Assert.assertEquals(report.toString(), 0, report.getFailed());
+        Assert.assertEquals(tableSize / 2, report.getInserted());
+        //для равномерного хеширования при заполнении 1/2 ожидается 2 ln 2 ≈ 1.39
+        Assert.assertEquals(report.toString(), report.getExpectedAverageProbes(), report.getAverageProbes(), 0.2);
+        Assert.assertTrue(report.toString(), report.getChiSquare() < tableSize * 1.1);
+        Assert.assertTrue(report.toString(), report.getMaxCluster() < 100);
+    }
+
+    @Test
+    public void test02_linear() {
+        int tableSize = 1 << 10;
+        List<LinearEntity> entities = new ArrayList<>();
+        for (int i = 0; i < tableSize; i++) {
+            entities.add(new LinearEntity());
+        }
+        HashQualityAnalyzer.Report report = HashQualityAnalyzer.analyze(entities, tableSize, 0.5);
+        Assert.assertEquals(0, report.getFailed());
+        Assert.assertEquals(1, report.getUsedPrimarySlots());
+        Assert.assertEquals(tableSize / 2, report.getMaxPerPrimarySlot());
+        Assert.assertEquals(tableSize / 2, report.getMaxProbes());
+        Assert.assertEquals(1, report.getClusters());
+        Assert.assertEquals(tableSize / 2, report.getMaxCluster());
+        Assert.assertTrue(report.toString(), report.getAverageProbes() > 100 * report.getExpectedAverageProbes());
+    }
+
+    @Test
+    public void test03_invalid() {
+        int tableSize = 1 << 10;
+        Assert.assertTrue(new LinearEntity().isHashFunctionValid(tableSize));
+        Assert.assertFalse(new EvenEntity().isHashFunctionValid(tableSize));
+        List<EvenEntity> entities = new ArrayList<>();
+        for (int i = 0; i < tableSize; i++) {
+            entities.add(new EvenEntity());
+        }
+        //нечётные ячейки недостижимы: после заполнения чётных вставки не удаются
+        HashQualityAnalyzer.Report report = HashQualityAnalyzer.analyze(entities, tableSize, 0.75);
+        Assert.assertEquals(tableSize / 2, report.getInserted());
+        Assert.assertEquals(tableSize / 4, report.getFailed());
+    }
+
+    @Test(timeout = 5000)
+    public void test04_largeTable() {
+        Student student = SimpleStudentGenerator.getInstance().generate();
+        Assert.assertTrue(student.isHashFunctionValid(1 << 20));
+    }
+}
@@ -1,32 +1,61 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
+import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
+import org.junit.runners.Parameterized;
 
 import ru.mail.polis.CheckedOpenHashTableEntity;
+import ru.mail.polis.ConcurrentOpenHashTable;
+import ru.mail.polis.CuckooHashTable;
 import ru.mail.polis.OpenHashTable;
 import ru.mail.polis.SimpleStudentGenerator;
+import ru.mail.polis.SwissHashTable;
 
 /**
  * Created by Nechaev Mikhail
  * Since 12/12/2017.
  */
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@RunWith(value = Parameterized.class)
 public class TestHashTable extends AbstractSetTest {
 
+    @Parameterized.Parameter()
+    public String name;
+
+    @Parameterized.Parameter(1)
+    public Supplier<Set<CheckedOpenHashTableEntity>> factory;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {"OpenHashTable", (Supplier<Set<CheckedOpenHashTableEntity>>) OpenHashTable::new},
+                {"OpenHashTable + robinHood", (Supplier<Set<CheckedOpenHashTableEntity>>) () -> new OpenHashTable<>(true)},
+                {"SwissHashTable", (Supplier<Set<CheckedOpenHashTableEntity>>) SwissHashTable::new},
+                {"CuckooHashTable", (Supplier<Set<CheckedOpenHashTableEntity>>) CuckooHashTable::new},
+                {"ConcurrentOpenHashTable", (Supplier<Set<CheckedOpenHashTableEntity>>) ConcurrentOpenHashTable::new},
+        });
+    }
+
     private Set<CheckedOpenHashTableEntity> validSet;
     private Set<CheckedOpenHashTableEntity> testSet;
 
     @Before //Запускается перед запуском каждого теста
     public void createSortedSets() {
         validSet = new HashSet<>();
-        testSet = new OpenHashTable<>();
+        testSet = factory.get();
     }
 
     private CheckedOpenHashTableEntity generate() {
@@ -92,6 +121,110 @@ public class TestHashTable extends AbstractSetTest {
         }
     }
 
+    /**
+     * Много циклов вставки и удаления при почти постоянном размере:
+     * надгробия (или сдвиги назад) не должны ломать поиск
+     */
+    @Test
+    public void test05_churn() {
+        List<CheckedOpenHashTableEntity> values = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            CheckedOpenHashTableEntity entity = generate();
+            values.add(entity);
+            check(validSet, testSet, entity, TransformOperation.ADD);
+        }
+        for (int i = 0; i < 20000; i++) {
+            int idx = RANDOM.nextInt(values.size());
+            check(validSet, testSet, values.get(idx), TransformOperation.REMOVE);
+            CheckedOpenHashTableEntity entity = generate();
+            values.set(idx, entity);
+            check(validSet, testSet, entity, TransformOperation.ADD);
+        }
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+    }
+
+    @Test
+    public void test06_cuckooLoadFactor() {
+        Assume.assumeTrue(testSet instanceof CuckooHashTable);
+        CuckooHashTable<CheckedOpenHashTableEntity> cuckooHashTable = (CuckooHashTable<CheckedOpenHashTableEntity>) testSet;
+        for (int i = 0; i < 100000; i++) {
+            cuckooHashTable.add(generate());
+        }
+        Assert.assertEquals(100000, cuckooHashTable.size());
+        Assert.assertTrue("achievableLoadFactor = " + cuckooHashTable.getAchievableLoadFactor(), cuckooHashTable.getAchievableLoadFactor() > 0.8);
+    }
+
+    /**
+     * Удаление через итератор: каждый элемент выдаётся ровно один раз, даже если удаление
+     * сдвигает соседей (Robin Hood), а clear / retainAll / removeAll работают через него
+     */
+    @Test
+    public void test07_iteratorRemove() {
+        for (int size : new int[]{7, 100, 3000}) {
+            for (int i = 0; i < size; i++) {
+                check(validSet, testSet, generate(), TransformOperation.ADD);
+            }
+            Set<CheckedOpenHashTableEntity> before = new HashSet<>(validSet);
+            List<CheckedOpenHashTableEntity> seen = new ArrayList<>();
+            Iterator<CheckedOpenHashTableEntity> it = testSet.iterator();
+            while (it.hasNext()) {
+                CheckedOpenHashTableEntity value = it.next();
+                seen.add(value);
+                if (seen.size() % 3 != 0) {
+                    it.remove();
+                    validSet.remove(value);
+                }
+            }
+            Assert.assertEquals("each element once", before.size(), seen.size());
+            Assert.assertEquals("each element once", before, new HashSet<>(seen));
+            Assert.assertEquals(validSet.size(), testSet.size());
+            Assert.assertEquals(validSet, new HashSet<>(testSet));
+            for (CheckedOpenHashTableEntity value : before) {
+                checkSizeAndContains(validSet, testSet, value);
+            }
+        }
+        List<CheckedOpenHashTableEntity> half = new ArrayList<>(validSet).subList(0, validSet.size() / 2);
+        Assert.assertEquals(validSet.retainAll(half), testSet.retainAll(half));
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+        List<CheckedOpenHashTableEntity> quarter = half.subList(0, half.size() / 2);
+        Assert.assertEquals(validSet.removeAll(quarter), testSet.removeAll(quarter));
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+        testSet.clear();
+        Assert.assertTrue(testSet.isEmpty());
+        Assert.assertFalse(testSet.iterator().hasNext());
+        check(validSet = new HashSet<>(), testSet, generate(), TransformOperation.ADD);
+    }
+
+    /**
+     * Изменение таблицы в обход итератора замечается при следующем next()
+     */
+    @Test
+    public void test08_iteratorFailFast() {
+        //ConcurrentOpenHashTable по контракту слабо согласован и не бросает исключение
+        Assume.assumeFalse(testSet instanceof ConcurrentOpenHashTable);
+        for (int i = 0; i < 100; i++) {
+            testSet.add(generate());
+        }
+        Iterator<CheckedOpenHashTableEntity> it = testSet.iterator();
+        it.next();
+        testSet.add(generate());
+        try {
+            it.next();
+            Assert.fail("ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            /* empty */
+        }
+        it = testSet.iterator();
+        CheckedOpenHashTableEntity value = it.next();
+        testSet.remove(value);
+        try {
+            it.remove();
+            Assert.fail("ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            /* empty */
+        }
+    }
+
     private void check(Set<CheckedOpenHashTableEntity> validSet, Set<CheckedOpenHashTableEntity> testSet, CheckedOpenHashTableEntity value, TransformOperation transformOperation) {
         checkSizeAndContains(validSet, testSet, value);
         checkTransformOperation(validSet, testSet, value, transformOperation);
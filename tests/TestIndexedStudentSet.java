@@ -0,0 +1,134 @@
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import ru.mail.polis.AVLTree;
+import ru.mail.polis.IndexedStudentSet;
+import ru.mail.polis.OpenHashTable;
+import ru.mail.polis.SimpleStudentGenerator;
+import ru.mail.polis.Student;
+import ru.mail.polis.StudentCodec;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestIndexedStudentSet {
+
+    private List<Student> students;
+    private Set<Student> validSet;
+    private IndexedStudentSet testSet;
+    private AtomicInteger yearCalls;
+
+    @Before
+    public void createSets() {
+        students = Arrays.asList(SimpleStudentGenerator.getInstance().generate(20_000, 5));
+        validSet = new HashSet<>(students);
+        testSet = new IndexedStudentSet(new OpenHashTable<>());
+        testSet.addAll(students.subList(0, 10_000));
+        //индексы можно добавлять и к непустому множеству
+        testSet.addHashIndex("group", Student::getGroupId);
+        testSet.addRangeIndex("birthday", Student::getBirthday);
+        yearCalls = new AtomicInteger();
+        testSet.addRangeIndex("year", student -> {
+            yearCalls.incrementAndGet();
+            return student.getYearOfAdmission();
+        }, AVLTree::new);
+        testSet.addHashIndex("email", Student::getEmail);
+        testSet.addAll(students.subList(10_000, students.size()));
+    }
+
+    private void check(IndexedStudentSet.Query query, Predicate<Student> predicate) {
+        Set<Student> expected = validSet.stream().filter(predicate).collect(Collectors.toSet());
+        List<Student> actual = query.list();
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected, new HashSet<>(actual));
+    }
+
+    private void checkQueries() {
+        LocalDate from = LocalDate.of(1995, 1, 1);
+        LocalDate to = LocalDate.of(1996, 1, 1);
+        Predicate<Student> inBirthday = student -> !student.getBirthday().isBefore(from) && student.getBirthday().isBefore(to);
+        check(testSet.query().where("group", 1042), student -> student.getGroupId() == 1042);
+        check(testSet.query().where("group", 1042).whereRange("birthday", from, to),
+                inBirthday.and(student -> student.getGroupId() == 1042));
+        check(testSet.query().whereRange("year", 2012, 2014).where("group", 1001),
+                student -> student.getYearOfAdmission() >= 2012 && student.getYearOfAdmission() < 2014
+                        && student.getGroupId() == 1001);
+        check(testSet.query().where("year", 2017), student -> student.getYearOfAdmission() == 2017);
+        check(testSet.query().where("email", null), student -> student.getEmail() == null);
+        check(testSet.query().where("group", 5000), student -> false);
+        check(testSet.query().whereRange("year", 2014, 2012), student -> false);
+        check(testSet.query(), student -> true);
+    }
+
+    @Test
+    public void test01_queries() {
+        Assert.assertEquals(validSet, testSet);
+        checkQueries();
+    }
+
+    @Test
+    public void test02_remove() {
+        for (int i = 0; i < students.size(); i += 3) {
+            Assert.assertTrue(testSet.remove(students.get(i)));
+            validSet.remove(students.get(i));
+        }
+        Assert.assertFalse(testSet.remove(students.get(0)));
+        Assert.assertEquals(validSet, testSet);
+        checkQueries();
+    }
+
+    /**
+     * Обходится список самого избирательного условия: ключи остальных индексов вычисляются
+     * только у его кандидатов, а не у всех студентов
+     */
+    @Test
+    public void test03_selectiveIndex() {
+        List<Student> group = testSet.query().where("group", 1042).list();
+        yearCalls.set(0);
+        long count = testSet.query().whereRange("year", 2010, 2018).where("group", 1042).count();
+        Assert.assertEquals(group.size(), count);
+        Assert.assertTrue("calls: " + yearCalls.get(), yearCalls.get() <= group.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test04_rangeOnHashIndex() {
+        testSet.query().whereRange("group", 1000, 1010);
+    }
+
+    /**
+     * Разные записи с одним id — разные элементы и в основном множестве, и в индексах по диапазону
+     */
+    @Test
+    public void test05_sameIdOtherRecord() {
+        Student original = students.get(0);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        StudentCodec.encode(original, buffer);
+        buffer.flip();
+        Student copy = StudentCodec.decode(buffer);
+        copy.setMobile(original.getMobile() + "0");
+        Assert.assertEquals(original.getId(), copy.getId());
+
+        Assert.assertTrue(testSet.add(copy));
+        validSet.add(copy);
+        Assert.assertEquals(validSet, testSet);
+        checkQueries();
+        int year = original.getYearOfAdmission();
+        check(testSet.query().whereRange("year", year, year + 1), student -> student.getYearOfAdmission() == year);
+
+        Assert.assertTrue(testSet.remove(copy));
+        validSet.remove(copy);
+        Assert.assertTrue(testSet.query().whereRange("year", year, year + 1).list().contains(original));
+        checkQueries();
+    }
+}
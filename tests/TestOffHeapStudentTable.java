@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+
+import ru.mail.polis.OffHeapStudentTable;
+import ru.mail.polis.SimpleStudentGenerator;
+import ru.mail.polis.Student;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestOffHeapStudentTable extends AbstractSetTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Set<Student> validSet;
+    private OffHeapStudentTable testSet;
+
+    @Before
+    public void createSets() {
+        validSet = new HashSet<>();
+        testSet = new OffHeapStudentTable();
+    }
+
+    private Student generate() {
+        return SimpleStudentGenerator.getInstance().generate();
+    }
+
+    @Test
+    public void test01_addRemove() {
+        List<Student> values = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Student student = generate();
+            values.add(student);
+            check(student, TransformOperation.ADD);
+        }
+        for (int i = 0; i < 2000; i += 2) {
+            check(values.get(i), TransformOperation.REMOVE);
+        }
+        //итератор читает записи из буферов в новые объекты
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+        int tableSize = testSet.getTableSize();
+        Assert.assertEquals("power of two", 0, tableSize & (tableSize - 1));
+    }
+
+    /**
+     * Постоянные вставки и удаления: перехеширование без роста таблицы переписывает арену
+     */
+    @Test
+    public void test02_churn() {
+        List<Student> values = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Student student = generate();
+            values.add(student);
+            check(student, TransformOperation.ADD);
+        }
+        for (int i = 0; i < 20000; i++) {
+            int idx = RANDOM.nextInt(values.size());
+            check(values.get(idx), TransformOperation.REMOVE);
+            Student student = generate();
+            values.set(idx, student);
+            check(student, TransformOperation.ADD);
+        }
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+    }
+
+    /**
+     * Поиск по id находит запись, а поиск записи целиком сравнивает все поля, включая nullable строки
+     */
+    @Test
+    public void test03_getById() {
+        Student student = generate();
+        student.setEmail("студент@polis.mail.ru");
+        student.setMobile(null);
+        Assert.assertTrue(testSet.add(student));
+        Student stored = testSet.get(student.getId());
+        Assert.assertEquals(student, stored);
+        Assert.assertNull(stored.getMobile());
+        Assert.assertEquals("студент@polis.mail.ru", stored.getEmail());
+
+        student.setEmail(null);
+        Assert.assertFalse("changed record", testSet.contains(student));
+        Assert.assertTrue(testSet.containsId(student.getId()));
+        Assert.assertTrue("same id, other record", testSet.add(student));
+        Assert.assertEquals(2, testSet.size());
+
+        Assert.assertFalse(testSet.containsId(generate().getId()));
+        Assert.assertNull(testSet.get(-1));
+    }
+
+    /**
+     * После close() файл открывается с тем же содержимым, с ним можно продолжать работать,
+     * в том числе перехешировать
+     */
+    @Test
+    public void test04_persistent() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("students.table");
+        List<Student> values = new ArrayList<>();
+        testSet = new OffHeapStudentTable(file);
+        for (int i = 0; i < 3000; i++) {
+            Student student = generate();
+            values.add(student);
+            check(student, TransformOperation.ADD);
+        }
+        for (int i = 0; i < 3000; i += 3) {
+            check(values.get(i), TransformOperation.REMOVE);
+        }
+        int tableSize = testSet.getTableSize();
+        testSet.close();
+
+        testSet = new OffHeapStudentTable(file);
+        Assert.assertEquals(tableSize, testSet.getTableSize());
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+        for (Student student : values) {
+            checkSizeAndContains(validSet, testSet, student);
+        }
+        for (int i = 0; i < 3000; i++) {
+            check(generate(), TransformOperation.ADD);
+        }
+        testSet.close();
+
+        testSet = new OffHeapStudentTable(file);
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+        testSet.close();
+    }
+
+    /**
+     * Файл не закрыт: при открытии записи проверяются по контрольной сумме,
+     * испорченная запись пропадает, остальные на месте.
+     * Падение изображает копия файла, снятая после flush без close
+     */
+    @Test
+    public void test05_recoverUnclosed() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("students.table");
+        Path crashed = folder.getRoot().toPath().resolve("crashed.table");
+        Path corrupted = folder.getRoot().toPath().resolve("corrupted.table");
+        testSet = new OffHeapStudentTable(file);
+        for (int i = 0; i < 1000; i++) {
+            check(generate(), TransformOperation.ADD);
+        }
+        testSet.flush();
+        Files.copy(file, crashed);
+        Files.copy(file, corrupted);
+        int tableSize = testSet.getTableSize();
+        testSet.close();
+
+        OffHeapStudentTable recovered = new OffHeapStudentTable(crashed);
+        Assert.assertEquals(validSet, new HashSet<>(recovered));
+        recovered.close();
+
+        //портим первый байт первой строки в арене: заголовок 64 байта, ячейки по 48
+        long arenaBase = 64 + (long) tableSize * 48;
+        try (RandomAccessFile raf = new RandomAccessFile(corrupted.toFile(), "rw")) {
+            raf.seek(arenaBase + 4);
+            int value = raf.read();
+            raf.seek(arenaBase + 4);
+            raf.write(value ^ 0xFF);
+        }
+        recovered = new OffHeapStudentTable(corrupted);
+        Set<Student> rest = new HashSet<>(recovered);
+        Assert.assertEquals(validSet.size() - 1, recovered.size());
+        Assert.assertEquals(validSet.size() - 1, rest.size());
+        Assert.assertTrue(validSet.containsAll(rest));
+        Assert.assertTrue(recovered.add(generate()));
+        recovered.close();
+    }
+
+    /**
+     * После восстановления конец арены выровнен: новые строки не затирают хвост последней живой записи
+     */
+    @Test
+    public void test06_addAfterRecover() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("students.table");
+        Path crashed = folder.getRoot().toPath().resolve("crashed.table");
+        testSet = new OffHeapStudentTable(file);
+        List<Student> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Student student = generate();
+            values.add(student);
+            check(student, TransformOperation.ADD);
+        }
+        //длина 5 байт: без выравнивания следующая строка легла бы на её последний байт
+        Student last = generate();
+        last.setMobile("12345");
+        values.add(last);
+        check(last, TransformOperation.ADD);
+        testSet.flush();
+        Files.copy(file, crashed);
+        testSet.close();
+
+        testSet = new OffHeapStudentTable(crashed);
+        for (int i = 0; i < 100; i++) {
+            Student student = generate();
+            values.add(student);
+            check(student, TransformOperation.ADD);
+        }
+        for (Student student : values) {
+            checkSizeAndContains(validSet, testSet, student);
+            check(student, TransformOperation.ADD);
+        }
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+        testSet.close();
+
+        testSet = new OffHeapStudentTable(crashed);
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+        testSet.close();
+    }
+
+    /**
+     * Удаление через итератор ставит надгробия, clear / retainAll работают через него,
+     * а изменение в обход итератора замечается
+     */
+    @Test
+    public void test07_iteratorRemove() {
+        for (int i = 0; i < 3000; i++) {
+            check(generate(), TransformOperation.ADD);
+        }
+        Iterator<Student> it = testSet.iterator();
+        int seen = 0;
+        while (it.hasNext()) {
+            Student student = it.next();
+            if (seen++ % 2 == 0) {
+                it.remove();
+                validSet.remove(student);
+            }
+        }
+        Assert.assertEquals(3000, seen);
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+        List<Student> half = new ArrayList<>(validSet).subList(0, validSet.size() / 2);
+        Assert.assertEquals(validSet.retainAll(half), testSet.retainAll(half));
+        Assert.assertEquals(validSet, new HashSet<>(testSet));
+        for (Student student : validSet) {
+            checkSizeAndContains(validSet, testSet, student);
+        }
+
+        it = testSet.iterator();
+        it.next();
+        check(generate(), TransformOperation.ADD);
+        try {
+            it.next();
+            Assert.fail("ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            /* empty */
+        }
+        testSet.clear();
+        validSet.clear();
+        Assert.assertTrue(testSet.isEmpty());
+        check(generate(), TransformOperation.ADD);
+    }
+
+    private void check(Student value, TransformOperation transformOperation) {
+        checkSizeAndContains(validSet, testSet, value);
+        checkTransformOperation(validSet, testSet, value, transformOperation);
+        checkSizeAndContains(validSet, testSet, value);
+    }
+}
@@ -0,0 +1,207 @@
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import ru.mail.polis.BalancedSortedSet;
+import ru.mail.polis.IntAVLTree;
+import ru.mail.polis.LongRedBlackTree;
+import ru.mail.polis.NotBalancedTreeException;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestPrimitiveSortedSet extends AbstractSetTest {
+
+    @Test
+    public void test01_intAVLTreeEmpty() {
+        IntAVLTree tree = new IntAVLTree();
+        checkEmpty(tree);
+        Assert.assertFalse(tree.contains(0));
+        Assert.assertFalse(tree.remove(0));
+    }
+
+    @Test
+    public void test02_intAVLTreeSequential() {
+        SortedSet<Integer> validSet = new TreeSet<>();
+        IntAVLTree testSet = new IntAVLTree();
+        for (int value = 0; value < 1000; value++) {
+            check(validSet, testSet, value, TransformOperation.ADD);
+        }
+        for (int value = 0; value < 1000; value += 2) {
+            check(validSet, testSet, value, TransformOperation.REMOVE);
+        }
+    }
+
+    @Test
+    public void test03_intAVLTreeRandom() {
+        SortedSet<Integer> validSet = new TreeSet<>();
+        IntAVLTree testSet = new IntAVLTree();
+        for (int i = 0; i < 10000; i++) {
+            int value = RANDOM.nextInt(2000) - 1000;
+            Assert.assertEquals("add", validSet.add(value), testSet.add(value));
+            value = RANDOM.nextInt(2000) - 1000;
+            Assert.assertEquals("remove", validSet.remove(value), testSet.remove(value));
+        }
+        checkFirstAndLast(validSet, testSet);
+        checkBalanced(testSet);
+        for (int value = -1000; value < 1000; value++) {
+            Assert.assertEquals("contains", validSet.contains(value), testSet.contains(value));
+        }
+    }
+
+    @Test
+    public void test04_longRedBlackTreeEmpty() {
+        LongRedBlackTree tree = new LongRedBlackTree();
+        checkEmpty(tree);
+        Assert.assertFalse(tree.contains(0L));
+        Assert.assertFalse(tree.remove(0L));
+    }
+
+    @Test
+    public void test05_longRedBlackTreeSequential() {
+        SortedSet<Long> validSet = new TreeSet<>();
+        LongRedBlackTree testSet = new LongRedBlackTree();
+        for (long value = 0; value < 1000; value++) {
+            check(validSet, testSet, Long.MAX_VALUE - value, TransformOperation.ADD);
+        }
+        for (long value = 0; value < 1000; value += 2) {
+            check(validSet, testSet, Long.MAX_VALUE - value, TransformOperation.REMOVE);
+        }
+    }
+
+    @Test
+    public void test06_longRedBlackTreeRandom() {
+        SortedSet<Long> validSet = new TreeSet<>();
+        LongRedBlackTree testSet = new LongRedBlackTree();
+        for (int i = 0; i < 10000; i++) {
+            long value = RANDOM.nextInt(2000) - 1000L;
+            Assert.assertEquals("add", validSet.add(value), testSet.add(value));
+            value = RANDOM.nextInt(2000) - 1000L;
+            Assert.assertEquals("remove", validSet.remove(value), testSet.remove(value));
+        }
+        checkFirstAndLast(validSet, testSet);
+        checkBalanced(testSet);
+        for (long value = -1000; value < 1000; value++) {
+            Assert.assertEquals("contains", validSet.contains(value), testSet.contains(value));
+        }
+    }
+
+    @Test
+    public void test07_intAVLTreeIteratorAndViews() {
+        SortedSet<Integer> validSet = new TreeSet<>();
+        IntAVLTree testSet = new IntAVLTree();
+        for (int i = 0; i < 2000; i++) {
+            int value = RANDOM.nextInt(4000) - 2000;
+            validSet.add(value);
+            testSet.add(value);
+        }
+        checkIteratorAndViews(validSet, testSet, -500, 500);
+        checkBalanced(testSet);
+    }
+
+    @Test
+    public void test08_longRedBlackTreeIteratorAndViews() {
+        SortedSet<Long> validSet = new TreeSet<>();
+        LongRedBlackTree testSet = new LongRedBlackTree();
+        for (int i = 0; i < 2000; i++) {
+            long value = RANDOM.nextInt(4000) - 2000L;
+            validSet.add(value);
+            testSet.add(value);
+        }
+        checkIteratorAndViews(validSet, testSet, -500L, 500L);
+        checkBalanced(testSet);
+    }
+
+    /**
+     * Обход, удаление через итератор, представления диапазонов и операции AbstractSet поверх итератора
+     */
+    private <E> void checkIteratorAndViews(SortedSet<E> validSet, SortedSet<E> testSet, E from, E to) {
+        Assert.assertEquals("iterator", new ArrayList<>(validSet), new ArrayList<>(testSet));
+        Assert.assertEquals("hashCode", validSet.hashCode(), testSet.hashCode());
+        Assert.assertEquals("subSet", new ArrayList<>(validSet.subSet(from, to)), new ArrayList<>(testSet.subSet(from, to)));
+        Assert.assertEquals("headSet", new ArrayList<>(validSet.headSet(to)), new ArrayList<>(testSet.headSet(to)));
+        Assert.assertEquals("tailSet", new ArrayList<>(validSet.tailSet(from)), new ArrayList<>(testSet.tailSet(from)));
+        Assert.assertEquals("subSet size", validSet.subSet(from, to).size(), testSet.subSet(from, to).size());
+        Assert.assertEquals("stream", validSet.stream().count(), testSet.stream().count());
+
+        //удаляем каждый второй элемент: узлы с двумя потомками и перестройка пути при балансировке
+        Iterator<E> validIt = validSet.iterator();
+        Iterator<E> testIt = testSet.iterator();
+        boolean drop = false;
+        while (validIt.hasNext()) {
+            Assert.assertTrue("hasNext", testIt.hasNext());
+            Assert.assertEquals("next", validIt.next(), testIt.next());
+            if (drop) {
+                validIt.remove();
+                testIt.remove();
+            }
+            drop = !drop;
+        }
+        Assert.assertFalse("hasNext", testIt.hasNext());
+        Assert.assertEquals("iterator remove", new ArrayList<>(validSet), new ArrayList<>(testSet));
+
+        Iterator<E> it = testSet.iterator();
+        it.next();
+        testSet.remove(testSet.last());
+        try {
+            it.next();
+            Assert.fail("ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            /* empty */
+        }
+        validSet.remove(validSet.last());
+
+        testSet.subSet(from, to).clear();
+        validSet.subSet(from, to).clear();
+        Assert.assertEquals("subSet clear", new ArrayList<>(validSet), new ArrayList<>(testSet));
+        List<E> half = new ArrayList<>(validSet).subList(0, validSet.size() / 2);
+        Assert.assertEquals("retainAll", validSet.retainAll(half), testSet.retainAll(half));
+        Assert.assertEquals("retainAll", new ArrayList<>(validSet), new ArrayList<>(testSet));
+        testSet.clear();
+        Assert.assertTrue("clear", testSet.isEmpty());
+        Assert.assertFalse("clear", testSet.iterator().hasNext());
+    }
+
+    private <E> void check(SortedSet<E> validSet, BalancedSortedSet<E> testSet, E value, TransformOperation transformOperation) {
+        checkTransformOperation(validSet, testSet, value, transformOperation);
+        checkBalanced(testSet);
+        checkSizeAndContains(validSet, testSet, value);
+        checkFirstAndLast(validSet, testSet);
+    }
+
+    private <E> void checkBalanced(BalancedSortedSet<E> balancedSortedSet) {
+        try {
+            balancedSortedSet.checkBalanced();
+        } catch (NotBalancedTreeException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    private <E> void checkFirstAndLast(SortedSet<E> validSet, SortedSet<E> testSet) {
+        Assert.assertEquals("first", validSet.first(), testSet.first());
+        Assert.assertEquals("last", validSet.last(), testSet.last());
+    }
+
+    private void checkEmpty(SortedSet<?> testSet) {
+        try {
+            testSet.first();
+            Assert.fail("NoSuchElementException - first");
+        } catch (NoSuchElementException e) {
+            /* empty */
+        }
+        try {
+            testSet.last();
+            Assert.fail("NoSuchElementException - last");
+        } catch (NoSuchElementException e) {
+            /* empty */
+        }
+        Assert.assertEquals("size", 0, testSet.size());
+    }
+}
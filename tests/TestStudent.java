@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import ru.mail.polis.SimpleStudentGenerator;
+import ru.mail.polis.Student;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestStudent {
+
+    private static final int THREADS = 4;
+
+    /**
+     * Закешированный хеш сбрасывается сеттерами nullable полей
+     */
+    @Test
+    public void test01_cachedHash() {
+        Student student = SimpleStudentGenerator.getInstance().generate();
+        int hash = student.hashCode();
+        int probe = student.hashCode(1 << 16, 1);
+        String email = student.getEmail();
+        String mobile = student.getMobile();
+        String photoReference = student.getPhotoReference();
+
+        student.setEmail("other" + email);
+        Assert.assertNotEquals(hash, student.hashCode());
+        student.setMobile(null);
+        student.setPhotoReference(null);
+        Assert.assertTrue(student.isHashFunctionValid(1 << 12));
+
+        student.setEmail(email);
+        student.setMobile(mobile);
+        student.setPhotoReference(photoReference);
+        Assert.assertEquals(hash, student.hashCode());
+        Assert.assertEquals(probe, student.hashCode(1 << 16, 1));
+    }
+
+    /**
+     * Потоки, одновременно впервые хеширующие общих студентов, получают одно и то же значение
+     */
+    @Test
+    public void test02_cachedHashShared() throws Exception {
+        Student[] students = SimpleStudentGenerator.getInstance().generate(10_000, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<int[]>> workers = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    int[] hashes = new int[students.length];
+                    for (int i = 0; i < students.length; i++) {
+                        hashes[i] = students[i].hashCode();
+                    }
+                    return hashes;
+                }));
+            }
+            start.countDown();
+            int[] expected = workers.get(0).get(1, TimeUnit.MINUTES);
+            for (Future<int[]> worker : workers) {
+                Assert.assertArrayEquals(expected, worker.get(1, TimeUnit.MINUTES));
+            }
+            for (int i = 0; i < students.length; i++) {
+                Assert.assertEquals(expected[i], students[i].hashCode());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+
+import ru.mail.polis.DurableSet;
+import ru.mail.polis.OpenHashTable;
+import ru.mail.polis.SimpleStudentGenerator;
+import ru.mail.polis.Student;
+import ru.mail.polis.StudentCodec;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestStudentCodec {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Student> generate(int count) {
+        List<Student> students = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            students.add(SimpleStudentGenerator.getInstance().generate());
+        }
+        //nullable поля и строки вне BMP
+        students.get(0).setPhotoReference(null);
+        students.get(0).setEmail(null);
+        students.get(0).setMobile(null);
+        students.get(1).setEmail("🎓@polis.mail.ru");
+        return students;
+    }
+
+    @Test
+    public void test01_buffer() {
+        List<Student> students = generate(1000);
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(1 << 20), ByteBuffer.allocateDirect(1 << 20)}) {
+            for (Student student : students) {
+                StudentCodec.encode(student, buffer);
+            }
+            Assert.assertTrue("compact: " + buffer.position(), buffer.position() < students.size() * 120);
+            buffer.flip();
+            for (Student student : students) {
+                Assert.assertEquals(student, StudentCodec.decode(buffer));
+            }
+            Assert.assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    /**
+     * Неудачные encode / decode не сдвигают позицию буфера
+     */
+    @Test
+    public void test02_partial() {
+        Student student = generate(2).get(1);
+        ByteBuffer small = ByteBuffer.allocate(10);
+        try {
+            StudentCodec.encode(student, small);
+            Assert.fail();
+        } catch (BufferOverflowException e) {
+            Assert.assertEquals(0, small.position());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        int length = StudentCodec.encode(student, buffer);
+        buffer.flip().limit(length - 1);
+        try {
+            StudentCodec.decode(buffer);
+            Assert.fail();
+        } catch (BufferUnderflowException e) {
+            Assert.assertEquals(0, buffer.position());
+        }
+        buffer.limit(length);
+        Assert.assertEquals(student, StudentCodec.decode(buffer));
+    }
+
+    /**
+     * Буферы меньше записи: и писатель, и читатель должны их увеличить
+     */
+    @Test
+    public void test03_channel() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("students.bin");
+        List<Student> students = generate(5000);
+        for (int bufferSize : new int[]{16, 1 << 16}) {
+            try (StudentCodec.ChannelWriter writer = new StudentCodec.ChannelWriter(FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), bufferSize)) {
+                for (Student student : students) {
+                    writer.write(student);
+                }
+            }
+            try (StudentCodec.ChannelReader reader = new StudentCodec.ChannelReader(FileChannel.open(file), bufferSize)) {
+                for (Student student : students) {
+                    Assert.assertEquals(student, reader.read());
+                }
+                Assert.assertNull(reader.read());
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        try (StudentCodec.ChannelReader reader = new StudentCodec.ChannelReader(FileChannel.open(file))) {
+            for (int i = 0; i < students.size() - 1; i++) {
+                Assert.assertEquals(students.get(i), reader.read());
+            }
+            reader.read();
+            Assert.fail();
+        } catch (EOFException e) {
+            //последняя запись оборвана
+        }
+    }
+
+    @Test
+    public void test04_durableOpenHashTable() throws IOException {
+        Path directory = folder.getRoot().toPath().resolve("students");
+        Set<Student> validSet = new HashSet<>(generate(2000));
+        DurableSet<Student> testSet = new DurableSet<>(directory, new OpenHashTable<>(), new StudentCodec(),
+                DurableSet.SyncPolicy.perBatch(500), 16 << 10);
+        testSet.addAll(validSet);
+        testSet.close();
+
+        testSet = new DurableSet<>(directory, new OpenHashTable<>(), new StudentCodec(),
+                DurableSet.SyncPolicy.perBatch(500), 16 << 10);
+        Assert.assertEquals(validSet, testSet);
+        testSet.close();
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import ru.mail.polis.SimpleStudentGenerator;
+import ru.mail.polis.Student;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestStudentGenerator {
+
+    private static final SimpleStudentGenerator generator = SimpleStudentGenerator.getInstance();
+
+    /**
+     * Результат зависит только от seed, а не от того, как поток делился между потоками
+     */
+    @Test
+    public void test01_reproducible() {
+        int count = 10 * SimpleStudentGenerator.BLOCK_SIZE + 123;
+        List<Student> sequential = generator.stream(1_000_000_000L, count, 42).collect(Collectors.toList());
+        List<Student> parallel = generator.stream(1_000_000_000L, count, 42).parallel().collect(Collectors.toList());
+        Assert.assertEquals(count, sequential.size());
+        Assert.assertEquals(sequential, parallel);
+        Assert.assertNotEquals(sequential, generator.stream(1_000_000_000L, count, 43).collect(Collectors.toList()));
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(1_000_000_000L + i, sequential.get(i).getId());
+        }
+    }
+
+    @Test
+    public void test02_uniqueIds() {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        Student[] bulk = generator.generate(50_000, 7);
+        Assert.assertEquals(50_000, bulk.length);
+        Arrays.stream(bulk).forEach(student -> Assert.assertTrue(ids.add(student.getId())));
+        IntStream.range(0, 20_000).parallel()
+                .forEach(i -> Assert.assertTrue(ids.add(generator.generate().getId())));
+        Assert.assertEquals(70_000, ids.size());
+    }
+
+    /**
+     * Поля в тех же диапазонах, что и у студентов из generate()
+     */
+    @Test
+    public void test03_fields() {
+        Set<Student.Gender> genders = new HashSet<>();
+        int withEmail = 0;
+        for (Student student : generator.generate(10_000, 1)) {
+            genders.add(student.getGender());
+            Assert.assertTrue(student.getYearOfAdmission() >= 2010 && student.getYearOfAdmission() <= 2017);
+            Assert.assertTrue(student.getGroupId() >= 1000 && student.getGroupId() < 1100);
+            if (student.getEmail() != null) {
+                withEmail++;
+                Assert.assertTrue(student.getEmail().matches("[a-z]{10}@polis\\.mail\\.ru"));
+            }
+            if (student.getMobile() != null) {
+                Assert.assertEquals(10, student.getMobile().length());
+            }
+        }
+        Assert.assertEquals(2, genders.size());
+        Assert.assertTrue(withEmail > 4000 && withEmail < 6000);
+    }
+}
@@ -0,0 +1,78 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import ru.mail.polis.SimpleStudentGenerator;
+import ru.mail.polis.Student;
+import ru.mail.polis.StudentStore;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestStudentStore {
+
+    private static List<Student> students;
+    private static StudentStore store;
+
+    @BeforeClass
+    public static void fill() {
+        //некратно 64, чтобы последнее слово битовых множеств было неполным
+        students = Arrays.asList(SimpleStudentGenerator.getInstance().generate(100_003, 11));
+        store = new StudentStore();
+        store.addAll(students);
+    }
+
+    private static void check(StudentStore.RowSet rows, Predicate<Student> predicate) {
+        List<Student> expected = students.stream().filter(predicate).collect(Collectors.toList());
+        Assert.assertEquals(expected.size(), rows.cardinality());
+        Assert.assertEquals(expected, store.students(rows).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void test01_materialize() {
+        Assert.assertEquals(students.size(), store.size());
+        for (int row = 0; row < students.size(); row++) {
+            Assert.assertEquals(students.get(row), store.get(row));
+        }
+        Assert.assertTrue(store.getDictionarySize() < 100);
+        check(store.all(), student -> true);
+    }
+
+    @Test
+    public void test02_scans() {
+        check(store.whereGroupId(1042), student -> student.getGroupId() == 1042);
+        check(store.whereGroupId(1090, 2000), student -> student.getGroupId() >= 1090);
+        check(store.whereGroupId(1050, 1040), student -> false);
+        check(store.whereYearOfAdmission(2012, 2014),
+                student -> student.getYearOfAdmission() >= 2012 && student.getYearOfAdmission() <= 2014);
+        LocalDate from = LocalDate.of(1995, 3, 1);
+        LocalDate to = LocalDate.of(1996, 2, 29);
+        check(store.whereBirthday(from, to),
+                student -> !student.getBirthday().isBefore(from) && !student.getBirthday().isAfter(to));
+        check(store.whereBirthday(LocalDate.MIN, LocalDate.MAX), student -> true);
+        check(store.whereGender(Student.Gender.FEMALE), student -> student.getGender() == Student.Gender.FEMALE);
+        check(store.whereGender(Student.Gender.MALE), student -> student.getGender() == Student.Gender.MALE);
+        check(store.whereFirstName("Марк"), student -> student.getFirstName().equals("Марк"));
+        check(store.whereLastName("ЧААДАЕВ"), student -> student.getLastName().equals("ЧААДАЕВ"));
+        check(store.whereLastName("Нет такой"), student -> false);
+    }
+
+    @Test
+    public void test03_combine() {
+        StudentStore.RowSet rows = store.whereGender(Student.Gender.FEMALE)
+                .and(store.whereYearOfAdmission(2015, 2017))
+                .or(store.whereGroupId(1000))
+                .andNot(store.whereLastName("ЗАБАВА"))
+                .filter(row -> store.get(row).getEmail() != null);
+        check(rows, student -> (student.getGender() == Student.Gender.FEMALE && student.getYearOfAdmission() >= 2015
+                || student.getGroupId() == 1000)
+                && !student.getLastName().equals("ЗАБАВА")
+                && student.getEmail() != null);
+    }
+}